@@ -0,0 +1,66 @@
+package com.link.socket;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.List;
+
+// 基准测试共用的服务器和房间搭建
+final class BenchSupport {
+    private BenchSupport() {
+    }
+
+    static MultiChatServer newServer(InlineRoomExecutor executor) {
+        MultiChatServer server = new MultiChatServer(0, executor, 1 << 16, OutboundQueue.OverflowPolicy.COALESCE);
+        // 模拟连接不会回复pong
+        server.setHeartbeat(0, 0);
+        // 基准测试在少数连接上连续发送消息
+        server.setRateLimiter(RateLimiter.unlimited());
+        return server;
+    }
+
+    static MockWebSocket open(MultiChatServer server, boolean binary) {
+        MockWebSocket conn = new MockWebSocket(binary);
+        server.onOpen(conn, null);
+        return conn;
+    }
+
+    static String link(String userId, List<String> friendIds) {
+        JSONArray friendList = new JSONArray();
+        for (String friendId : friendIds) {
+            friendList.put(new JSONObject().put("userId", friendId));
+        }
+        return new JSONObject()
+                .put("status", "Link")
+                .put("userId", userId)
+                .put("nickName", "nick-" + userId)
+                .put("friendList", friendList)
+                .toString();
+    }
+
+    static String step(String playId, String event) {
+        return "{\"status\":\"MemberPlayStep\",\"playId\":\"" + playId + "\",\"memberPlayStepEvent\":\"" + event + "\"}";
+    }
+
+    // 直接登记一个满员房间，不经过匹配
+    static ChatRoom fillRoom(MultiChatServer server, MockWebSocket[] members, String playIdPrefix) {
+        LifecycleManager lifecycle = server.getLifecycle();
+        ChatRoom chatRoom = lifecycle.createRoom();
+        for (int i = 0; i < members.length; i++) {
+            chatRoom.tryReserveSeat();
+            lifecycle.addMember(chatRoom, members[i], playIdPrefix + i, "nick" + i);
+        }
+        if (members.length >= ChatRoom.MAX_MEMBERS) {
+            lifecycle.startGame(chatRoom);
+        }
+        return chatRoom;
+    }
+
+    static long framesOf(MockWebSocket[] conns) {
+        long frames = 0;
+        for (MockWebSocket conn : conns) {
+            frames += conn.getFrames();
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,66 @@
+package com.link.socket;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// onMessage 对无状态变化的消息的分发开销：状态扫描、完整解析和处理器本身
+// 会改变房间或好友关系的消息见 StatefulDispatchBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    @Param({"Link", "InviteShip", "InviteShipBack", "MemberPlayStep", "Unknown"})
+    public String status;
+
+    private MultiChatServer server;
+    private MockWebSocket sender;
+    private String message;
+
+    @Setup
+    public void setUp() {
+        server = BenchSupport.newServer(new InlineRoomExecutor());
+        MockWebSocket[] members = new MockWebSocket[ChatRoom.MAX_MEMBERS];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = BenchSupport.open(server, false);
+            server.onMessage(members[i], BenchSupport.link("u" + i, List.of("u0", "u1", "u2", "u3")));
+        }
+        MockWebSocket stranger = BenchSupport.open(server, false);
+        server.onMessage(stranger, BenchSupport.link("u9", List.of()));
+        BenchSupport.fillRoom(server, members, "u");
+        sender = members[0];
+
+        switch (status) {
+            case "Link":
+                message = BenchSupport.link("u0", List.of("u0", "u1", "u2", "u3"));
+                break;
+            case "InviteShip":
+                message = "{\"status\":\"InviteShip\",\"userId\":\"u0\",\"invitedUserId\":\"u9\"}";
+                break;
+            case "InviteShipBack":
+                message = "{\"status\":\"InviteShipBack\",\"userId\":\"u9\",\"invitedUserId\":\"u9\",\"nickName\":\"n0\"}";
+                break;
+            case "MemberPlayStep":
+                message = BenchSupport.step("u0", "dice:6");
+                break;
+            default:
+                message = "{\"status\":\"Nope\",\"userId\":\"u0\"}";
+                break;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public void onMessage() {
+        server.onMessage(sender, message);
+    }
+}
@@ -0,0 +1,29 @@
+package com.link.socket;
+
+import java.util.ArrayDeque;
+
+// 在调用线程上同步执行房间事件，延迟任务由基准测试调用 runScheduled 模拟到期
+class InlineRoomExecutor extends RoomExecutor {
+    private final ArrayDeque<Runnable> scheduled = new ArrayDeque<>();
+
+    InlineRoomExecutor() {
+        super(1);
+    }
+
+    @Override
+    public void execute(int roomId, Runnable task) {
+        task.run();
+    }
+
+    @Override
+    public void schedule(int roomId, Runnable task, long delayMillis) {
+        scheduled.add(task);
+    }
+
+    void runScheduled() {
+        Runnable task;
+        while ((task = scheduled.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.link.socket;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// 对局日志对转发路径的开销：每次操作是一个房间内三名成员各发一步，对比关闭和开启日志
+// 日志写入和force在后台写线程上进行，这里只衡量分片线程上编码和入队的代价
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JournalBenchmark {
+    private static final int ROOMS = 1000;
+
+    @Param({"false", "true"})
+    public boolean journal;
+
+    private MultiChatServer server;
+    private Path directory;
+    private MockWebSocket[][] roomMembers;
+    private String[] steps;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = BenchSupport.newServer(new InlineRoomExecutor());
+        if (journal) {
+            directory = Files.createTempDirectory("room-journal-bench");
+            server.openJournal(directory, 64 << 20, 10);
+        }
+        roomMembers = new MockWebSocket[ROOMS][ChatRoom.MAX_MEMBERS];
+        for (int r = 0; r < ROOMS; r++) {
+            for (int i = 0; i < ChatRoom.MAX_MEMBERS; i++) {
+                roomMembers[r][i] = BenchSupport.open(server, false);
+            }
+            BenchSupport.fillRoom(server, roomMembers[r], "r" + r + "p");
+        }
+        steps = new String[]{
+                BenchSupport.step("p0", "dice:6"),
+                BenchSupport.step("p1", "move:12"),
+                BenchSupport.step("p2", "buy:12")};
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        server.stop(0);
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public void relayStep() {
+        MockWebSocket[] members = roomMembers[next];
+        next = next + 1 == ROOMS ? 0 : next + 1;
+        for (int i = 0; i < steps.length; i++) {
+            server.onMessage(members[i], steps[i]);
+        }
+    }
+}
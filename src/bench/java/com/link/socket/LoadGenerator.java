@@ -0,0 +1,396 @@
+package com.link.socket;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 压测客户端：按真实协议匹配并进行4人对局，同时产生少量好友和邀请流量
+// 统计建连速率、从IdSend到GBegin的耗时，以及MemberPlayStep从发出到其他成员收到的延迟
+// 所有客户端在同一个JVM内，步骤事件里携带发送时的System.nanoTime()用于计算延迟
+// Java-WebSocket的客户端每个连接占用独立线程，数千连接时需要相应调高线程数和文件句柄上限
+//
+// 参数：-url ws://127.0.0.1:8887 -clients 1000 -ramp 500 -rate 2 -duration 60 -social 0.05 -socialInterval 1000
+//      -embedded true 在本进程内启动服务器，-tick 20 设置内嵌服务器的步骤合并间隔
+public class LoadGenerator {
+    private final URI uri;
+    private final int clients;
+    private final int rampPerSecond;
+    private final double stepsPerSecond;
+    private final int durationSeconds;
+    private final double socialFraction;
+    private final long socialIntervalMillis;
+
+    private final ScheduledExecutorService timers = Executors.newScheduledThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), task -> {
+                Thread thread = new Thread(task, "load-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final List<WebSocketClient> allClients = new ArrayList<>();
+    private volatile boolean stopping;
+
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder connectFailed = new LongAdder();
+    private final LongAdder closedEarly = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder begun = new LongAdder();
+    private final LongAdder stepsSent = new LongAdder();
+    private final LongAdder relaysReceived = new LongAdder();
+    private final LongAdder socialSent = new LongAdder();
+    private final LongAdder socialReceived = new LongAdder();
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final LatencyHistogram gameStartLatency = new LatencyHistogram();
+    private final LatencyHistogram relayLatency = new LatencyHistogram();
+    private volatile long lastOpenNanos;
+
+    public LoadGenerator(URI uri, int clients, int rampPerSecond, double stepsPerSecond, int durationSeconds,
+                         double socialFraction, long socialIntervalMillis) {
+        this.uri = uri;
+        this.clients = clients;
+        this.rampPerSecond = rampPerSecond;
+        this.stepsPerSecond = stepsPerSecond;
+        this.durationSeconds = durationSeconds;
+        this.socialFraction = socialFraction;
+        this.socialIntervalMillis = socialIntervalMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        URI uri = new URI(options.getOrDefault("url", "ws://127.0.0.1:8887"));
+        LoadGenerator generator = new LoadGenerator(uri,
+                Integer.parseInt(options.getOrDefault("clients", "1000")),
+                Integer.parseInt(options.getOrDefault("ramp", "500")),
+                Double.parseDouble(options.getOrDefault("rate", "2")),
+                Integer.parseInt(options.getOrDefault("duration", "60")),
+                Double.parseDouble(options.getOrDefault("social", "0.05")),
+                Long.parseLong(options.getOrDefault("socialInterval", "1000")));
+
+        MultiChatServer server = null;
+        if (Boolean.parseBoolean(options.getOrDefault("embedded", "false"))) {
+            server = new MultiChatServer(uri.getPort());
+            server.setStepTickMillis(Long.parseLong(options.getOrDefault("tick", "0")));
+            server.start();
+            Thread.sleep(500);
+        }
+        try {
+            generator.run();
+        } finally {
+            if (server != null) {
+                server.stop(1000);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-")) {
+                throw new IllegalArgumentException("Expected an option but got " + args[i]);
+            }
+            options.put(args[i].substring(1), args[i + 1]);
+        }
+        return options;
+    }
+
+    public void run() throws InterruptedException {
+        int socialClients = Math.min(clients, (int) Math.round(clients * socialFraction)) & ~1; // 社交客户端两两配对
+        int players = clients - socialClients;
+        System.out.printf("load: %d players, %d social clients against %s%n", players, socialClients, uri);
+
+        ScheduledFuture<?> progress = timers.scheduleAtFixedRate(new Progress(), 5, 5, TimeUnit.SECONDS);
+        long startNanos = System.nanoTime();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rampPerSecond);
+        for (int i = 0; i < clients; i++) {
+            WebSocketClient client;
+            if (i < players) {
+                client = new PlayerClient("load-p" + i);
+            } else {
+                int pair = (i - players) / 2;
+                boolean inviter = (i - players) % 2 == 0;
+                client = new SocialClient("load-s" + (i - players), "load-s" + (i - players + (inviter ? 1 : -1)), inviter, socialClients, pair);
+            }
+            allClients.add(client);
+            client.connect();
+            long wait = startNanos + intervalNanos * (i + 1) - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+
+        long deadline = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(200);
+        }
+        stopping = true;
+        progress.cancel(false);
+        timers.shutdownNow();
+        for (WebSocketClient client : allClients) {
+            client.close();
+        }
+        report(startNanos);
+    }
+
+    private void report(long startNanos) {
+        double connectSeconds = Math.max(1, lastOpenNanos - startNanos) / 1e9;
+        System.out.println("==== load report ====");
+        System.out.printf("connect    attempted=%d ok=%d failed=%d rate=%.0f/s latency %s%n",
+                clients, connected.sum(), connectFailed.sum(), connected.sum() / connectSeconds,
+                connectLatency.summary("ms", 1000.0));
+        System.out.printf("game start joined=%d begun=%d latency %s%n",
+                joined.sum(), begun.sum(), gameStartLatency.summary("ms", 1000.0));
+        System.out.printf("relay      sent=%d received=%d latency %s%n",
+                stepsSent.sum(), relaysReceived.sum(), relayLatency.summary("ms", 1000.0));
+        System.out.printf("social     sent=%d received=%d%n", socialSent.sum(), socialReceived.sum());
+        System.out.printf("closed by server before the end: %d%n", closedEarly.sum());
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private class Progress implements Runnable {
+        private long lastSteps;
+        private long lastRelays;
+
+        @Override
+        public void run() {
+            long steps = stepsSent.sum();
+            long relays = relaysReceived.sum();
+            System.out.printf("progress connected=%d begun=%d steps=%d/s relays=%d/s relay p99=%.2fms%n",
+                    connected.sum(), begun.sum(), (steps - lastSteps) / 5, (relays - lastRelays) / 5,
+                    relayLatency.percentile(99) / 1000.0);
+            lastSteps = steps;
+            lastRelays = relays;
+        }
+    }
+
+    // 所有模拟客户端共用的建连统计
+    private abstract class LoadClient extends WebSocketClient {
+        protected final String id;
+        private final long connectStartNanos = System.nanoTime();
+        private volatile boolean opened;
+
+        LoadClient(String id) {
+            super(LoadGenerator.this.uri);
+            this.id = id;
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            long now = System.nanoTime();
+            opened = true;
+            lastOpenNanos = now;
+            connected.increment();
+            connectLatency.record(micros(now - connectStartNanos));
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            if (!opened) {
+                connectFailed.increment();
+            } else if (!stopping) {
+                closedEarly.increment();
+            }
+            onClosed();
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            if (!stopping && opened) {
+                System.out.println(id + " error: " + ex);
+            }
+        }
+
+        protected void onClosed() {
+        }
+
+        protected void sendIfOpen(String message) {
+            if (isOpen()) {
+                send(message);
+            }
+        }
+    }
+
+    // 匹配入座，开局后按固定速率发送步骤
+    private class PlayerClient extends LoadClient {
+        private volatile long idSendNanos;
+        private volatile ScheduledFuture<?> stepper;
+
+        PlayerClient(String playId) {
+            super(playId);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            String status = JsonFields.readString(message, "status");
+            if (status == null) {
+                return;
+            }
+            switch (status) {
+                case "IdSend":
+                    idSendNanos = System.nanoTime();
+                    sendIfOpen(new JSONObject().put("status", "IdSend").put("playId", id).put("nickName", id).toString());
+                    break;
+                case "JinSuccess":
+                    joined.increment();
+                    break;
+                case "GBegin":
+                    begun.increment();
+                    gameStartLatency.record(micros(System.nanoTime() - idSendNanos));
+                    startStepping();
+                    break;
+                case "MemberPlayStep":
+                    recordRelay(JsonFields.readString(message, "memberPlayStepEvent"));
+                    break;
+                case "MemberPlaySteps": {
+                    JSONArray steps = new JSONObject(message).getJSONArray("steps");
+                    for (int i = 0; i < steps.length(); i++) {
+                        recordRelay(steps.getJSONObject(i).optString("memberPlayStepEvent", null));
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        private void startStepping() {
+            if (stepsPerSecond <= 0 || stopping) {
+                return;
+            }
+            long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / stepsPerSecond);
+            long initialDelay = ThreadLocalRandom.current().nextLong(periodNanos);
+            stepper = timers.scheduleAtFixedRate(() -> {
+                if (!stopping && isOpen()) {
+                    sendIfOpen("{\"status\":\"MemberPlayStep\",\"playId\":\"" + id
+                            + "\",\"memberPlayStepEvent\":\"t" + System.nanoTime() + "\"}");
+                    stepsSent.increment();
+                }
+            }, initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void recordRelay(String event) {
+            if (event == null || event.isEmpty() || event.charAt(0) != 't') {
+                return;
+            }
+            try {
+                long sentNanos = Long.parseLong(event.substring(1));
+                relaysReceived.increment();
+                relayLatency.record(micros(System.nanoTime() - sentNanos));
+            } catch (NumberFormatException ex) {
+                // 不是本工具发出的步骤
+            }
+        }
+
+        @Override
+        protected void onClosed() {
+            ScheduledFuture<?> current = stepper;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+
+    // 两两配对的社交客户端：登记好友，邀请方轮流发送好友邀请和对局邀请，被邀请方拒绝对局后邀请方取消房间
+    private class SocialClient extends LoadClient {
+        private final String partnerId;
+        private final boolean inviter;
+        private final int socialClients;
+        private final int pair;
+        private volatile ScheduledFuture<?> ticker;
+        private boolean inviteToGame;
+
+        SocialClient(String userId, String partnerId, boolean inviter, int socialClients, int pair) {
+            super(userId);
+            this.partnerId = partnerId;
+            this.inviter = inviter;
+            this.socialClients = socialClients;
+            this.pair = pair;
+        }
+
+        @Override
+        public void onMessage(String message) {
+            String status = JsonFields.readString(message, "status");
+            if (status == null) {
+                return;
+            }
+            if (!"IdSend".equals(status)) {
+                socialReceived.increment();
+            }
+            switch (status) {
+                case "IdSend":
+                    JSONArray friendList = new JSONArray().put(new JSONObject().put("userId", partnerId));
+                    send(new JSONObject().put("status", "Link").put("userId", id).put("nickName", id)
+                            .put("friendList", friendList).toString());
+                    socialSent.increment();
+                    if (inviter && !stopping) {
+                        ticker = timers.scheduleAtFixedRate(this::tick,
+                                ThreadLocalRandom.current().nextLong(socialIntervalMillis), socialIntervalMillis, TimeUnit.MILLISECONDS);
+                    }
+                    break;
+                case "InviteShip": {
+                    JSONObject invite = new JSONObject(message);
+                    sendSocial(new JSONObject().put("status", "InviteShipBack").put("userId", invite.getString("userId"))
+                            .put("invitedUserId", id).put("nickName", id));
+                    break;
+                }
+                case "AlongWHGame": {
+                    JSONObject invite = new JSONObject(message);
+                    sendSocial(new JSONObject().put("status", "AlongWHGameDeci").put("decision", "refuse")
+                            .put("alonginvitedId", id).put("nickName", id).put("roomId", String.valueOf(invite.getInt("roomId"))));
+                    break;
+                }
+                case "AlongWHGameDeci":
+                    sendSocial(new JSONObject().put("status", "CancelRoom").put("userId", id));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // 邀请方交替发送：对局邀请给搭档，好友邀请给其他配对中的用户
+        private void tick() {
+            if (stopping || !isOpen()) {
+                return;
+            }
+            inviteToGame = !inviteToGame;
+            if (inviteToGame) {
+                sendSocial(new JSONObject().put("status", "AlongWHGame").put("userId", id).put("alongInvitedId", partnerId));
+            } else {
+                int pairs = socialClients / 2;
+                int otherPair = pairs > 1 ? (pair + 1 + ThreadLocalRandom.current().nextInt(pairs - 1)) % pairs : pair;
+                sendSocial(new JSONObject().put("status", "InviteShip").put("userId", id)
+                        .put("invitedUserId", "load-s" + (otherPair * 2 + 1)));
+            }
+        }
+
+        private void sendSocial(JSONObject message) {
+            if (!stopping) {
+                sendIfOpen(message.toString());
+                socialSent.increment();
+            }
+        }
+
+        @Override
+        protected void onClosed() {
+            ScheduledFuture<?> current = ticker;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.enums.ReadyState;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+
+import javax.net.ssl.SSLSession;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+// 不经过网络的连接，只统计发给它的帧数和负载字节数
+class MockWebSocket implements WebSocket {
+    private static final Draft_6455 DRAFT = new Draft_6455();
+
+    private final IProtocol protocol;
+    private boolean open = true;
+    private Object attachment;
+    private long frames;
+    private long bytes;
+
+    MockWebSocket(boolean binary) {
+        protocol = new Protocol(binary ? BinaryProtocol.NAME : "");
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void sendFrame(Framedata framedata) {
+        frames++;
+        bytes += framedata.getPayloadData().remaining();
+    }
+
+    @Override
+    public void sendFrame(Collection<Framedata> frameList) {
+        for (Framedata framedata : frameList) {
+            sendFrame(framedata);
+        }
+    }
+
+    @Override
+    public void send(String text) {
+        frames++;
+        bytes += text.length();
+    }
+
+    @Override
+    public void send(ByteBuffer bytes) {
+        frames++;
+        this.bytes += bytes.remaining();
+    }
+
+    @Override
+    public void send(byte[] bytes) {
+        frames++;
+        this.bytes += bytes.length;
+    }
+
+    @Override
+    public void sendFragmentedFrame(Opcode op, ByteBuffer buffer, boolean fin) {
+        frames++;
+        bytes += buffer.remaining();
+    }
+
+    @Override
+    public void sendPing() {
+    }
+
+    @Override
+    public void close(int code, String message) {
+        open = false;
+    }
+
+    @Override
+    public void close(int code) {
+        open = false;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public void closeConnection(int code, String message) {
+        open = false;
+    }
+
+    @Override
+    public boolean hasBufferedData() {
+        return false;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalSocketAddress() {
+        return null;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isClosing() {
+        return false;
+    }
+
+    @Override
+    public boolean isFlushAndClose() {
+        return false;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return !open;
+    }
+
+    @Override
+    public Draft getDraft() {
+        return DRAFT;
+    }
+
+    @Override
+    public ReadyState getReadyState() {
+        return open ? ReadyState.OPEN : ReadyState.CLOSED;
+    }
+
+    @Override
+    public String getResourceDescriptor() {
+        return "/";
+    }
+
+    @Override
+    public <T> void setAttachment(T attachment) {
+        this.attachment = attachment;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getAttachment() {
+        return (T) attachment;
+    }
+
+    @Override
+    public boolean hasSSLSupport() {
+        return false;
+    }
+
+    @Override
+    public SSLSession getSSLSession() {
+        throw new IllegalArgumentException("Mock connection has no SSL session");
+    }
+
+    @Override
+    public IProtocol getProtocol() {
+        return protocol;
+    }
+}
@@ -0,0 +1,77 @@
+package com.link.socket;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// 对局步骤转发：每次操作是一个房间内三名成员各发一步，tickMillis>0 时随后模拟tick到期
+// frames 计数器给出每次操作写出的帧数，对比逐条转发和按tick合并
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RelayBenchmark {
+
+    @Param({"0", "20"})
+    public long tickMillis;
+
+    @Param({"1", "10000"})
+    public int rooms;
+
+    @Param({"false", "true"})
+    public boolean binary;
+
+    private InlineRoomExecutor executor;
+    private MultiChatServer server;
+    private MockWebSocket[][] roomMembers;
+    private String[] steps;
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Frames {
+        public long frames;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            frames = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        executor = new InlineRoomExecutor();
+        server = BenchSupport.newServer(executor);
+        server.setStepTickMillis(tickMillis);
+        roomMembers = new MockWebSocket[rooms][ChatRoom.MAX_MEMBERS];
+        for (int r = 0; r < rooms; r++) {
+            for (int i = 0; i < ChatRoom.MAX_MEMBERS; i++) {
+                roomMembers[r][i] = BenchSupport.open(server, binary);
+            }
+            BenchSupport.fillRoom(server, roomMembers[r], "r" + r + "p");
+        }
+        steps = new String[]{
+                BenchSupport.step("p0", "dice:6"),
+                BenchSupport.step("p1", "move:12"),
+                BenchSupport.step("p2", "buy:12")};
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public void relayTick(Frames counter) {
+        MockWebSocket[] members = roomMembers[next];
+        next = next + 1 == rooms ? 0 : next + 1;
+        long before = BenchSupport.framesOf(members);
+        for (int i = 0; i < steps.length; i++) {
+            server.onMessage(members[i], steps[i]);
+        }
+        executor.runScheduled();
+        counter.frames += BenchSupport.framesOf(members) - before;
+    }
+}
@@ -0,0 +1,48 @@
+package com.link.socket;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// 成员名单增量广播和完整名单编码
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoomBroadcastBenchmark {
+
+    @Param({"false", "true"})
+    public boolean binary;
+
+    private MultiChatServer server;
+    private ChatRoom chatRoom;
+    private Member newMember;
+
+    @Setup
+    public void setUp() {
+        server = BenchSupport.newServer(new InlineRoomExecutor());
+        MockWebSocket[] members = new MockWebSocket[ChatRoom.MAX_MEMBERS];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = BenchSupport.open(server, binary);
+        }
+        chatRoom = BenchSupport.fillRoom(server, members, "p");
+        newMember = chatRoom.getMembers().get(ChatRoom.MAX_MEMBERS - 1);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public void broadcastMemberJoined() {
+        server.broadcastMemberJoined(chatRoom, newMember);
+    }
+
+    @Benchmark
+    public String memberInfoJson() {
+        return chatRoom.getMemberInfo().toString();
+    }
+}
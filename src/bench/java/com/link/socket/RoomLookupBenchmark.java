@@ -0,0 +1,63 @@
+package com.link.socket;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 按连接和按roomId查找房间，房间数从10到10万
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoomLookupBenchmark {
+    private static final int PROBES = 1 << 12;
+
+    @Param({"10", "1000", "100000"})
+    public int rooms;
+
+    private MultiChatServer server;
+    private MockWebSocket[] probeConns;
+    private String[] probeRoomIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        server = BenchSupport.newServer(new InlineRoomExecutor());
+        MockWebSocket[] conns = new MockWebSocket[rooms];
+        String[] roomIds = new String[rooms];
+        for (int r = 0; r < rooms; r++) {
+            // 不走 onOpen，避免为10万个连接建立会话
+            conns[r] = new MockWebSocket(false);
+            ChatRoom chatRoom = BenchSupport.fillRoom(server, new MockWebSocket[]{conns[r]}, "r" + r + "p");
+            roomIds[r] = String.valueOf(chatRoom.getRoomId());
+        }
+        Random random = new Random(42);
+        probeConns = new MockWebSocket[PROBES];
+        probeRoomIds = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            int r = random.nextInt(rooms);
+            probeConns[i] = conns[r];
+            probeRoomIds[i] = roomIds[r];
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public ChatRoom byWebSocket() {
+        next = (next + 1) & (PROBES - 1);
+        return server.getChatRoomByWebSocket(probeConns[next]);
+    }
+
+    @Benchmark
+    public ChatRoom byId() {
+        next = (next + 1) & (PROBES - 1);
+        return server.getChatRoomById(probeRoomIds[next]);
+    }
+}
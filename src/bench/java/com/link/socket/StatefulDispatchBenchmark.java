@@ -0,0 +1,87 @@
+package com.link.socket;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 会改变房间或好友关系的消息，每次调用前在 Level.Invocation 上恢复状态；
+// 这些操作都在微秒级，调用级 setup 的计时误差可以接受
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatefulDispatchBenchmark {
+
+    @Param({"RemoveShip", "AlongWHGame", "AlongWHGameDeci", "CancelRoom", "IdSend"})
+    public String status;
+
+    private static final List<String> FRIENDS = List.of("u1", "u2", "u3");
+
+    private MultiChatServer server;
+    private MockWebSocket host;
+    private MockWebSocket friend;
+    private MockWebSocket joiner;
+    private String message;
+
+    @Setup
+    public void setUp() {
+        server = BenchSupport.newServer(new InlineRoomExecutor());
+        host = BenchSupport.open(server, false);
+        server.onMessage(host, BenchSupport.link("u0", FRIENDS));
+        friend = BenchSupport.open(server, false);
+        server.onMessage(friend, BenchSupport.link("u1", List.of("u0")));
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        switch (status) {
+            case "RemoveShip":
+                // 好友关系以服务器为准，重新Link不会恢复已删除的好友
+                server.getFriendGraph().addFriendship("u0", "u1");
+                message = "{\"status\":\"RemoveShip\",\"userId\":\"u0\",\"removeUserId\":\"u1\"}";
+                break;
+            case "AlongWHGame":
+                cancelRoom();
+                message = "{\"status\":\"AlongWHGame\",\"userId\":\"u0\",\"alongInvitedId\":\"u1\"}";
+                break;
+            case "AlongWHGameDeci": {
+                cancelRoom();
+                server.onMessage(host, "{\"status\":\"AlongWHGame\",\"userId\":\"u0\",\"alongInvitedId\":\"u1\"}");
+                int roomId = server.getChatRoomByWebSocket(host).getRoomId();
+                message = "{\"status\":\"AlongWHGameDeci\",\"decision\":\"recive\",\"alonginvitedId\":\"u1\",\"nickName\":\"n1\",\"roomId\":\"" + roomId + "\"}";
+                break;
+            }
+            case "CancelRoom":
+                cancelRoom();
+                server.onMessage(host, "{\"status\":\"AlongWHGame\",\"userId\":\"u0\",\"alongInvitedId\":\"u1\"}");
+                message = "{\"status\":\"CancelRoom\",\"userId\":\"u0\"}";
+                break;
+            default:
+                // 上一次加入的连接离开，空房间随之回收
+                if (joiner != null) {
+                    joiner.close();
+                    server.onClose(joiner, 1000, "", false);
+                }
+                joiner = BenchSupport.open(server, false);
+                message = "{\"status\":\"IdSend\",\"playId\":\"p0\",\"nickName\":\"n0\"}";
+                break;
+        }
+    }
+
+    private void cancelRoom() {
+        server.onMessage(host, "{\"status\":\"CancelRoom\",\"userId\":\"u0\"}");
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public void onMessage() {
+        server.onMessage("IdSend".equals(status) ? joiner : host, message);
+    }
+}
@@ -3,7 +3,8 @@ package com.link.MonopolyOnPaper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-@SpringBootApplication
+// 扫描 com.link 下的组件，游戏服务器的配置在 com.link.socket
+@SpringBootApplication(scanBasePackages = "com.link")
 public class MonopolyOnPaperApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,314 @@
+package com.link.socket;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.java_websocket.WebSocket;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 只监听127.0.0.1的管理接口，返回JSON：
+//   GET  /stats                       存活数量和全局计数
+//   GET  /rooms?state=gaming&limit=N  房间状态、成员和每秒转发的步骤数
+//   GET  /connections?limit=N         每个连接的流量，按最近一秒的消息数排序
+//   GET  /top?n=10                    消息最多的连接
+//   POST /kick?conn=Client12 或 ?userId=u1
+//   POST /rooms/close?roomId=N
+//   POST /broadcast                   请求体原样广播给所有客户端
+//   POST /stop                        停止服务器，只在提供了停止回调时可用
+// 流量取自每个连接和房间自己的计数器，在单独的线程上处理请求，不占用网络线程和房间分片
+class AdminServer {
+    private static final int DEFAULT_LIMIT = 200;
+
+    private final MultiChatServer server;
+    private final LifecycleManager lifecycle;
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    public AdminServer(MultiChatServer server, LifecycleManager lifecycle, int port, Runnable onStop) throws IOException {
+        this.server = server;
+        this.lifecycle = lifecycle;
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "admin-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        http.setExecutor(executor);
+        http.createContext("/stats", get(this::stats));
+        http.createContext("/rooms", get(this::rooms));
+        http.createContext("/connections", get(this::connections));
+        http.createContext("/top", get(this::top));
+        http.createContext("/kick", post(this::kick));
+        http.createContext("/rooms/close", post(this::closeRoom));
+        http.createContext("/broadcast", post(this::broadcast));
+        if (onStop != null) {
+            // onStop只发出停止信号，由其他线程停止服务器；stop会等待本次响应写完
+            http.createContext("/stop", post((query, body) -> {
+                onStop.run();
+                return ok();
+            }));
+        }
+        http.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return http.getAddress();
+    }
+
+    // 最多等待1秒让正在处理的请求写完响应
+    public void stop() {
+        http.stop(1);
+        executor.shutdown();
+    }
+
+    // ---- 查询 ----
+
+    private Object stats(Map<String, String> query, String body) {
+        ServerMetricsMXBean metrics = server.getMetrics();
+        JSONObject json = new JSONObject();
+        json.put("live", new JSONObject(server.getLiveCounts()));
+        json.put("bytesIn", metrics.getBytesIn());
+        json.put("bytesOut", metrics.getBytesOut());
+        json.put("messages", new JSONObject(metrics.getMessageCounts()));
+        json.put("rateLimited", new JSONObject(metrics.getRateLimitedCounts()));
+        json.put("rateLimitDisconnects", metrics.getRateLimitDisconnects());
+        json.put("outboundDropped", metrics.getOutboundDropped());
+        json.put("outboundCoalesced", metrics.getOutboundCoalesced());
+        json.put("eventLogDropped", metrics.getEventLogDropped());
+        return json;
+    }
+
+    private Object rooms(Map<String, String> query, String body) {
+        String state = query.get("state");
+        int limit = intParam(query, "limit", DEFAULT_LIMIT);
+        long now = System.nanoTime();
+        JSONArray rooms = new JSONArray();
+        for (ChatRoom chatRoom : lifecycle.getChatRooms().values()) {
+            if (rooms.length() >= limit) {
+                break;
+            }
+            String roomState = stateOf(chatRoom);
+            if (state != null && !state.equals(roomState)) {
+                continue;
+            }
+            JSONArray members = new JSONArray();
+            for (Member member : chatRoom.getMembers()) {
+                members.put(new JSONObject()
+                        .put("playId", member.getPlayId())
+                        .put("nickName", member.getNickName())
+                        .put("connected", !member.isDisconnected()));
+            }
+            TrafficMeter relayed = chatRoom.getRelayed();
+            rooms.put(new JSONObject()
+                    .put("roomId", chatRoom.getRoomId())
+                    .put("state", roomState)
+                    .put("inviteOnly", chatRoom.isInviteOnly())
+                    .put("seats", chatRoom.getReservedSeats())
+                    .put("members", members)
+                    .put("steps", relayed.getMessages())
+                    .put("stepsPerSecond", relayed.getMessagesPerSecond(now))
+                    .put("stepBytesPerSecond", relayed.getBytesPerSecond(now))
+                    .put("idleMillis", (now - chatRoom.getLastActivityNanos()) / 1_000_000));
+        }
+        return rooms;
+    }
+
+    private static String stateOf(ChatRoom chatRoom) {
+        if (chatRoom.isClosed()) {
+            return "closed";
+        }
+        return chatRoom.isGaming() ? "gaming" : "waiting";
+    }
+
+    private Object connections(Map<String, String> query, String body) {
+        return connectionsByRate(intParam(query, "limit", DEFAULT_LIMIT));
+    }
+
+    private Object top(Map<String, String> query, String body) {
+        return connectionsByRate(intParam(query, "n", 10));
+    }
+
+    // 按最近一秒的消息数排序，其次按累计消息数
+    private JSONArray connectionsByRate(int limit) {
+        long now = System.nanoTime();
+        List<ConnectionTraffic> traffic = new ArrayList<>();
+        for (Map.Entry<WebSocket, String> entry : lifecycle.getClientInfo().entrySet()) {
+            ClientSession session = entry.getKey().getAttachment();
+            if (session != null) {
+                TrafficMeter inbound = session.getInbound();
+                traffic.add(new ConnectionTraffic(entry.getKey(), entry.getValue(), session,
+                        inbound.getMessagesPerSecond(now), inbound.getMessages()));
+            }
+        }
+        traffic.sort(Comparator.comparingLong((ConnectionTraffic t) -> t.messagesPerSecond)
+                .thenComparingLong(t -> t.messages).reversed());
+        JSONArray connections = new JSONArray();
+        for (ConnectionTraffic t : traffic.subList(0, Math.max(0, Math.min(limit, traffic.size())))) {
+            TrafficMeter inbound = t.session.getInbound();
+            OutboundQueue outbound = t.session.getOutbound();
+            JSONObject userInfo = lifecycle.getUserConnections().get(t.conn);
+            ChatRoom chatRoom = lifecycle.getChatRoomByWebSocket(t.conn);
+            JSONObject json = new JSONObject()
+                    .put("conn", t.clientIdentifier)
+                    .put("messages", t.messages)
+                    .put("bytes", inbound.getBytes())
+                    .put("messagesPerSecond", t.messagesPerSecond)
+                    .put("bytesPerSecond", inbound.getBytesPerSecond(now))
+                    .put("outboundDepth", outbound.getDepth())
+                    .put("outboundSent", outbound.getSent())
+                    .put("outboundDropped", outbound.getDropped());
+            if (userInfo != null) {
+                json.put("userId", userInfo.getString("userId"));
+            }
+            if (chatRoom != null) {
+                json.put("roomId", chatRoom.getRoomId());
+            }
+            connections.put(json);
+        }
+        return connections;
+    }
+
+    private static final class ConnectionTraffic {
+        final WebSocket conn;
+        final String clientIdentifier;
+        final ClientSession session;
+        final long messagesPerSecond;
+        final long messages;
+
+        ConnectionTraffic(WebSocket conn, String clientIdentifier, ClientSession session, long messagesPerSecond, long messages) {
+            this.conn = conn;
+            this.clientIdentifier = clientIdentifier;
+            this.session = session;
+            this.messagesPerSecond = messagesPerSecond;
+            this.messages = messages;
+        }
+    }
+
+    // ---- 操作 ----
+
+    private Object kick(Map<String, String> query, String body) {
+        String clientIdentifier = query.get("conn");
+        String userId = query.get("userId");
+        if (clientIdentifier == null && userId == null) {
+            throw new IllegalArgumentException("conn or userId is required");
+        }
+        boolean found = clientIdentifier != null ? server.kickConnection(clientIdentifier) : server.kickUser(userId);
+        return found ? ok() : null;
+    }
+
+    private Object closeRoom(Map<String, String> query, String body) {
+        if (!query.containsKey("roomId")) {
+            throw new IllegalArgumentException("roomId is required");
+        }
+        return server.closeRoom(intParam(query, "roomId", 0)) ? ok() : null;
+    }
+
+    private Object broadcast(Map<String, String> query, String body) {
+        if (body.isEmpty()) {
+            throw new IllegalArgumentException("body is required");
+        }
+        server.broadcastToAll(body);
+        return ok();
+    }
+
+    private static JSONObject ok() {
+        return new JSONObject().put("ok", true);
+    }
+
+    // ---- HTTP ----
+
+    // 处理函数返回null表示找不到对象，抛出IllegalArgumentException表示参数错误
+    private interface Action {
+        Object handle(Map<String, String> query, String body);
+    }
+
+    private static HttpHandler get(Action action) {
+        return exchange -> handle(exchange, "GET", action);
+    }
+
+    private static HttpHandler post(Action action) {
+        return exchange -> handle(exchange, "POST", action);
+    }
+
+    private static void handle(HttpExchange exchange, String method, Action action) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals(method)) {
+                respond(exchange, 405, error("Use " + method));
+                return;
+            }
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            Object result;
+            try {
+                result = action.handle(parseQuery(exchange.getRequestURI().getRawQuery()), body);
+            } catch (IllegalArgumentException ex) {
+                respond(exchange, 400, error(ex.getMessage()));
+                return;
+            }
+            if (result == null) {
+                respond(exchange, 404, error("Not found"));
+            } else {
+                respond(exchange, 200, result.toString());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String error(String message) {
+        return new JSONObject().put("error", message).toString();
+    }
+
+    private static void respond(HttpExchange exchange, int code, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(key, value);
+        }
+        return query;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+    }
+}
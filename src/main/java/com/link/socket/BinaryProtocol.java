@@ -0,0 +1,235 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.protocols.IProtocol;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// 紧凑的二进制游戏协议，握手时通过 Sec-WebSocket-Protocol 协商，未协商的连接继续使用JSON
+// 帧格式：1字节操作码 + 字段；整数使用无符号varint，字符串为varint长度 + UTF-8字节
+// 房间使用数字roomId（0表示未指定），玩家使用房间内的座位号（加入顺序）
+// 成员变化以带版本号的增量发送，版本号不连续时客户端发送 OP_ROSTER_REQUEST 取回完整名单
+// 好友等非对局消息仍然使用JSON文本帧
+final class BinaryProtocol {
+    public static final String NAME = "monopoly.bin.v2";
+
+    // 客户端 -> 服务器
+    public static final byte OP_ID_SEND = 0x01;          // [playId][nickName][roomId][lastSeq + 1]，lastSeq可省略，见readLastSeq
+    public static final byte OP_PLAY_STEP = 0x02;        // [event bytes...]，事件是JSON对象时可带状态字段，见GameState
+    public static final byte OP_ROSTER_REQUEST = 0x03;   // 对应 Roster
+
+    // 服务器 -> 客户端
+    public static final byte OP_REQUEST_ID = (byte) 0x80;     // 对应 IdSend
+    public static final byte OP_JOIN_SUCCESS = (byte) 0x81;   // [roomId][index][version][members]，对应 JinSuccess
+    public static final byte OP_MEMBER_JOINED = (byte) 0x82;  // [version][seat][playId][nickName]，对应 MemberJoined
+    public static final byte OP_MEMBER_LEFT = (byte) 0x83;    // [version][seat]，对应 MemberLeft
+    public static final byte OP_GAME_BEGIN = (byte) 0x84;     // [roomId]，对应 GBegin
+    public static final byte OP_MEMBER_STEP = (byte) 0x85;    // [seat][event bytes...]，对应 MemberPlayStep
+    public static final byte OP_ROOM_CLOSED = (byte) 0x86;    // 对应 RoomClosed
+    public static final byte OP_MEMBER_STEPS = (byte) 0x87;   // [count]{[seat][length][event bytes]}，对应 MemberPlaySteps
+    public static final byte OP_HOST_CHANGED = (byte) 0x88;   // [version][playId]，对应 HostChanged
+    public static final byte OP_ROSTER = (byte) 0x89;         // [roomId][version][members]，对应 Roster
+
+    private BinaryProtocol() {
+    }
+
+    public static boolean isBinary(WebSocket conn) {
+        IProtocol protocol = conn.getProtocol();
+        return protocol != null && NAME.equals(protocol.getProvidedProtocol());
+    }
+
+    public static ByteBuffer encodeOpcode(byte opcode) {
+        return ByteBuffer.wrap(new byte[]{opcode});
+    }
+
+    public static ByteBuffer encodeRoomId(byte opcode, int roomId) {
+        Writer writer = new Writer(6);
+        writer.writeByte(opcode);
+        writer.writeVarInt(roomId);
+        return writer.toByteBuffer();
+    }
+
+    public static ByteBuffer encodeJoinSuccess(int roomId, int index, int version, List<Member> members) {
+        Writer writer = new Writer(16 + members.size() * 24);
+        writer.writeByte(OP_JOIN_SUCCESS);
+        writer.writeVarInt(roomId);
+        writer.writeByte(index);
+        writer.writeVarInt(version);
+        writeMembers(writer, members);
+        return writer.toByteBuffer();
+    }
+
+    public static ByteBuffer encodeRoster(int roomId, int version, List<Member> members) {
+        Writer writer = new Writer(16 + members.size() * 24);
+        writer.writeByte(OP_ROSTER);
+        writer.writeVarInt(roomId);
+        writer.writeVarInt(version);
+        writeMembers(writer, members);
+        return writer.toByteBuffer();
+    }
+
+    public static ByteBuffer encodeMemberJoined(int version, int seat, String playId, String nickName) {
+        Writer writer = new Writer(16 + playId.length() + nickName.length() * 3);
+        writer.writeByte(OP_MEMBER_JOINED);
+        writer.writeVarInt(version);
+        writer.writeByte(seat);
+        writer.writeString(playId);
+        writer.writeString(nickName);
+        return writer.toByteBuffer();
+    }
+
+    public static ByteBuffer encodeMemberLeft(int version, int seat) {
+        Writer writer = new Writer(8);
+        writer.writeByte(OP_MEMBER_LEFT);
+        writer.writeVarInt(version);
+        writer.writeByte(seat);
+        return writer.toByteBuffer();
+    }
+
+    public static ByteBuffer encodeHostChanged(int version, String playId) {
+        Writer writer = new Writer(8 + playId.length());
+        writer.writeByte(OP_HOST_CHANGED);
+        writer.writeVarInt(version);
+        writer.writeString(playId);
+        return writer.toByteBuffer();
+    }
+
+    public static ByteBuffer encodeMemberStep(int seat, byte[] event) {
+        Writer writer = new Writer(2 + event.length);
+        writer.writeByte(OP_MEMBER_STEP);
+        writer.writeByte(seat);
+        writer.writeBytes(event, 0, event.length);
+        return writer.toByteBuffer();
+    }
+
+    public static ByteBuffer encodeMemberSteps(List<PlayStep> steps) {
+        Writer writer = new Writer(2 + steps.size() * 24);
+        writer.writeByte(OP_MEMBER_STEPS);
+        writer.writeVarInt(steps.size());
+        for (PlayStep step : steps) {
+            byte[] event = step.getEvent();
+            writer.writeByte(step.getSeat());
+            writer.writeVarInt(event.length);
+            writer.writeBytes(event, 0, event.length);
+        }
+        return writer.toByteBuffer();
+    }
+
+    private static void writeMembers(Writer writer, List<Member> members) {
+        writer.writeByte(members.size());
+        for (Member member : members) {
+            writer.writeString(member.getPlayId());
+            writer.writeString(member.getNickName());
+        }
+    }
+
+    public static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    // OP_ID_SEND末尾的可选字段：重连时客户端收到的最后一个步骤序号加1，0或省略表示没有（-1），补发全部保留的步骤
+    public static long readLastSeq(ByteBuffer buffer) {
+        return buffer.hasRemaining() ? readVarLong(buffer) - 1 : -1;
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (!buffer.hasArray()) {
+            // 直接缓冲区（例如映射的日志文件）先复制出来
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    public static byte[] readRemaining(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    // 简单的可增长字节写入器
+    static final class Writer {
+        private byte[] bytes;
+        private int size;
+
+        Writer(int capacity) {
+            bytes = new byte[Math.max(capacity, 8)];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] src, int offset, int length) {
+            ensure(length);
+            System.arraycopy(src, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            writeBytes(utf8, 0, utf8.length);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 房间状态只在所属分片线程上修改，其他线程只读取成员快照和状态标记
+class ChatRoom {
+    public static final int MAX_MEMBERS = 4; // 房间最多允许4名成员
+
+    private int roomId;
+    private volatile boolean isGaming; // 添加isGaming属性
+    private volatile boolean closed; // 房间已关闭，过期的引用据此丢弃事件
+    private volatile boolean inviteOnly; // 通过好友邀请创建的房间，不参与随机匹配
+    private volatile long lastActivityNanos = System.nanoTime(); // 最近一次加入、离开或转发的时间，用于空置回收
+    private List<Member> members;
+    private final AtomicInteger seats = new AtomicInteger(); // 已占用和已预留的座位数，可在任意线程上预留
+    private final AtomicBoolean matchQueued = new AtomicBoolean(); // 是否已在匹配队列中
+    private final List<PlayStep> pendingSteps = new ArrayList<>(); // 当前tick内待转发的步骤，只在分片线程上访问
+    private GameState gameState; // 开局时创建，只在分片线程上访问
+    private EventRing eventRing; // 最近的对局步骤，第一条步骤转发时创建，只在分片线程上访问
+    private long turnDeadlineNanos; // 当前一手的行动截止时间，0表示不限时，只在分片线程上访问
+    private final TrafficMeter relayed = new TrafficMeter(); // 转发的对局步骤，只在分片线程上记录
+    private int rosterVersion; // 成员名单的版本号，每次加入或离开加一，只在分片线程上访问
+
+    public ChatRoom(int roomId) {
+        this.roomId = roomId;
+        this.isGaming = false; // 默认房间游戏状态为false，即未进行游戏
+        members = new CopyOnWriteArrayList<>();
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public boolean isGaming() {
+        return isGaming;
+    }
+
+    public void setGaming(boolean isGaming) {
+        this.isGaming = isGaming;
+    }
+
+    // 开局：标记为游戏中，并按当前成员顺序分配座位、创建对局状态
+    public void startGame() {
+        String[] playIds = new String[members.size()];
+        for (int i = 0; i < playIds.length; i++) {
+            playIds[i] = members.get(i).getPlayId();
+        }
+        gameState = new GameState(playIds);
+        isGaming = true;
+    }
+
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    public EventRing getEventRing() {
+        return eventRing;
+    }
+
+    public EventRing getOrCreateEventRing(int capacity) {
+        if (eventRing == null) {
+            eventRing = new EventRing(capacity);
+        }
+        return eventRing;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setClosed(boolean closed) {
+        this.closed = closed;
+    }
+
+    public long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    public void touch() {
+        lastActivityNanos = System.nanoTime();
+    }
+
+    public TrafficMeter getRelayed() {
+        return relayed;
+    }
+
+    public long getTurnDeadlineNanos() {
+        return turnDeadlineNanos;
+    }
+
+    public void setTurnDeadlineNanos(long turnDeadlineNanos) {
+        this.turnDeadlineNanos = turnDeadlineNanos;
+    }
+
+    public boolean isInviteOnly() {
+        return inviteOnly;
+    }
+
+    public void setInviteOnly(boolean inviteOnly) {
+        this.inviteOnly = inviteOnly;
+    }
+
+    // ChatRoom类内部的isHost方法
+    public boolean isHost(String userId) {
+        if (members.isEmpty()) {
+            return false;
+        }
+        Member hostMember = members.get(0); // 假设房主是第一个加入房间的成员
+        return hostMember.getPlayId().equals(userId);
+    }
+
+    public Member getMemberByWebSocket(WebSocket webSocket) {
+        for (Member member : members) {
+            if (member.getWebSocket() == webSocket) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    public Member getMemberByPlayId(String playId) {
+        for (Member member : members) {
+            if (member.getPlayId().equals(playId)) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    // 获取房主的userId
+    public String getHostId() {
+        if (!members.isEmpty()) {
+            return members.get(0).getPlayId();
+        }
+        return null;
+    }
+
+    public String getMemberPlayId(WebSocket conn) {
+        for (Member member : members) {
+            if (member.getWebSocket() == conn) {
+                return member.getPlayId();
+            }
+        }
+        return null;
+    }
+
+    // 判断房间是否允许加入
+    // ChatRoom类内部的isJoinAllowed方法
+    public boolean isJoinAllowed() {
+        return seats.get() < MAX_MEMBERS;
+    }
+
+    // 预留一个座位，房间已满、开始游戏或已关闭时失败；预留成功后必须加入成员或释放座位
+    public boolean tryReserveSeat() {
+        while (true) {
+            int current = seats.get();
+            if (current >= MAX_MEMBERS || isGaming || closed) {
+                return false;
+            }
+            if (seats.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void releaseSeat() {
+        seats.decrementAndGet();
+    }
+
+    public int getReservedSeats() {
+        return seats.get();
+    }
+
+    // 标记房间进入匹配队列，已在队列中时返回false
+    public boolean markMatchQueued() {
+        return matchQueued.compareAndSet(false, true);
+    }
+
+    public void clearMatchQueued() {
+        matchQueued.set(false);
+    }
+
+    public Member addMember(WebSocket conn, String playId, String nickName) {
+        Member member = new Member(conn, playId, nickName);
+        members.add(member);
+        rosterVersion++;
+        return member;
+    }
+
+    public boolean removeMember(WebSocket conn) {
+        if (!members.removeIf(member -> member.getWebSocket() == conn)) {
+            return false;
+        }
+        rosterVersion++;
+        return true;
+    }
+
+    public boolean removeMember(Member member) {
+        if (!members.remove(member)) {
+            return false;
+        }
+        rosterVersion++;
+        return true;
+    }
+
+    public int getRosterVersion() {
+        return rosterVersion;
+    }
+
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    public List<PlayStep> getPendingSteps() {
+        return pendingSteps;
+    }
+
+    // 取出当前tick内的全部步骤
+    public List<PlayStep> drainPendingSteps() {
+        List<PlayStep> steps = new ArrayList<>(pendingSteps);
+        pendingSteps.clear();
+        return steps;
+    }
+
+    public int getMemberIndex(WebSocket conn) {
+        for (int i = 0; i < members.size(); i++) {
+            if (members.get(i).getWebSocket() == conn) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public JSONArray getMemberInfo() {
+        JSONArray memberInfo = new JSONArray();
+        for (Member member : members) {
+            JSONObject info = new JSONObject();
+            info.put("playId", member.getPlayId());
+            info.put("nickName", member.getNickName());
+            memberInfo.put(info);
+        }
+        return memberInfo;
+    }
+}
@@ -0,0 +1,69 @@
+package com.link.socket;
+
+// 单个连接的会话状态，通过 WebSocket.setAttachment 挂在连接上，连接关闭后随连接一起回收
+class ClientSession {
+    private final String clientIdentifier;
+    private final OutboundQueue outbound;
+    private final OutboundDispatcher dispatcher;
+    private volatile long lastInboundNanos = System.nanoTime(); // 最近一次收到消息或pong的时间
+    private volatile TimingWheel.Timeout heartbeat;
+    // 以下只在该连接的网络线程上访问
+    private final long[] rateLimitState;
+    private boolean throttleNotified; // 本轮连续超限已经通知过客户端
+    private final TrafficMeter inbound = new TrafficMeter(); // 收到的消息，包括被限流的
+
+    ClientSession(String clientIdentifier, OutboundQueue outbound, OutboundDispatcher dispatcher, long[] rateLimitState) {
+        this.clientIdentifier = clientIdentifier;
+        this.outbound = outbound;
+        this.dispatcher = dispatcher;
+        this.rateLimitState = rateLimitState;
+    }
+
+    public String getClientIdentifier() {
+        return clientIdentifier;
+    }
+
+    public OutboundQueue getOutbound() {
+        return outbound;
+    }
+
+    public void send(OutgoingMessage message) {
+        dispatcher.send(outbound, message);
+    }
+
+    public void touch() {
+        lastInboundNanos = System.nanoTime();
+    }
+
+    public long getLastInboundNanos() {
+        return lastInboundNanos;
+    }
+
+    public void setHeartbeat(TimingWheel.Timeout heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    // 连接关闭时停止心跳检查
+    public void cancelHeartbeat() {
+        TimingWheel.Timeout current = heartbeat;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    public TrafficMeter getInbound() {
+        return inbound;
+    }
+
+    public long[] getRateLimitState() {
+        return rateLimitState;
+    }
+
+    public boolean isThrottleNotified() {
+        return throttleNotified;
+    }
+
+    public void setThrottleNotified(boolean throttleNotified) {
+        this.throttleNotified = throttleNotified;
+    }
+}
@@ -0,0 +1,513 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 集群模式：房间ID按一致性哈希分配到节点，节点之间通过同一端口上 /cluster 路径的WebSocket链路互通。
+// 每个节点主动连接所有已知节点，只通过自己发起的链路发送，对方发起的链路只接收；链路连通即视为节点在线。
+// 在线节点变化时重建哈希环：新房间只在自己负责的ID上创建，已有房间留在原节点直到关闭，
+// 这些房间ID通过hold通告给其他节点，对方占用该ID并把请求重定向过来，房间关闭时通过release归还。
+// 哈希环视图不一致时两个节点可能用同一个ID建了房间：节点ID小的一方胜出，另一方关闭自己的房间并重定向到胜出方。
+// 好友会话只在所连节点上：上下线通过online/offline同步到其他节点，发给不在本节点的用户的消息通过deliver转发，
+// 好友邀请保存在邀请方所连的节点上，连在其他节点上的被邀请方的回复通过accept交给那个节点检查。
+// 好友关系在每个节点上各存一份：增删通过friend/unfriend同步，导入的客户端好友列表通过friends同步，
+// 新节点连入时收到本节点在线用户的好友列表，各节点合并而不删除
+class ClusterNode {
+    static final String PATH = "/cluster";
+    static final String NODE_HEADER = "Cluster-Node";
+    static final String URL_HEADER = "Cluster-Url";
+    static final String SECRET_HEADER = "Cluster-Secret";
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final int FRIENDS_BATCH_USERS = 256; // 同步好友列表时每条消息最多带的用户数
+
+    private final String nodeId;
+    private final String url;
+    private final String secret;
+    private final byte[] secretBytes;
+    private final MultiChatServer server;
+    private final LifecycleManager lifecycle;
+    private final Map<String, PeerLink> links = new ConcurrentHashMap<>(); // 按地址，包括还没连通的
+    private final Map<String, PeerLink> peers = new ConcurrentHashMap<>(); // 按节点ID，只含已连通的
+    private final Map<String, String> remoteUsers = new ConcurrentHashMap<>(); // userId -> 节点
+    private final Map<Integer, String> remoteRooms = new ConcurrentHashMap<>(); // 其他节点保留的房间ID -> 节点
+    private final Set<Integer> heldRooms = ConcurrentHashMap.newKeySet(); // 已通告的本节点不再负责的房间
+    private final Set<Integer> contestedRooms = ConcurrentHashMap.newKeySet(); // 冲突中本节点胜出的房间，新节点连入时同样通告
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "cluster-link");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile HashRing ring;
+    private volatile boolean stopped;
+
+    public ClusterNode(String nodeId, String url, String secret, MultiChatServer server, LifecycleManager lifecycle) {
+        this.nodeId = nodeId;
+        this.url = url;
+        if (secret == null || secret.isBlank()) {
+            // 没有密钥时任何人都能以节点身份连入，投递消息、占用房间ID、伪造在线状态
+            throw new IllegalArgumentException("Cluster mode requires a non-empty cluster secret");
+        }
+        this.secret = secret;
+        this.secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        this.server = server;
+        this.lifecycle = lifecycle;
+        this.ring = new HashRing(List.of(nodeId));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public HashRing getRing() {
+        return ring;
+    }
+
+    public Set<String> getPeerIds() {
+        return peers.keySet();
+    }
+
+    // 连接种子节点，种子中包含自己的地址也无妨
+    public void start(Collection<String> seedUrls) {
+        for (String seedUrl : seedUrls) {
+            connect(seedUrl);
+        }
+    }
+
+    public void shutdown() {
+        stopped = true;
+        scheduler.shutdownNow();
+        for (PeerLink link : links.values()) {
+            link.close();
+        }
+    }
+
+    private void connect(String peerUrl) {
+        if (stopped || peerUrl.equals(url)) {
+            return;
+        }
+        links.computeIfAbsent(peerUrl, key -> {
+            PeerLink link = new PeerLink(key);
+            scheduler.execute(link::connect);
+            return link;
+        });
+    }
+
+    // ---- 路由 ----
+
+    public boolean isPeerConnection(WebSocket conn) {
+        return PATH.equals(conn.getResourceDescriptor());
+    }
+
+    // 新房间只使用本节点负责、且没有让给其他节点的ID
+    public boolean ownsRoomId(int roomId) {
+        return nodeId.equals(ring.ownerOf(roomId)) && !remoteRooms.containsKey(roomId);
+    }
+
+    // 房间不在本节点时返回应重定向到的节点地址，在本节点或无从得知时返回null
+    public String routeRoom(int roomId) {
+        if (lifecycle.getChatRooms().containsKey(roomId)) {
+            // 包括冲突中本节点胜出、哈希环上归其他节点的ID
+            return null;
+        }
+        String holder = remoteRooms.get(roomId);
+        if (holder == null) {
+            holder = ring.ownerOf(roomId);
+        }
+        if (holder == null || holder.equals(nodeId)) {
+            return null;
+        }
+        PeerLink link = peers.get(holder);
+        return link == null ? null : link.peerUrl;
+    }
+
+    public boolean isRemoteUser(String userId) {
+        return remoteUsers.containsKey(userId);
+    }
+
+    // 用户连在其他节点上时转发消息文本，返回是否转发
+    public boolean forwardToUser(String userId, String text, boolean critical) {
+        String node = remoteUsers.get(userId);
+        if (node == null) {
+            return false;
+        }
+        JSONObject message = new JSONObject();
+        message.put("op", "deliver");
+        message.put("userId", userId);
+        message.put("text", text);
+        message.put("critical", critical);
+        return send(node, message);
+    }
+
+    // 好友邀请的回复交给邀请方所连的节点，由保存邀请的节点检查并建立好友关系；返回是否转发
+    public boolean forwardAcceptance(String userId, String invitedUserId, JSONObject reply) {
+        String node = remoteUsers.get(userId);
+        if (node == null) {
+            return false;
+        }
+        JSONObject message = new JSONObject();
+        message.put("op", "accept");
+        message.put("userId", userId);
+        message.put("invitedUserId", invitedUserId);
+        message.put("reply", reply);
+        return send(node, message);
+    }
+
+    // 对局邀请的拒绝交给房间所在节点通知房主
+    public boolean forwardDecision(int roomId, JSONObject decision) {
+        String holder = remoteRooms.getOrDefault(roomId, ring.ownerOf(roomId));
+        if (holder == null || holder.equals(nodeId)) {
+            return false;
+        }
+        JSONObject message = new JSONObject();
+        message.put("op", "decision");
+        message.put("roomId", roomId);
+        message.put("decision", decision);
+        return send(holder, message);
+    }
+
+    public void userOnline(String userId) {
+        broadcast(usersMessage("online", List.of(userId), false));
+    }
+
+    public void userOffline(String userId) {
+        broadcast(usersMessage("offline", List.of(userId), false));
+    }
+
+    public void friendshipAdded(String userId, String friendId) {
+        broadcast(friendshipMessage("friend", userId, friendId));
+    }
+
+    public void friendshipRemoved(String userId, String friendId) {
+        broadcast(friendshipMessage("unfriend", userId, friendId));
+    }
+
+    // 本节点导入了用户的好友列表
+    public void friendsSeeded(String userId) {
+        broadcast(friendsMessage(List.of(userId)));
+    }
+
+    // 冲突中让给其他节点的ID，本节点的房间关闭时不归还，继续为对方占用
+    public boolean isHeldElsewhere(int roomId) {
+        return remoteRooms.containsKey(roomId);
+    }
+
+    // 本节点的房间关闭，通告过的ID归还给负责的节点
+    public void roomReleased(int roomId) {
+        if (heldRooms.remove(roomId) | contestedRooms.remove(roomId)) {
+            broadcast(roomsMessage("release", List.of(roomId)));
+        }
+    }
+
+    // ---- 对方发起的链路 ----
+
+    // 握手时校验密钥，返回对方的节点ID；不是集群链路或密钥不符时返回null
+    public String acceptPeer(ClientHandshake handshake) {
+        // 按固定时间比较，不从耗时泄露密钥前缀
+        byte[] offered = handshake.getFieldValue(SECRET_HEADER).getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(secretBytes, offered) || !handshake.hasFieldValue(NODE_HEADER)) {
+            return null;
+        }
+        return handshake.getFieldValue(NODE_HEADER);
+    }
+
+    // 对方主动连过来，说明它在线，反向连接它
+    public void onPeerOpen(WebSocket conn, ClientHandshake handshake) {
+        String peerId = handshake.getFieldValue(NODE_HEADER);
+        conn.setAttachment(peerId);
+        String peerUrl = handshake.getFieldValue(URL_HEADER);
+        if (!peerUrl.isEmpty() && !peerId.equals(nodeId)) {
+            connect(peerUrl);
+        }
+    }
+
+    public void onPeerMessage(WebSocket conn, String text) {
+        String from = conn.getAttachment();
+        JSONObject message = new JSONObject(text);
+        switch (message.getString("op")) {
+            case "online": {
+                boolean snapshot = message.optBoolean("snapshot");
+                JSONArray users = message.getJSONArray("users");
+                for (int i = 0; i < users.length(); i++) {
+                    String userId = users.getString(i);
+                    remoteUsers.put(userId, from);
+                    if (!snapshot) {
+                        server.notifyFollowers(userId, null);
+                    }
+                }
+                break;
+            }
+            case "offline": {
+                JSONArray users = message.getJSONArray("users");
+                for (int i = 0; i < users.length(); i++) {
+                    remoteUsers.remove(users.getString(i), from);
+                }
+                break;
+            }
+            case "deliver":
+                server.deliverToLocalUser(message.getString("userId"), message.getString("text"), message.optBoolean("critical"));
+                break;
+            case "accept":
+                server.handleRemoteAcceptance(message.getString("userId"), message.getString("invitedUserId"),
+                        message.getJSONObject("reply"));
+                break;
+            case "friend":
+                lifecycle.getFriendGraph().addFriendship(message.getString("userId"), message.getString("friendId"));
+                break;
+            case "unfriend":
+                lifecycle.getFriendGraph().removeFriendship(message.getString("userId"), message.getString("friendId"));
+                break;
+            case "friends": {
+                JSONObject users = message.getJSONObject("users");
+                for (String userId : users.keySet()) {
+                    JSONArray friends = users.getJSONArray(userId);
+                    List<String> friendIds = new ArrayList<>(friends.length());
+                    for (int i = 0; i < friends.length(); i++) {
+                        friendIds.add(friends.getString(i));
+                    }
+                    lifecycle.getFriendGraph().merge(userId, friendIds);
+                }
+                break;
+            }
+            case "decision":
+                server.handleRemoteDecision(message.getInt("roomId"), message.getJSONObject("decision"));
+                break;
+            case "hold": {
+                JSONArray rooms = message.getJSONArray("rooms");
+                for (int i = 0; i < rooms.length(); i++) {
+                    hold(rooms.getInt(i), from);
+                }
+                break;
+            }
+            case "release": {
+                JSONArray rooms = message.getJSONArray("rooms");
+                for (int i = 0; i < rooms.length(); i++) {
+                    int roomId = rooms.getInt(i);
+                    if (remoteRooms.remove(roomId, from)) {
+                        lifecycle.releaseRoomId(roomId);
+                    }
+                }
+                break;
+            }
+            default:
+                server.getEventLog().log(EventLog.Level.WARN, EventLog.Event.CLUSTER_UNKNOWN_OP, null, EventLog.NO_ROOM,
+                        message.getString("op"), "From " + from, null);
+                break;
+        }
+    }
+
+    // 其他节点通告它保留了roomId。同一个ID已被另一方使用时节点ID小的一方胜出，各节点按同一规则得到相同结果
+    private void hold(int roomId, String from) {
+        String holder = remoteRooms.get(roomId);
+        if (from.equals(holder)) {
+            return;
+        }
+        if (holder != null) {
+            // 两个其他节点都通告了这个ID
+            String winner = remoteRooms.merge(roomId, from, (current, offered) -> current.compareTo(offered) <= 0 ? current : offered);
+            logConflict(roomId, from + " and " + holder + " both hold it, " + winner + " wins");
+            return;
+        }
+        if (lifecycle.reserveRoomId(roomId)) {
+            remoteRooms.put(roomId, from);
+            return;
+        }
+        if (from.compareTo(nodeId) < 0) {
+            // 本节点让出：之后的请求重定向到对方，关闭本节点的房间，ID继续为对方占用
+            remoteRooms.put(roomId, from);
+            logConflict(roomId, "Held by " + from + " and in use on " + nodeId + ", " + from + " wins");
+            server.closeRoomHeldElsewhere(roomId);
+        } else {
+            // 本节点胜出：把ID通告回去，对方按同一规则让出；房间关闭时再归还
+            contestedRooms.add(roomId);
+            send(from, roomsMessage("hold", List.of(roomId)));
+            logConflict(roomId, "Held by " + from + " and in use on " + nodeId + ", " + nodeId + " wins");
+        }
+    }
+
+    private void logConflict(int roomId, String detail) {
+        server.getEventLog().log(EventLog.Level.WARN, EventLog.Event.CLUSTER_ROOM_CONFLICT, null, roomId, null, detail, null);
+    }
+
+    // ---- 成员变化 ----
+
+    private void peerUp(PeerLink link) {
+        PeerLink previous = peers.put(link.peerId, link);
+        if (previous != null && previous != link) {
+            // 同一节点换了地址
+            previous.close();
+        }
+        rebalance();
+        // 新节点需要知道本节点全部在线用户和保留的房间
+        List<String> localUsers = new ArrayList<>(server.getLocalUserIds());
+        link.trySend(usersMessage("online", localUsers, true).toString());
+        // 以及这些用户的好友关系，对方可能是在关系建立之后才启动的
+        for (int from = 0; from < localUsers.size(); from += FRIENDS_BATCH_USERS) {
+            link.trySend(friendsMessage(localUsers.subList(from, Math.min(localUsers.size(), from + FRIENDS_BATCH_USERS))).toString());
+        }
+        Set<Integer> announced = new HashSet<>(heldRooms);
+        announced.addAll(contestedRooms);
+        if (!announced.isEmpty()) {
+            link.trySend(roomsMessage("hold", announced).toString());
+        }
+        server.getEventLog().info(EventLog.Event.CLUSTER_NODE_JOINED, null, EventLog.NO_ROOM,
+                link.peerId + " joined, ring " + ring.getNodes());
+    }
+
+    private void peerDown(PeerLink link) {
+        if (link.peerId == null || !peers.remove(link.peerId, link)) {
+            return;
+        }
+        String peerId = link.peerId;
+        remoteUsers.values().removeIf(peerId::equals);
+        for (Iterator<Map.Entry<Integer, String>> iterator = remoteRooms.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Integer, String> entry = iterator.next();
+            if (entry.getValue().equals(peerId)) {
+                iterator.remove();
+                lifecycle.releaseRoomId(entry.getKey());
+            }
+        }
+        rebalance();
+        server.getEventLog().info(EventLog.Event.CLUSTER_NODE_LEFT, null, EventLog.NO_ROOM,
+                peerId + " left, ring " + ring.getNodes());
+    }
+
+    // 按当前在线节点重建哈希环，并通告本节点上不再归自己负责的房间
+    private synchronized void rebalance() {
+        List<String> nodes = new ArrayList<>(peers.keySet());
+        nodes.add(nodeId);
+        HashRing rebuilt = new HashRing(nodes);
+        ring = rebuilt;
+
+        List<Integer> hold = new ArrayList<>();
+        List<Integer> release = new ArrayList<>();
+        for (Integer roomId : lifecycle.getChatRooms().keySet()) {
+            boolean owned = nodeId.equals(rebuilt.ownerOf(roomId));
+            if (!owned && heldRooms.add(roomId)) {
+                hold.add(roomId);
+            } else if (owned && heldRooms.remove(roomId)) {
+                release.add(roomId);
+            }
+        }
+        if (!hold.isEmpty()) {
+            broadcast(roomsMessage("hold", hold));
+        }
+        if (!release.isEmpty()) {
+            broadcast(roomsMessage("release", release));
+        }
+    }
+
+    private static JSONObject usersMessage(String op, Collection<String> userIds, boolean snapshot) {
+        JSONObject message = new JSONObject();
+        message.put("op", op);
+        message.put("users", new JSONArray(userIds));
+        message.put("snapshot", snapshot);
+        return message;
+    }
+
+    private static JSONObject friendshipMessage(String op, String userId, String friendId) {
+        JSONObject message = new JSONObject();
+        message.put("op", op);
+        message.put("userId", userId);
+        message.put("friendId", friendId);
+        return message;
+    }
+
+    private JSONObject friendsMessage(Collection<String> userIds) {
+        JSONObject users = new JSONObject();
+        FriendGraph friendGraph = lifecycle.getFriendGraph();
+        for (String userId : userIds) {
+            users.put(userId, new JSONArray(friendGraph.friendsOf(userId)));
+        }
+        JSONObject message = new JSONObject();
+        message.put("op", "friends");
+        message.put("users", users);
+        return message;
+    }
+
+    private static JSONObject roomsMessage(String op, Collection<Integer> roomIds) {
+        JSONObject message = new JSONObject();
+        message.put("op", op);
+        message.put("rooms", new JSONArray(roomIds));
+        return message;
+    }
+
+    private boolean send(String peerId, JSONObject message) {
+        PeerLink link = peers.get(peerId);
+        return link != null && link.trySend(message.toString());
+    }
+
+    private void broadcast(JSONObject message) {
+        String text = message.toString();
+        for (PeerLink link : peers.values()) {
+            link.trySend(text);
+        }
+    }
+
+    // 本节点发起的链路，断开后定期重连
+    private final class PeerLink extends WebSocketClient {
+        private final String peerUrl;
+        private volatile String peerId;
+        private volatile boolean self;
+
+        PeerLink(String peerUrl) {
+            super(URI.create(peerUrl + PATH), Map.of(NODE_HEADER, nodeId, URL_HEADER, url, SECRET_HEADER, secret));
+            this.peerUrl = peerUrl;
+            setConnectionLostTimeout(10);
+        }
+
+        boolean trySend(String text) {
+            if (!isOpen()) {
+                return false;
+            }
+            try {
+                send(text);
+                return true;
+            } catch (RuntimeException ex) {
+                return false;
+            }
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            peerId = handshake.getFieldValue(NODE_HEADER);
+            if (peerId.isEmpty() || peerId.equals(nodeId)) {
+                // 种子里的自己，或者对方不是集群节点
+                self = true;
+                close();
+                return;
+            }
+            peerUp(this);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            // 只通过对方发起的链路接收
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            peerDown(this);
+            if (!stopped && !self) {
+                scheduler.schedule(this::reconnect, RECONNECT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            // 连接失败时随后会调用onClose并重连
+        }
+    }
+}
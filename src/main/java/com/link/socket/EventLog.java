@@ -0,0 +1,324 @@
+package com.link.socket;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// 结构化事件日志。调用线程只把字段写进预先分配的环形缓冲里的槽位（无锁，缓冲满时丢弃并计数，从不阻塞），
+// 由后台线程格式化成一行一个JSON对象，批量写到文件或标准输出。异常的堆栈也在后台线程上展开
+final class EventLog {
+    static final int NO_ROOM = -1;
+
+    enum Level {
+        INFO, WARN, ERROR
+    }
+
+    enum Event {
+        SERVER_START("server.start"),
+        SERVER_DRAIN_TIMEOUT("server.drainTimeout"),
+        CONNECTION_OPEN("conn.open"),
+        CONNECTION_CLOSE("conn.close"),
+        CONNECTION_ERROR("conn.error"),
+        SOCKET_OPTIONS_FAILED("conn.socketOptions"),
+        UNKNOWN_STATUS("msg.unknownStatus"),
+        MALFORMED_MESSAGE("msg.malformed"),
+        IDENTITY_MISMATCH("msg.identityMismatch"),
+        RATE_LIMIT_DISCONNECT("msg.rateLimitDisconnect"),
+        ROOM_JOIN("room.join"),
+        ROOM_REJOIN("room.rejoin"),
+        ROOM_TASK_FAILED("room.taskFailed"),
+        TIMER_TASK_FAILED("timer.taskFailed"),
+        JOURNAL_RESTORED("journal.restored"),
+        JOURNAL_WRITE_FAILED("journal.writeFailed"),
+        JOURNAL_RECORD_DROPPED("journal.recordDropped"),
+        JOURNAL_CLOSE_FAILED("journal.closeFailed"),
+        JOURNAL_COMPACT_FAILED("journal.compactFailed"),
+        FRIEND_GRAPH_LOADED("friendGraph.loaded"),
+        FRIEND_GRAPH_SAVE_FAILED("friendGraph.saveFailed"),
+        METRICS_REGISTER_FAILED("metrics.registerFailed"),
+        CLUSTER_NODE_JOINED("cluster.nodeJoined"),
+        CLUSTER_NODE_LEFT("cluster.nodeLeft"),
+        CLUSTER_ROOM_CONFLICT("cluster.roomConflict"),
+        CLUSTER_UNKNOWN_OP("cluster.unknownOp"),
+        ADMIN_START("admin.start"),
+        ADMIN_KICK("admin.kick"),
+        ADMIN_CLOSE_ROOM("admin.closeRoom"),
+        ADMIN_BROADCAST("admin.broadcast");
+
+        private final String wireName;
+
+        Event(String wireName) {
+            this.wireName = wireName;
+        }
+
+        public String getWireName() {
+            return wireName;
+        }
+
+        static Event fromWireName(String wireName) {
+            for (Event event : values()) {
+                if (event.wireName.equals(wireName)) {
+                    return event;
+                }
+            }
+            throw new IllegalArgumentException("Unknown event: " + wireName);
+        }
+    }
+
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);  // 缓冲为空时后台线程的检查间隔
+    private static final Event[] EVENTS = Event.values();
+
+    private final Entry[] ring;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();  // 下一个要写入的位置
+    private long head;  // 下一个要输出的位置，只在后台线程上访问
+    private final int[] sampleEvery = new int[EVENTS.length];  // 每N条记录一条，1表示全部记录
+    private final AtomicLongArray sampleCounters = new AtomicLongArray(EVENTS.length);
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final StringBuilder line = new StringBuilder(256);  // 只在后台线程上使用
+    private final Thread worker;
+    private volatile Writer sink = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    private volatile boolean ownsSink;  // 文件由日志负责关闭，标准输出不关闭
+    private volatile boolean running = true;
+
+    EventLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // capacity向上取整为2的幂
+    EventLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        ring = new Entry[size];
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Entry(i);
+        }
+        Arrays.fill(sampleEvery, 1);
+        worker = new Thread(this::run, "event-log");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // 之后的事件追加写到文件，不再写标准输出
+    public void openFile(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        sink = writer;
+        ownsSink = true;
+    }
+
+    // 高频事件每oneIn条只记录一条，输出中带上sample字段便于按比例还原；需在产生事件之前设置
+    public void setSampleRate(Event event, int oneIn) {
+        if (oneIn < 1) {
+            throw new IllegalArgumentException("oneIn must be at least 1: " + oneIn);
+        }
+        sampleEvery[event.ordinal()] = oneIn;
+    }
+
+    public void info(Event event, String connection, int roomId, String detail) {
+        log(Level.INFO, event, connection, roomId, null, detail, null);
+    }
+
+    public void warn(Event event, String connection, String detail, Throwable error) {
+        log(Level.WARN, event, connection, NO_ROOM, null, detail, error);
+    }
+
+    public void error(Event event, String connection, Throwable error) {
+        log(Level.ERROR, event, connection, NO_ROOM, null, null, error);
+    }
+
+    // connection、status、detail、error可以为null，roomId为NO_ROOM时不输出
+    public void log(Level level, Event event, String connection, int roomId, String status, String detail, Throwable error) {
+        int sample = sampleEvery[event.ordinal()];
+        if (sample > 1 && sampleCounters.getAndIncrement(event.ordinal()) % sample != 0) {
+            return;
+        }
+        long position = tail.get();
+        Entry entry;
+        while (true) {
+            entry = ring[(int) position & mask];
+            long diff = entry.sequence - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                // 后台线程跟不上，丢弃而不是等待
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        entry.epochMillis = System.currentTimeMillis();
+        entry.level = level;
+        entry.event = event;
+        entry.connection = connection;
+        entry.roomId = roomId;
+        entry.status = status;
+        entry.detail = detail;
+        entry.error = error;
+        entry.sample = sample;
+        entry.sequence = position + 1;
+    }
+
+    // 因缓冲已满而丢弃的事件数
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    // 写完缓冲中剩余的事件后停止，并关闭日志文件
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        Writer writer = sink;
+        while (true) {
+            boolean stopping = !running;
+            if (sink != writer) {
+                flushQuietly(writer);
+                writer = sink;
+            }
+            int count = drain(writer);
+            if (count > 0) {
+                written.add(count);
+                continue;
+            }
+            flushQuietly(writer);
+            if (stopping) {
+                break;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        if (ownsSink) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                // 关闭时忽略
+            }
+        }
+    }
+
+    // 输出已经发布的事件，返回输出的条数
+    private int drain(Writer writer) {
+        int count = 0;
+        while (true) {
+            Entry entry = ring[(int) head & mask];
+            if (entry.sequence != head + 1) {
+                return count;
+            }
+            format(entry);
+            // 释放引用后归还槽位
+            entry.connection = null;
+            entry.status = null;
+            entry.detail = null;
+            entry.error = null;
+            entry.sequence = head + ring.length;
+            head++;
+            count++;
+            try {
+                writer.append(line);
+            } catch (IOException ex) {
+                // 日志写不出去时丢弃，不影响服务器
+                dropped.increment();
+            }
+        }
+    }
+
+    private void format(Entry entry) {
+        line.setLength(0);
+        line.append("{\"ts\":\"").append(Instant.ofEpochMilli(entry.epochMillis)).append('"');
+        line.append(",\"level\":\"").append(entry.level).append('"');
+        line.append(",\"event\":\"").append(entry.event.wireName).append('"');
+        if (entry.connection != null) {
+            line.append(",\"conn\":").append(JSONObject.quote(entry.connection));
+        }
+        if (entry.roomId != NO_ROOM) {
+            line.append(",\"roomId\":").append(entry.roomId);
+        }
+        if (entry.status != null) {
+            line.append(",\"status\":").append(JSONObject.quote(entry.status));
+        }
+        if (entry.detail != null) {
+            line.append(",\"detail\":").append(JSONObject.quote(entry.detail));
+        }
+        if (entry.sample > 1) {
+            line.append(",\"sample\":").append(entry.sample);
+        }
+        if (entry.error != null) {
+            line.append(",\"error\":").append(JSONObject.quote(entry.error.toString()));
+            if (entry.level == Level.ERROR) {
+                StringWriter stack = new StringWriter();
+                entry.error.printStackTrace(new PrintWriter(stack));
+                line.append(",\"stack\":").append(JSONObject.quote(stack.toString()));
+            }
+        }
+        line.append("}\n");
+    }
+
+    private static void flushQuietly(Writer writer) {
+        try {
+            writer.flush();
+        } catch (IOException ex) {
+            // 下一次写入时再计数
+        }
+    }
+
+    // 环形缓冲的槽位：sequence等于position时可写，等于position + 1时已发布可读
+    private static final class Entry {
+        private volatile long sequence;
+        private long epochMillis;
+        private Level level;
+        private Event event;
+        private String connection;
+        private int roomId;
+        private String status;
+        private String detail;
+        private Throwable error;
+        private int sample;
+
+        private Entry(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.link.socket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 房间最近的对局步骤环形缓冲，断线重连时据此补发错过的步骤；只在房间所属分片线程上访问
+class EventRing {
+    private final PlayStep[] steps;
+    private long lastSeq; // 最近一条步骤的序号，序号从1开始，0表示还没有步骤
+
+    public EventRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        steps = new PlayStep[capacity];
+    }
+
+    // 分配序号并写入，容量满时覆盖最旧的一条
+    public long append(PlayStep step) {
+        long seq = ++lastSeq;
+        step.setSeq(seq);
+        steps[(int) ((seq - 1) % steps.length)] = step;
+        return seq;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    // 仍保留在缓冲中的最旧序号，没有步骤时为lastSeq + 1
+    public long getFirstSeq() {
+        return Math.max(1, lastSeq - steps.length + 1);
+    }
+
+    public int getCapacity() {
+        return steps.length;
+    }
+
+    // 客户端收到的最后序号之后是否都还在缓冲中
+    public boolean covers(long seenSeq) {
+        return seenSeq >= getFirstSeq() - 1 && seenSeq <= lastSeq;
+    }
+
+    // seenSeq之后仍保留的步骤，按序号排列
+    public List<PlayStep> since(long seenSeq) {
+        long from = Math.max(seenSeq + 1, getFirstSeq());
+        List<PlayStep> result = new ArrayList<>((int) Math.max(0, lastSeq - from + 1));
+        for (long seq = from; seq <= lastSeq; seq++) {
+            result.add(steps[(int) ((seq - 1) % steps.length)]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,429 @@
+package com.link.socket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+// 服务器保存的好友关系：userId映射为从1开始的int句柄，每个用户的好友是一个 IntHashSet，好友关系总是双向的。
+// 用户第一次Link时导入客户端带上来的好友列表，之后以服务器为准；可定期把快照写到本地文件，启动时读回。
+// 集群模式下导入和之后的增删都同步到其他节点（见ClusterNode），各节点的好友关系保持一致。
+// 好友列表来自客户端，可以列出任意userId：每个用户最多MAX_FRIENDS个好友，
+// 没有好友也没有Link过的userId在最后一条关系删除时释放句柄，句柄留给之后的新用户复用
+class FriendGraph {
+    public static final int MAX_FRIENDS = 500;
+
+    private static final int MAGIC = 0x46524E44;  // "FRND"
+    private static final int VERSION = 1;
+
+    private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 以下在锁内访问，下标为句柄，0不使用
+    private String[] userIds = new String[16];
+    private IntHashSet[] adjacency = new IntHashSet[16];
+    private final BitSet seeded = new BitSet();  // 已经导入过客户端好友列表的用户
+    private int userCount;  // 分配过的最大句柄
+    private int[] freeHandles = new int[16];  // 已释放、可复用的句柄
+    private int freeCount;
+    private long edgeCount;
+    private long modCount;
+
+    private volatile ScheduledExecutorService snapshotter;
+    private volatile Path snapshotFile;
+    private volatile EventLog eventLog;  // 快照写入失败时记录
+    private volatile long savedModCount;  // 最近一份快照对应的修改计数
+
+    // 句柄可能被释放后复用，查句柄也要在锁内
+    public boolean areFriends(String userId, String otherUserId) {
+        lock.readLock().lock();
+        try {
+            Integer a = handles.get(userId);
+            Integer b = handles.get(otherUserId);
+            if (a == null || b == null || a.equals(b)) {
+                return false;
+            }
+            IntHashSet friends = adjacency[a];
+            return friends != null && friends.contains(b);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 返回是否新增了好友关系；已经是好友或任一方的好友已满时返回false
+    public boolean addFriendship(String userId, String otherUserId) {
+        if (userId.equals(otherUserId)) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            int a = handleOf(userId);
+            int b = handleOf(otherUserId);
+            if (link(a, b)) {
+                return true;
+            }
+            releaseIfUnused(a);
+            releaseIfUnused(b);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 双方的好友集合里都删除，返回是否原来是好友
+    public boolean removeFriendship(String userId, String otherUserId) {
+        lock.writeLock().lock();
+        try {
+            Integer a = handles.get(userId);
+            Integer b = handles.get(otherUserId);
+            if (a == null || b == null) {
+                return false;
+            }
+            IntHashSet friends = adjacency[a];
+            if (friends == null || !friends.remove(b)) {
+                return false;
+            }
+            adjacency[b].remove(a);
+            edgeCount--;
+            modCount++;
+            releaseIfUnused(a);
+            releaseIfUnused(b);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<String> friendsOf(String userId) {
+        lock.readLock().lock();
+        try {
+            Integer handle = handles.get(userId);
+            if (handle == null) {
+                return List.of();
+            }
+            IntHashSet friends = adjacency[handle];
+            if (friends == null || friends.isEmpty()) {
+                return List.of();
+            }
+            List<String> result = new ArrayList<>(friends.size());
+            friends.forEach(friend -> result.add(userIds[friend]));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isSeeded(String userId) {
+        lock.readLock().lock();
+        try {
+            Integer handle = handles.get(userId);
+            return handle != null && seeded.get(handle);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 导入客户端带上来的好友列表，每个用户只导入一次，超过MAX_FRIENDS的部分忽略；返回是否导入
+    public boolean seed(String userId, Collection<String> friendIds) {
+        lock.writeLock().lock();
+        try {
+            int handle = handleOf(userId);
+            if (seeded.get(handle)) {
+                return false;
+            }
+            seeded.set(handle);
+            modCount++;
+            linkAll(handle, userId, friendIds);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 集群中其他节点上该用户的好友关系：标记为已导入，并补上本地还没有的好友，本地已有的不删除
+    public void merge(String userId, Collection<String> friendIds) {
+        lock.writeLock().lock();
+        try {
+            int handle = handleOf(userId);
+            if (!seeded.get(handle)) {
+                seeded.set(handle);
+                modCount++;
+            }
+            linkAll(handle, userId, friendIds);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 在写锁内调用，好友已满时忽略剩余部分
+    private void linkAll(int handle, String userId, Collection<String> friendIds) {
+        for (String friendId : friendIds) {
+            if (friendCount(handle) >= MAX_FRIENDS) {
+                break;
+            }
+            if (!friendId.equals(userId)) {
+                int friend = handleOf(friendId);
+                if (!link(handle, friend)) {
+                    releaseIfUnused(friend);
+                }
+            }
+        }
+    }
+
+    public int getUserCount() {
+        return handles.size();
+    }
+
+    public long getEdgeCount() {
+        lock.readLock().lock();
+        try {
+            return edgeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 句柄表和邻接集合占用的字节数（不含userId字符串），用于估算内存
+    public long footprintBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 8L * userIds.length + 8L * adjacency.length + 4L * freeHandles.length;
+            for (int handle = 1; handle <= userCount; handle++) {
+                if (adjacency[handle] != null) {
+                    bytes += adjacency[handle].footprintBytes();
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 需在写锁内调用
+    private int handleOf(String userId) {
+        Integer existing = handles.get(userId);
+        if (existing != null) {
+            return existing;
+        }
+        int handle;
+        if (freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        } else {
+            handle = ++userCount;
+            if (handle == userIds.length) {
+                userIds = Arrays.copyOf(userIds, handle * 2);
+                adjacency = Arrays.copyOf(adjacency, handle * 2);
+            }
+        }
+        userIds[handle] = userId;
+        handles.put(userId, handle);
+        modCount++;
+        return handle;
+    }
+
+    // 需在写锁内调用；没有好友也没有导入过好友列表的句柄释放
+    private void releaseIfUnused(int handle) {
+        if (friendCount(handle) > 0 || seeded.get(handle)) {
+            return;
+        }
+        handles.remove(userIds[handle]);
+        userIds[handle] = null;
+        adjacency[handle] = null;
+        if (freeCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+        }
+        freeHandles[freeCount++] = handle;
+        modCount++;
+    }
+
+    private int friendCount(int handle) {
+        IntHashSet friends = adjacency[handle];
+        return friends == null ? 0 : friends.size();
+    }
+
+    // 需在写锁内调用；任一方的好友已满时不添加
+    private boolean link(int a, int b) {
+        if (friendCount(a) >= MAX_FRIENDS || friendCount(b) >= MAX_FRIENDS) {
+            return false;
+        }
+        if (adjacency[a] == null) {
+            adjacency[a] = new IntHashSet();
+        }
+        if (!adjacency[a].add(b)) {
+            return false;
+        }
+        if (adjacency[b] == null) {
+            adjacency[b] = new IntHashSet();
+        }
+        adjacency[b].add(a);
+        edgeCount++;
+        modCount++;
+        return true;
+    }
+
+    // ---- 快照 ----
+
+    // 读入快照，需在服务器启动前对空的图调用；文件不存在时什么也不做
+    public void load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < 4) {
+            throw new IOException("Truncated friend graph snapshot " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        int storedCrc = (bytes[bytes.length - 4] & 0xFF) << 24 | (bytes[bytes.length - 3] & 0xFF) << 16
+                | (bytes[bytes.length - 2] & 0xFF) << 8 | bytes[bytes.length - 1] & 0xFF;
+        if ((int) crc.getValue() != storedCrc) {
+            throw new IOException("Corrupt friend graph snapshot " + file);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported friend graph snapshot " + file);
+            }
+            lock.writeLock().lock();
+            try {
+                if (userCount != 0) {
+                    throw new IllegalStateException("Friend graph already has users");
+                }
+                int users = in.readInt();
+                for (int i = 0; i < users; i++) {
+                    int handle = handleOf(in.readUTF());
+                    if (in.readBoolean()) {
+                        seeded.set(handle);
+                    }
+                }
+                // 每个用户只写句柄比自己大的好友
+                for (int handle = 1; handle <= users; handle++) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        link(handle, in.readInt());
+                    }
+                }
+                savedModCount = modCount;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // 在读锁内编码，写文件不占用锁；先写临时文件再原子替换，崩溃时保留上一份快照
+    public void save(Path file) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long snapshotModCount;
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            lock.readLock().lock();
+            try {
+                snapshotModCount = modCount;
+                // 跳过已释放的句柄，按原顺序重新编号为连续的句柄，读回时依次分配
+                int[] renumbered = new int[userCount + 1];
+                int users = 0;
+                for (int handle = 1; handle <= userCount; handle++) {
+                    if (userIds[handle] != null) {
+                        renumbered[handle] = ++users;
+                    }
+                }
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(users);
+                for (int handle = 1; handle <= userCount; handle++) {
+                    if (userIds[handle] != null) {
+                        out.writeUTF(userIds[handle]);
+                        out.writeBoolean(seeded.get(handle));
+                    }
+                }
+                for (int handle = 1; handle <= userCount; handle++) {
+                    if (userIds[handle] == null) {
+                        continue;
+                    }
+                    IntHashSet friends = adjacency[handle];
+                    int[] sorted = friends == null ? new int[0] : friends.toSortedArray();
+                    int from = Arrays.binarySearch(sorted, handle + 1);
+                    from = from < 0 ? -from - 1 : from;
+                    out.writeInt(sorted.length - from);
+                    for (int i = from; i < sorted.length; i++) {
+                        out.writeInt(renumbered[sorted[i]]);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.toByteArray());
+            out.writeInt((int) crc.getValue());
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, buffer.toByteArray());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        savedModCount = snapshotModCount;
+    }
+
+    // 定期在有变化时写快照，失败时记录到eventLog，下一次再试
+    public void startSnapshots(Path file, long intervalMillis, EventLog eventLog) {
+        snapshotFile = file;
+        this.eventLog = eventLog;
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "friend-graph-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::saveIfDirty, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        snapshotter = executor;
+    }
+
+    private void saveIfDirty() {
+        long current;
+        lock.readLock().lock();
+        try {
+            current = modCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (current == savedModCount) {
+            return;
+        }
+        try {
+            save(snapshotFile);
+        } catch (IOException ex) {
+            eventLog.log(EventLog.Level.ERROR, EventLog.Event.FRIEND_GRAPH_SAVE_FAILED, null, EventLog.NO_ROOM, null,
+                    snapshotFile.toString(), ex);
+        }
+    }
+
+    // 停止定期快照并写最后一份
+    public void shutdown() {
+        ScheduledExecutorService executor = snapshotter;
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        saveIfDirty();
+    }
+}
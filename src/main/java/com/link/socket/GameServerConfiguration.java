@@ -0,0 +1,15 @@
+package com.link.socket;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(GameServerProperties.class)
+public class GameServerConfiguration {
+
+    @Bean
+    public GameServerLifecycle gameServer(GameServerProperties properties) {
+        return new GameServerLifecycle(properties);
+    }
+}
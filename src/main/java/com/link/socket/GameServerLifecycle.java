@@ -0,0 +1,113 @@
+package com.link.socket;
+
+import org.springframework.context.SmartLifecycle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+// 由Spring管理启动和停止的游戏服务器
+// 停止时先排空：拒绝新的匹配和邀请，对局日志落盘，等出站队列写完或超时，再关闭所有连接；
+// 未结束的对局在下次启动时从对局日志恢复
+public class GameServerLifecycle implements SmartLifecycle {
+    private final GameServerProperties properties;
+    private volatile MultiChatServer server;
+
+    public GameServerLifecycle(GameServerProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        MultiChatServer created = new MultiChatServer(properties.getPort(), properties.getDecoders(),
+                new RoomExecutor(properties.getRoomShards()),
+                properties.getOutboundQueueCapacity(), properties.getOutboundOverflowPolicy());
+        try {
+            created.setTcpNoDelay(properties.isTcpNoDelay());
+            created.setSocketBufferSizes(properties.getReceiveBufferSize(), properties.getSendBufferSize());
+            created.setConnectionLostTimeout(properties.getConnectionLostTimeout());
+            created.setStepTickMillis(properties.getStepTickMillis());
+            created.setEventRingSize(properties.getEventRingSize());
+            created.setReconnectGraceMillis(properties.getReconnectGrace().toMillis());
+            created.setHeartbeat(properties.getHeartbeatInterval().toMillis(), properties.getHeartbeatTimeout().toMillis());
+            created.setTurnTimeoutMillis(properties.getTurnTimeout().toMillis());
+            created.setInviteTtlMillis(properties.getInviteTtl().toMillis());
+            created.setRateLimiter(RateLimiter.of(properties.getRateLimitConnection(), properties.getRateLimits(),
+                    properties.getRateLimitAction()));
+            created.setReuseAddr(true);
+            if (!properties.getEventLogFile().isEmpty()) {
+                try {
+                    created.openEventLog(Path.of(properties.getEventLogFile()));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Failed to open event log " + properties.getEventLogFile(), ex);
+                }
+            }
+            created.setEventSampleRates(properties.getEventLogSampleRates());
+            if (!properties.getJournalDir().isEmpty()) {
+                try {
+                    created.openJournal(Path.of(properties.getJournalDir()),
+                            (int) properties.getJournalSegmentSize().toBytes(),
+                            properties.getJournalCommitInterval().toMillis());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Failed to open room journal " + properties.getJournalDir(), ex);
+                }
+            }
+            if (!properties.getFriendGraphFile().isEmpty()) {
+                try {
+                    created.openFriendGraph(Path.of(properties.getFriendGraphFile()),
+                            properties.getFriendGraphSnapshotInterval().toMillis());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Failed to load friend graph " + properties.getFriendGraphFile(), ex);
+                }
+            }
+            if (!properties.getClusterNodeId().isEmpty()) {
+                String clusterUrl = properties.getClusterUrl().isEmpty()
+                        ? "ws://127.0.0.1:" + properties.getPort() : properties.getClusterUrl();
+                created.enableCluster(properties.getClusterNodeId(), clusterUrl,
+                        properties.getClusterSecret(), properties.getClusterSeeds());
+            }
+            if (properties.getAdminPort() > 0) {
+                try {
+                    // 由Spring负责停止，不提供 /stop
+                    created.startAdmin(properties.getAdminPort(), null);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Failed to start admin endpoint on port " + properties.getAdminPort(), ex);
+                }
+            }
+            created.start();
+        } catch (RuntimeException ex) {
+            // 已经创建的房间分片、时间轮和日志线程不会随异常停止
+            created.discard();
+            throw ex;
+        }
+        server = created;
+    }
+
+    @Override
+    public void stop() {
+        MultiChatServer current = server;
+        if (current == null) {
+            return;
+        }
+        try {
+            if (!current.drain(properties.getDrainTimeout().toMillis())) {
+                current.getEventLog().log(EventLog.Level.WARN, EventLog.Event.SERVER_DRAIN_TIMEOUT, null,
+                        EventLog.NO_ROOM, null, "Closing with outbound messages still queued", null);
+            }
+            current.stop((int) properties.getCloseTimeout().toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    public MultiChatServer getServer() {
+        return server;
+    }
+}
@@ -0,0 +1,312 @@
+package com.link.socket;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// game.server.* 配置，未配置的项使用下面的默认值
+@ConfigurationProperties(prefix = "game.server")
+public class GameServerProperties {
+    private int port = 8887;
+    private int adminPort; // 管理接口端口，只监听127.0.0.1，0表示不开启
+    private int decoders = Runtime.getRuntime().availableProcessors(); // 解码消息的网络工作线程数
+    private int roomShards = Runtime.getRuntime().availableProcessors(); // 房间事件分片线程数
+    private boolean tcpNoDelay = true;
+    private int receiveBufferSize; // 每个连接的SO_RCVBUF，0表示系统默认值
+    private int sendBufferSize; // 每个连接的SO_SNDBUF，0表示系统默认值
+    private int connectionLostTimeout; // 库自带的丢失连接检查间隔，单位秒，0表示关闭检查（由心跳检查代替）
+    private Duration heartbeatInterval = Duration.ofSeconds(15); // 连接空闲超过该时间时发送ping，0表示关闭心跳检查
+    private Duration heartbeatTimeout = Duration.ofSeconds(45); // 超过该时间没有收到任何消息或pong时断开连接
+    private int outboundQueueCapacity = 256;
+    private OutboundQueue.OverflowPolicy outboundOverflowPolicy = OutboundQueue.OverflowPolicy.COALESCE;
+    private long stepTickMillis; // 对局步骤合并间隔，0表示收到即转发
+    private int eventRingSize = StepRelay.DEFAULT_EVENT_RING_SIZE; // 每个房间为断线重连保留的最近步骤数
+    private Duration reconnectGrace = Duration.ofSeconds(60); // 对局中断线后保留座位的时间，0表示立即离开
+    private Duration turnTimeout = Duration.ZERO; // 对局中每一手的行动时限，超时后跳到下一位玩家，0表示不限时
+    private Duration inviteTtl = Duration.ofSeconds(60); // 好友邀请和对局邀请等待回复的时间，0表示不过期
+    private String rateLimitConnection = RateLimiter.DEFAULT_CONNECTION_LIMIT; // 每个连接所有消息合计的限制，每秒令牌数/突发容量，0表示不限制
+    private Map<String, String> rateLimits = RateLimiter.defaultStatusLimits(); // 按status的限制，键为status名称
+    private RateLimiter.Action rateLimitAction = RateLimiter.Action.THROTTLE; // 超出限制时的处理方式
+    private String eventLogFile = ""; // 事件日志文件，为空时写标准输出
+    private Map<String, Integer> eventLogSampleRates = new LinkedHashMap<>(); // 按事件名采样，值为每N条记录一条
+    private String journalDir = ""; // 对局日志目录，为空时不记录日志，重启后对局丢失
+    private DataSize journalSegmentSize = DataSize.ofMegabytes(64); // 每个日志分段文件的大小
+    private Duration journalCommitInterval = Duration.ofMillis(10); // 组提交间隔，崩溃时最多丢失这段时间内的记录
+    private String friendGraphFile = ""; // 好友关系快照文件，为空时只保存在内存中
+    private Duration friendGraphSnapshotInterval = Duration.ofSeconds(60); // 好友关系有变化时写快照的间隔
+    private String clusterNodeId = ""; // 集群中本节点的ID，为空时单机运行
+    private String clusterUrl = ""; // 其他节点连接本节点的地址，例如 ws://10.0.0.1:8887
+    private List<String> clusterSeeds = new ArrayList<>(); // 启动时连接的节点地址
+    private String clusterSecret = ""; // 节点之间握手时校验的共享密钥，集群模式下不能为空
+    private Duration drainTimeout = Duration.ofSeconds(20); // 停止时等待对局日志落盘、出站队列写完的最长时间
+    private Duration closeTimeout = Duration.ofSeconds(1); // 排空后关闭连接的等待时间
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public int getAdminPort() {
+        return adminPort;
+    }
+
+    public void setAdminPort(int adminPort) {
+        this.adminPort = adminPort;
+    }
+
+    public int getDecoders() {
+        return decoders;
+    }
+
+    public void setDecoders(int decoders) {
+        this.decoders = decoders;
+    }
+
+    public int getRoomShards() {
+        return roomShards;
+    }
+
+    public void setRoomShards(int roomShards) {
+        this.roomShards = roomShards;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getConnectionLostTimeout() {
+        return connectionLostTimeout;
+    }
+
+    public void setConnectionLostTimeout(int connectionLostTimeout) {
+        this.connectionLostTimeout = connectionLostTimeout;
+    }
+
+    public Duration getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(Duration heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public Duration getHeartbeatTimeout() {
+        return heartbeatTimeout;
+    }
+
+    public void setHeartbeatTimeout(Duration heartbeatTimeout) {
+        this.heartbeatTimeout = heartbeatTimeout;
+    }
+
+    public int getOutboundQueueCapacity() {
+        return outboundQueueCapacity;
+    }
+
+    public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+        this.outboundQueueCapacity = outboundQueueCapacity;
+    }
+
+    public OutboundQueue.OverflowPolicy getOutboundOverflowPolicy() {
+        return outboundOverflowPolicy;
+    }
+
+    public void setOutboundOverflowPolicy(OutboundQueue.OverflowPolicy outboundOverflowPolicy) {
+        this.outboundOverflowPolicy = outboundOverflowPolicy;
+    }
+
+    public long getStepTickMillis() {
+        return stepTickMillis;
+    }
+
+    public void setStepTickMillis(long stepTickMillis) {
+        this.stepTickMillis = stepTickMillis;
+    }
+
+    public int getEventRingSize() {
+        return eventRingSize;
+    }
+
+    public void setEventRingSize(int eventRingSize) {
+        this.eventRingSize = eventRingSize;
+    }
+
+    public Duration getReconnectGrace() {
+        return reconnectGrace;
+    }
+
+    public void setReconnectGrace(Duration reconnectGrace) {
+        this.reconnectGrace = reconnectGrace;
+    }
+
+    public Duration getTurnTimeout() {
+        return turnTimeout;
+    }
+
+    public void setTurnTimeout(Duration turnTimeout) {
+        this.turnTimeout = turnTimeout;
+    }
+
+    public Duration getInviteTtl() {
+        return inviteTtl;
+    }
+
+    public void setInviteTtl(Duration inviteTtl) {
+        this.inviteTtl = inviteTtl;
+    }
+
+    public String getRateLimitConnection() {
+        return rateLimitConnection;
+    }
+
+    public void setRateLimitConnection(String rateLimitConnection) {
+        this.rateLimitConnection = rateLimitConnection;
+    }
+
+    public Map<String, String> getRateLimits() {
+        return rateLimits;
+    }
+
+    public void setRateLimits(Map<String, String> rateLimits) {
+        this.rateLimits = rateLimits;
+    }
+
+    public RateLimiter.Action getRateLimitAction() {
+        return rateLimitAction;
+    }
+
+    public void setRateLimitAction(RateLimiter.Action rateLimitAction) {
+        this.rateLimitAction = rateLimitAction;
+    }
+
+    public String getEventLogFile() {
+        return eventLogFile;
+    }
+
+    public void setEventLogFile(String eventLogFile) {
+        this.eventLogFile = eventLogFile;
+    }
+
+    public Map<String, Integer> getEventLogSampleRates() {
+        return eventLogSampleRates;
+    }
+
+    public void setEventLogSampleRates(Map<String, Integer> eventLogSampleRates) {
+        this.eventLogSampleRates = eventLogSampleRates;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public DataSize getJournalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    public void setJournalSegmentSize(DataSize journalSegmentSize) {
+        this.journalSegmentSize = journalSegmentSize;
+    }
+
+    public Duration getJournalCommitInterval() {
+        return journalCommitInterval;
+    }
+
+    public void setJournalCommitInterval(Duration journalCommitInterval) {
+        this.journalCommitInterval = journalCommitInterval;
+    }
+
+    public String getFriendGraphFile() {
+        return friendGraphFile;
+    }
+
+    public void setFriendGraphFile(String friendGraphFile) {
+        this.friendGraphFile = friendGraphFile;
+    }
+
+    public Duration getFriendGraphSnapshotInterval() {
+        return friendGraphSnapshotInterval;
+    }
+
+    public void setFriendGraphSnapshotInterval(Duration friendGraphSnapshotInterval) {
+        this.friendGraphSnapshotInterval = friendGraphSnapshotInterval;
+    }
+
+    public String getClusterNodeId() {
+        return clusterNodeId;
+    }
+
+    public void setClusterNodeId(String clusterNodeId) {
+        this.clusterNodeId = clusterNodeId;
+    }
+
+    public String getClusterUrl() {
+        return clusterUrl;
+    }
+
+    public void setClusterUrl(String clusterUrl) {
+        this.clusterUrl = clusterUrl;
+    }
+
+    public List<String> getClusterSeeds() {
+        return clusterSeeds;
+    }
+
+    public void setClusterSeeds(List<String> clusterSeeds) {
+        this.clusterSeeds = clusterSeeds;
+    }
+
+    public String getClusterSecret() {
+        return clusterSecret;
+    }
+
+    public void setClusterSecret(String clusterSecret) {
+        this.clusterSecret = clusterSecret;
+    }
+
+    public Duration getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public void setDrainTimeout(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    public Duration getCloseTimeout() {
+        return closeTimeout;
+    }
+
+    public void setCloseTimeout(Duration closeTimeout) {
+        this.closeTimeout = closeTimeout;
+    }
+}
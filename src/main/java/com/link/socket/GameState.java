@@ -0,0 +1,222 @@
+package com.link.socket;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// 房间内对局的权威状态，全部保存在定长的基本类型数组里，每局约三百字节
+// 开局时按成员顺序分配座位，之后成员离开也不改变座位；只在房间分片线程上读写
+// 客户端在MemberPlayStep的顶层附带可选字段更新发送者的状态：
+//   position 新位置，cash 现金余额，buy 买入的地块编号，sell 卖出的地块编号，turn 下一位行动玩家的座位号
+// 只有当前行动的玩家可以改变状态，turn只能交给行动顺序中下一位仍在对局中的玩家；
+// 任何一个字段不合规则时整条步骤的状态更新被忽略，状态不变。无论是否更新状态，步骤本身都照常转发
+// 二进制客户端的事件内容是JSON对象时，顶层同样可以带这些字段，按相同的规则校验
+class GameState {
+    enum StepResult {
+        UNCHANGED, // 没有状态字段
+        APPLIED,
+        REJECTED   // 不是发送者的回合，或字段不合规则
+    }
+
+    public static final int BOARD_SIZE = 40;
+    public static final int STARTING_CASH = 1500;
+
+    private static final int FIELD_POSITION = 0;
+    private static final int FIELD_CASH = 1;
+    private static final int FIELD_BUY = 2;
+    private static final int FIELD_SELL = 3;
+    private static final int FIELD_TURN = 4;
+    private static final String[] STEP_FIELDS = {"position", "cash", "buy", "sell", "turn"};
+    private static final byte NO_OWNER = -1;
+
+    private final String[] playIds;
+    private final int[] positions;
+    private final int[] cash;
+    private final byte[] owners = new byte[BOARD_SIZE]; // 地块所有者的座位号
+    private final byte[] turnOrder; // 行动顺序，按座位号
+    private final boolean[] left; // 已经离开对局的座位，轮转时跳过
+    private int currentTurn; // 当前行动的座位号
+    private int turnNumber;
+    private long version; // 每次状态变化加1
+    private final long[] fieldValues = new long[STEP_FIELDS.length]; // 解析步骤字段用的暂存
+
+    public GameState(String[] playIds) {
+        int players = playIds.length;
+        this.playIds = playIds;
+        positions = new int[players];
+        cash = new int[players];
+        turnOrder = new byte[players];
+        left = new boolean[players];
+        for (int seat = 0; seat < players; seat++) {
+            cash[seat] = STARTING_CASH;
+            turnOrder[seat] = (byte) seat;
+        }
+        Arrays.fill(owners, NO_OWNER);
+    }
+
+    public int seatOf(String playId) {
+        for (int seat = 0; seat < playIds.length; seat++) {
+            if (playIds[seat].equals(playId)) {
+                return seat;
+            }
+        }
+        return -1;
+    }
+
+    // 先校验步骤中的全部字段，都合规则时再更新发送者的状态
+    public StepResult applyStep(String playId, String message) {
+        int seat = seatOf(playId);
+        if (seat < 0) {
+            return StepResult.REJECTED;
+        }
+        int found = JsonFields.readInts(message, STEP_FIELDS, fieldValues);
+        if (found == 0) {
+            return StepResult.UNCHANGED;
+        }
+        if (seat != currentTurn || !isValid(found, seat)) {
+            return StepResult.REJECTED;
+        }
+        if (has(found, FIELD_POSITION)) {
+            positions[seat] = (int) fieldValues[FIELD_POSITION];
+        }
+        if (has(found, FIELD_CASH)) {
+            cash[seat] = (int) fieldValues[FIELD_CASH];
+        }
+        if (has(found, FIELD_BUY)) {
+            owners[(int) fieldValues[FIELD_BUY]] = (byte) seat;
+        }
+        if (has(found, FIELD_SELL)) {
+            owners[(int) fieldValues[FIELD_SELL]] = NO_OWNER;
+        }
+        if (has(found, FIELD_TURN)) {
+            currentTurn = (int) fieldValues[FIELD_TURN];
+            turnNumber++;
+        }
+        version++;
+        return StepResult.APPLIED;
+    }
+
+    // 二进制客户端发来的事件内容：是JSON对象时按applyStep处理，其他内容不影响状态
+    public StepResult applyEvent(String playId, byte[] event) {
+        int i = 0;
+        while (i < event.length && (event[i] == ' ' || event[i] == '\t' || event[i] == '\n' || event[i] == '\r')) {
+            i++;
+        }
+        if (i >= event.length || event[i] != '{') {
+            return StepResult.UNCHANGED;
+        }
+        return applyStep(playId, new String(event, StandardCharsets.UTF_8));
+    }
+
+    private boolean isValid(int found, int seat) {
+        if (has(found, FIELD_POSITION) && !inRange(fieldValues[FIELD_POSITION], BOARD_SIZE)) {
+            return false;
+        }
+        if (has(found, FIELD_CASH) && (fieldValues[FIELD_CASH] < Integer.MIN_VALUE || fieldValues[FIELD_CASH] > Integer.MAX_VALUE)) {
+            return false;
+        }
+        if (has(found, FIELD_BUY) && (!inRange(fieldValues[FIELD_BUY], BOARD_SIZE)
+                || owners[(int) fieldValues[FIELD_BUY]] != NO_OWNER)) {
+            return false;
+        }
+        if (has(found, FIELD_SELL) && (!inRange(fieldValues[FIELD_SELL], BOARD_SIZE)
+                || owners[(int) fieldValues[FIELD_SELL]] != seat)) {
+            return false;
+        }
+        return !has(found, FIELD_TURN) || fieldValues[FIELD_TURN] == nextTurn();
+    }
+
+    // 行动顺序中当前玩家之后第一位仍在对局中的玩家，其他人都已离开时仍是当前玩家
+    public int nextTurn() {
+        int index = 0;
+        while (turnOrder[index] != currentTurn) {
+            index++;
+        }
+        for (int i = 1; i <= turnOrder.length; i++) {
+            int candidate = turnOrder[(index + i) % turnOrder.length];
+            if (!left[candidate]) {
+                return candidate;
+            }
+        }
+        return currentTurn;
+    }
+
+    // 玩家离开对局：座位保留，之后轮转时跳过；离开的是当前玩家时行动权交给下一位
+    public void markLeft(String playId) {
+        int seat = seatOf(playId);
+        if (seat < 0 || left[seat]) {
+            return;
+        }
+        left[seat] = true;
+        if (seat == currentTurn) {
+            currentTurn = nextTurn();
+            turnNumber++;
+        }
+        version++;
+    }
+
+    private static boolean has(int found, int field) {
+        return (found & (1 << field)) != 0;
+    }
+
+    private static boolean inRange(long value, int size) {
+        return value >= 0 && value < size;
+    }
+
+    public int getPlayerCount() {
+        return playIds.length;
+    }
+
+    public String getPlayId(int seat) {
+        return playIds[seat];
+    }
+
+    public int getPosition(int seat) {
+        return positions[seat];
+    }
+
+    public int getCash(int seat) {
+        return cash[seat];
+    }
+
+    // 返回地块所有者的座位号，无主时返回-1
+    public int getOwner(int square) {
+        return owners[square];
+    }
+
+    public int getCurrentTurn() {
+        return currentTurn;
+    }
+
+    public int getTurnNumber() {
+        return turnNumber;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // 状态快照，供客户端直接恢复而不必重放全部步骤
+    public JSONObject toJson() {
+        JSONObject snapshot = new JSONObject();
+        snapshot.put("version", version);
+        snapshot.put("playIds", new JSONArray(playIds));
+        snapshot.put("positions", new JSONArray(positions));
+        snapshot.put("cash", new JSONArray(cash));
+        JSONArray ownerArray = new JSONArray();
+        for (byte owner : owners) {
+            ownerArray.put(owner);
+        }
+        snapshot.put("owners", ownerArray);
+        JSONArray order = new JSONArray();
+        for (byte seat : turnOrder) {
+            order.put(seat);
+        }
+        snapshot.put("turnOrder", order);
+        snapshot.put("turn", currentTurn);
+        snapshot.put("turnNumber", turnNumber);
+        return snapshot;
+    }
+}
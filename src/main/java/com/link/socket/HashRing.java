@@ -0,0 +1,84 @@
+package com.link.socket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+// 一致性哈希环：每个节点放置若干虚拟节点，房间ID顺时针找到的第一个虚拟节点即为所属节点。
+// 节点加入或离开时只有相邻区间的房间ID改变归属；实例不可变，成员变化时整体替换
+final class HashRing {
+    static final int VIRTUAL_NODES = 128;
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> nodeIds) {
+        this.nodes = List.copyOf(new TreeSet<>(nodeIds));
+        int count = nodes.size() * VIRTUAL_NODES;
+        long[] unsortedPoints = new long[count];
+        String[] unsortedOwners = new String[count];
+        int index = 0;
+        for (String node : nodes) {
+            long base = hash(node);
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                unsortedPoints[index] = mix(base + i * 0x9E3779B97F4A7C15L);
+                unsortedOwners[index] = node;
+                index++;
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsortedPoints[a], unsortedPoints[b]));
+        points = new long[count];
+        owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = unsortedPoints[order[i]];
+            owners[i] = unsortedOwners[order[i]];
+        }
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    // 环为空时返回null
+    public String ownerOf(int key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, mix(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // FNV-1a
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // MurmurHash3 fmix64，打散连续的房间ID
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
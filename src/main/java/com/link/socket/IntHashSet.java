@@ -0,0 +1,129 @@
+package com.link.socket;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// 开放寻址的int集合，元素必须为正数（0表示空槽）；线性探测，删除时回移后续元素，不留墓碑。
+// 好友邻接表用它代替 Set<String>，每个好友只占一个int槽位。不是线程安全的
+final class IntHashSet {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] slots;
+    private int size;
+
+    public IntHashSet() {
+        slots = new int[INITIAL_CAPACITY];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int value) {
+        int mask = slots.length - 1;
+        for (int index = slot(value, mask); ; index = (index + 1) & mask) {
+            int current = slots[index];
+            if (current == value) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+        }
+    }
+
+    public boolean add(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("value must be positive: " + value);
+        }
+        // 装载因子不超过3/4
+        if ((size + 1) * 4 > slots.length * 3) {
+            rehash(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        for (int index = slot(value, mask); ; index = (index + 1) & mask) {
+            int current = slots[index];
+            if (current == value) {
+                return false;
+            }
+            if (current == 0) {
+                slots[index] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    public boolean remove(int value) {
+        int mask = slots.length - 1;
+        int index = slot(value, mask);
+        while (slots[index] != value) {
+            if (slots[index] == 0) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        // 把后面同一探测链上的元素移到空出的位置
+        int gap = index;
+        for (int next = (gap + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int home = slot(slots[next], mask);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slots[next];
+                gap = next;
+            }
+        }
+        slots[gap] = 0;
+        size--;
+        return true;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int value : slots) {
+            if (value != 0) {
+                action.accept(value);
+            }
+        }
+    }
+
+    // 升序排列的全部元素
+    public int[] toSortedArray() {
+        int[] values = new int[size];
+        int count = 0;
+        for (int value : slots) {
+            if (value != 0) {
+                values[count++] = value;
+            }
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    // 占用的字节数（不含对象头），用于估算内存
+    public long footprintBytes() {
+        return 4L * slots.length;
+    }
+
+    private void rehash(int capacity) {
+        int[] previous = slots;
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int value : previous) {
+            if (value != 0) {
+                int index = slot(value, mask);
+                while (slots[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = value;
+            }
+        }
+    }
+
+    private static int slot(int value, int mask) {
+        int hash = value * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & mask;
+    }
+}
@@ -0,0 +1,514 @@
+package com.link.socket;
+
+// 轻量的JSON字段扫描器：只读取顶层对象中的指定字段，不构建完整的JSONObject
+// 用于消息路由，遇到格式错误时返回null，由调用方退回到完整解析
+final class JsonFields {
+    private static final int MAX_DEPTH = 64;  // 嵌套层数上限，避免恶意消息导致栈溢出
+
+    private JsonFields() {
+    }
+
+    // 完整检查消息是否恰好是一个格式正确的JSON对象（之后只能有空白），不分配对象。
+    // 原样转发的消息必须先通过这个检查，readString只读到需要的字段为止，不检查其余内容
+    public static boolean isObject(String json) {
+        int i = skipWhitespace(json, 0);
+        if (i >= json.length() || json.charAt(i) != '{') {
+            return false;
+        }
+        i = checkValue(json, i, 0);
+        return i >= 0 && skipWhitespace(json, i) == json.length();
+    }
+
+    // 读取顶层字符串字段，字段不存在、不是字符串或JSON格式错误时返回null
+    public static String readString(String json, String field) {
+        int i = skipWhitespace(json, 0);
+        if (i >= json.length() || json.charAt(i) != '{') {
+            return null;
+        }
+        i = skipWhitespace(json, i + 1);
+        if (i < json.length() && json.charAt(i) == '}') {
+            return null;
+        }
+        while (i < json.length()) {
+            if (json.charAt(i) != '"') {
+                return null;
+            }
+            int keyEnd = skipString(json, i);
+            if (keyEnd < 0) {
+                return null;
+            }
+            boolean matched = keyEquals(json, i + 1, keyEnd - 1, field);
+            i = skipWhitespace(json, keyEnd);
+            if (i >= json.length() || json.charAt(i) != ':') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1);
+            if (i >= json.length()) {
+                return null;
+            }
+            if (matched) {
+                return json.charAt(i) == '"' ? decodeString(json, i) : null;
+            }
+            i = skipValue(json, i);
+            if (i < 0) {
+                return null;
+            }
+            i = skipWhitespace(json, i);
+            if (i >= json.length()) {
+                return null;
+            }
+            char c = json.charAt(i);
+            if (c == '}') {
+                return null;
+            }
+            if (c != ',') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        return null;
+    }
+
+    // 一次扫描读取多个顶层整数字段，返回找到的字段位掩码（第i位对应fields[i]），值写入values
+    // 不是整数的字段视为不存在；JSON格式错误时返回0。字段数不能超过31
+    public static int readInts(String json, String[] fields, long[] values) {
+        int found = 0;
+        int i = skipWhitespace(json, 0);
+        if (i >= json.length() || json.charAt(i) != '{') {
+            return 0;
+        }
+        i = skipWhitespace(json, i + 1);
+        if (i < json.length() && json.charAt(i) == '}') {
+            return 0;
+        }
+        while (i < json.length()) {
+            if (json.charAt(i) != '"') {
+                return 0;
+            }
+            int keyEnd = skipString(json, i);
+            if (keyEnd < 0) {
+                return 0;
+            }
+            int matched = -1;
+            for (int f = 0; f < fields.length; f++) {
+                if (keyEquals(json, i + 1, keyEnd - 1, fields[f])) {
+                    matched = f;
+                    break;
+                }
+            }
+            i = skipWhitespace(json, keyEnd);
+            if (i >= json.length() || json.charAt(i) != ':') {
+                return 0;
+            }
+            i = skipWhitespace(json, i + 1);
+            if (i >= json.length()) {
+                return 0;
+            }
+            int valueEnd = skipValue(json, i);
+            if (valueEnd < 0) {
+                return 0;
+            }
+            if (matched >= 0 && parseLong(json, i, valueEnd, values, matched)) {
+                found |= 1 << matched;
+            }
+            i = skipWhitespace(json, valueEnd);
+            if (i >= json.length()) {
+                return 0;
+            }
+            char c = json.charAt(i);
+            if (c == '}') {
+                return found;
+            }
+            if (c != ',') {
+                return 0;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        return 0;
+    }
+
+    // 去掉顶层对象中所有名为field的成员（包括转义写法的同名键），其余成员原样保留；
+    // 没有这个字段或JSON格式错误时返回原字符串
+    public static String removeField(String json, String field) {
+        if (!scanMembers(json, field, null)) {
+            return json;
+        }
+        StringBuilder kept = new StringBuilder(json.length());
+        scanMembers(json, field, kept);
+        return kept.toString();
+    }
+
+    // 逐个扫描顶层成员，返回是否有名为field的成员；kept不为null时把其他成员按原文写成一个新对象
+    private static boolean scanMembers(String json, String field, StringBuilder kept) {
+        int i = skipWhitespace(json, 0);
+        if (i >= json.length() || json.charAt(i) != '{') {
+            return false;
+        }
+        if (kept != null) {
+            kept.append('{');
+        }
+        i = skipWhitespace(json, i + 1);
+        if (i < json.length() && json.charAt(i) == '}') {
+            return false;
+        }
+        boolean found = false;
+        boolean first = true;
+        while (i < json.length()) {
+            if (json.charAt(i) != '"') {
+                return false;
+            }
+            int memberStart = i;
+            int keyEnd = skipString(json, i);
+            if (keyEnd < 0) {
+                return false;
+            }
+            boolean matched = keyEquals(json, i + 1, keyEnd - 1, field);
+            i = skipWhitespace(json, keyEnd);
+            if (i >= json.length() || json.charAt(i) != ':') {
+                return false;
+            }
+            i = skipWhitespace(json, i + 1);
+            if (i >= json.length()) {
+                return false;
+            }
+            int valueEnd = skipValue(json, i);
+            if (valueEnd < 0) {
+                return false;
+            }
+            found |= matched;
+            if (kept != null && !matched) {
+                if (!first) {
+                    kept.append(',');
+                }
+                kept.append(json, memberStart, valueEnd);
+                first = false;
+            }
+            i = skipWhitespace(json, valueEnd);
+            if (i >= json.length()) {
+                return false;
+            }
+            char c = json.charAt(i);
+            if (c == '}') {
+                if (kept != null) {
+                    kept.append('}');
+                }
+                return found;
+            }
+            if (c != ',') {
+                return false;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        return false;
+    }
+
+    // 解析[start, end)范围内的十进制整数，不分配对象
+    private static boolean parseLong(String json, int start, int end, long[] values, int index) {
+        int i = start;
+        boolean negative = i < end && json.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i >= end || end - i > 18) {
+            return false;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = json.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+        }
+        values[index] = negative ? -value : value;
+        return true;
+    }
+
+    // 比较未转义的键，含转义字符的键需要解码后再比较
+    private static boolean keyEquals(String json, int start, int end, String field) {
+        if (hasEscape(json, start, end)) {
+            return field.equals(decodeString(json, start - 1));
+        }
+        return end - start == field.length() && json.regionMatches(start, field, 0, field.length());
+    }
+
+    // 只检查[start, end)范围，避免每个键都扫描到消息末尾
+    private static boolean hasEscape(String json, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (json.charAt(i) == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    // 跳过从start处的引号开始的字符串，返回结束引号之后的位置
+    private static int skipString(String json, int start) {
+        int i = start + 1;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    // 跳过任意JSON值，返回值之后的位置
+    private static int skipValue(String json, int start) {
+        char first = json.charAt(start);
+        if (first == '"') {
+            return skipString(json, start);
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            int i = start;
+            while (i < json.length()) {
+                char c = json.charAt(i);
+                if (c == '"') {
+                    i = skipString(json, i);
+                    if (i < 0) {
+                        return -1;
+                    }
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+                i++;
+            }
+            return -1;
+        }
+        // 数字、true、false、null
+        int i = start;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                break;
+            }
+            i++;
+        }
+        return i == start ? -1 : i;
+    }
+
+    // 检查从start开始的一个值，返回值之后的位置，格式错误时返回-1
+    private static int checkValue(String json, int start, int depth) {
+        if (start >= json.length()) {
+            return -1;
+        }
+        char first = json.charAt(start);
+        if (first == '"') {
+            return checkString(json, start);
+        }
+        if (first == '{' || first == '[') {
+            if (depth >= MAX_DEPTH) {
+                return -1;
+            }
+            boolean object = first == '{';
+            char close = object ? '}' : ']';
+            int i = skipWhitespace(json, start + 1);
+            if (i < json.length() && json.charAt(i) == close) {
+                return i + 1;
+            }
+            while (true) {
+                if (object) {
+                    if (i >= json.length() || json.charAt(i) != '"') {
+                        return -1;
+                    }
+                    i = checkString(json, i);
+                    if (i < 0) {
+                        return -1;
+                    }
+                    i = skipWhitespace(json, i);
+                    if (i >= json.length() || json.charAt(i) != ':') {
+                        return -1;
+                    }
+                    i = skipWhitespace(json, i + 1);
+                }
+                i = checkValue(json, i, depth + 1);
+                if (i < 0) {
+                    return -1;
+                }
+                i = skipWhitespace(json, i);
+                if (i >= json.length()) {
+                    return -1;
+                }
+                char c = json.charAt(i);
+                if (c == close) {
+                    return i + 1;
+                }
+                if (c != ',') {
+                    return -1;
+                }
+                i = skipWhitespace(json, i + 1);
+            }
+        }
+        if (json.startsWith("true", start)) {
+            return start + 4;
+        }
+        if (json.startsWith("false", start)) {
+            return start + 5;
+        }
+        if (json.startsWith("null", start)) {
+            return start + 4;
+        }
+        return checkNumber(json, start);
+    }
+
+    // 字符串中不能有未转义的控制字符，转义只能是JSON规定的几种
+    private static int checkString(String json, int start) {
+        int i = start + 1;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                return i + 1;
+            }
+            if (c < 0x20) {
+                return -1;
+            }
+            if (c == '\\') {
+                if (i + 1 >= json.length()) {
+                    return -1;
+                }
+                char escaped = json.charAt(i + 1);
+                if (escaped == 'u') {
+                    if (i + 6 > json.length()) {
+                        return -1;
+                    }
+                    for (int k = i + 2; k < i + 6; k++) {
+                        if (Character.digit(json.charAt(k), 16) < 0) {
+                            return -1;
+                        }
+                    }
+                    i += 6;
+                    continue;
+                }
+                if ("\"\\/bfnrt".indexOf(escaped) < 0) {
+                    return -1;
+                }
+                i += 2;
+                continue;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    // -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)?
+    private static int checkNumber(String json, int start) {
+        int i = start;
+        if (i < json.length() && json.charAt(i) == '-') {
+            i++;
+        }
+        if (i >= json.length() || !isDigit(json.charAt(i))) {
+            return -1;
+        }
+        if (json.charAt(i) == '0') {
+            i++;
+        } else {
+            i = skipDigits(json, i);
+        }
+        if (i < json.length() && json.charAt(i) == '.') {
+            int fraction = skipDigits(json, i + 1);
+            if (fraction == i + 1) {
+                return -1;
+            }
+            i = fraction;
+        }
+        if (i < json.length() && (json.charAt(i) == 'e' || json.charAt(i) == 'E')) {
+            i++;
+            if (i < json.length() && (json.charAt(i) == '+' || json.charAt(i) == '-')) {
+                i++;
+            }
+            int exponent = skipDigits(json, i);
+            if (exponent == i) {
+                return -1;
+            }
+            i = exponent;
+        }
+        return i;
+    }
+
+    private static int skipDigits(String json, int i) {
+        while (i < json.length() && isDigit(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static String decodeString(String json, int start) {
+        int end = skipString(json, start);
+        if (end < 0) {
+            return null;
+        }
+        int contentEnd = end - 1;
+        if (!hasEscape(json, start + 1, contentEnd)) {
+            return json.substring(start + 1, contentEnd);
+        }
+        StringBuilder sb = new StringBuilder(contentEnd - start);
+        for (int i = start + 1; i < contentEnd; i++) {
+            char c = json.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char escaped = json.charAt(++i);
+            switch (escaped) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 >= contentEnd) {
+                        return null;
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException ex) {
+                        return null;
+                    }
+                    i += 4;
+                    break;
+                default:
+                    sb.append(escaped);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+}
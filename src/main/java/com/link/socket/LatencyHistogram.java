@@ -0,0 +1,84 @@
+package com.link.socket;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// 线程安全的对数分桶直方图，单位微秒；每个2的幂区间再分16个子桶，误差约6%
+class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int LINEAR = SUB_BUCKETS * 2; // 小于32的值逐个计数
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + (64 - SUB_BITS - 1) * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private volatile long max;
+
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(value));
+        total.increment();
+        if (value > max) {
+            synchronized (this) {
+                if (value > max) {
+                    max = value;
+                }
+            }
+        }
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (msb - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    // 桶的下界
+    private static long valueOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int msb = (index - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+        int sub = (index - LINEAR) % SUB_BUCKETS;
+        return (1L << msb) | ((long) sub << (msb - SUB_BITS));
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long percentile(double percentile) {
+        long count = total.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return max;
+    }
+
+    public ServerMetricsMXBean.Latency snapshot() {
+        return new ServerMetricsMXBean.Latency(getCount(), percentile(50), percentile(99), percentile(99.9), getMax());
+    }
+
+    public String summary(String unit, double divisor) {
+        return String.format("n=%d p50=%.2f%s p99=%.2f%s p999=%.2f%s max=%.2f%s",
+                getCount(),
+                percentile(50) / divisor, unit,
+                percentile(99) / divisor, unit,
+                percentile(99.9) / divisor, unit,
+                getMax() / divisor, unit);
+    }
+}
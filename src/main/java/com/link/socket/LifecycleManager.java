@@ -0,0 +1,327 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+
+// 连接和房间的生命周期管理：所有按连接、按房间保存的结构都在这里登记和释放
+// 连接关闭、成员离开、房主取消房间、房间空置超时都通过这里清理，保证长时间运行时内存不增长
+class LifecycleManager {
+    private final Map<WebSocket, String> clientInfo = new ConcurrentHashMap<>();
+    private final Map<WebSocket, JSONObject> userConnections = new ConcurrentHashMap<>();
+    private final Map<String, WebSocket> userIdConnections = new ConcurrentHashMap<>();
+    private final FriendGraph friendGraph = new FriendGraph();
+    private final Map<Integer, ChatRoom> chatRooms = new ConcurrentHashMap<>();
+    private final Map<WebSocket, ChatRoom> connectionRooms = new ConcurrentHashMap<>();
+    private final Set<String> joinedPlayIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, TimingWheel.Timeout> pendingInvites = new ConcurrentHashMap<>(); // 等待回复的好友邀请，到期自动移除
+    private final LongAdder gamingRooms = new LongAdder(); // 对局中的房间数，开局时加一，关闭时减一
+    private final RoomIdAllocator roomIdAllocator;
+    private final PresenceBatcher presenceBatcher;
+    private final RoomExecutor roomExecutor;
+    private final long roomIdleTtlNanos;
+    private volatile RoomJournal journal;  // 开启对局日志时记录开局、离开和房间关闭
+    private volatile IntPredicate roomIdFilter = roomId -> true;  // 集群模式下只使用本节点负责的房间ID
+    private volatile TimingWheel.Timeout sweeper;
+
+    public LifecycleManager(RoomExecutor roomExecutor, PresenceBatcher presenceBatcher, int roomIdCapacity, long roomIdleTtlMillis) {
+        this.roomExecutor = roomExecutor;
+        this.presenceBatcher = presenceBatcher;
+        this.roomIdAllocator = new RoomIdAllocator(roomIdCapacity);
+        this.roomIdleTtlNanos = TimeUnit.MILLISECONDS.toNanos(roomIdleTtlMillis);
+    }
+
+    // 定期检查空置超过TTL的房间，idleRoomHandler 在房间分片上执行，负责通知成员并调用 releaseRoom
+    public void startIdleSweep(Consumer<ChatRoom> idleRoomHandler) {
+        long periodMillis = Math.max(1000, TimeUnit.NANOSECONDS.toMillis(roomIdleTtlNanos) / 4);
+        sweeper = roomExecutor.getTimers().scheduleRepeating(() -> sweepIdleRooms(idleRoomHandler), periodMillis);
+    }
+
+    private void sweepIdleRooms(Consumer<ChatRoom> idleRoomHandler) {
+        long now = System.nanoTime();
+        for (ChatRoom chatRoom : chatRooms.values()) {
+            if (now - chatRoom.getLastActivityNanos() > roomIdleTtlNanos) {
+                roomExecutor.execute(chatRoom.getRoomId(), () -> {
+                    // 分片上再次确认，期间可能有新的活动
+                    if (!chatRoom.isClosed() && System.nanoTime() - chatRoom.getLastActivityNanos() > roomIdleTtlNanos) {
+                        idleRoomHandler.accept(chatRoom);
+                    }
+                });
+            }
+        }
+    }
+
+    public void shutdown() {
+        TimingWheel.Timeout current = sweeper;
+        if (current != null) {
+            current.cancel();
+        }
+        friendGraph.shutdown();
+    }
+
+    public void setJournal(RoomJournal journal) {
+        this.journal = journal;
+    }
+
+    public void setRoomIdFilter(IntPredicate roomIdFilter) {
+        this.roomIdFilter = roomIdFilter;
+    }
+
+    // ---- 连接 ----
+
+    public Map<WebSocket, String> getClientInfo() {
+        return clientInfo;
+    }
+
+    public Map<WebSocket, JSONObject> getUserConnections() {
+        return userConnections;
+    }
+
+    public Map<String, WebSocket> getUserIdConnections() {
+        return userIdConnections;
+    }
+
+    public FriendGraph getFriendGraph() {
+        return friendGraph;
+    }
+
+    public Map<String, TimingWheel.Timeout> getPendingInvites() {
+        return pendingInvites;
+    }
+
+    // 登记Link上来的用户，同一连接重复Link时先撤销旧的登记
+    public void linkUser(WebSocket conn, JSONObject userConnectionInfo) {
+        JSONObject previousInfo = userConnections.put(conn, userConnectionInfo);
+        if (previousInfo != null) {
+            String previousUserId = previousInfo.getString("userId");
+            userIdConnections.remove(previousUserId, conn);
+        }
+        userIdConnections.put(userConnectionInfo.getString("userId"), conn);
+    }
+
+    // 释放连接的所有登记信息，返回连接的客户端标识；所在房间由调用方在房间分片上离开
+    public String releaseConnection(WebSocket conn) {
+        String clientIdentifier = clientInfo.remove(conn);
+
+        // 移除userId索引（仅当索引仍指向当前连接时）
+        JSONObject userConnectionInfo = userConnections.remove(conn);
+        if (userConnectionInfo != null) {
+            String userId = userConnectionInfo.getString("userId");
+            userIdConnections.remove(userId, conn);
+        }
+        presenceBatcher.discard(conn);
+        return clientIdentifier;
+    }
+
+    // ---- 房间 ----
+
+    public Map<Integer, ChatRoom> getChatRooms() {
+        return chatRooms;
+    }
+
+    public ChatRoom getChatRoomByWebSocket(WebSocket conn) {
+        return connectionRooms.get(conn);
+    }
+
+    // 创建并登记新房间，房间ID在 releaseRoom 时归还
+    public ChatRoom createRoom() {
+        ChatRoom chatRoom = new ChatRoom(allocateRoomId());
+        chatRooms.put(chatRoom.getRoomId(), chatRoom);
+        return chatRoom;
+    }
+
+    // 跳过不符合过滤条件的ID：先占住，找到可用的ID后再一起归还，避免反复拿到同一个ID
+    private int allocateRoomId() {
+        IntPredicate filter = roomIdFilter;
+        int roomId = roomIdAllocator.allocate();
+        if (filter.test(roomId)) {
+            return roomId;
+        }
+        List<Integer> skipped = new ArrayList<>();
+        try {
+            while (!filter.test(roomId)) {
+                skipped.add(roomId);
+                roomId = roomIdAllocator.allocate();
+            }
+            return roomId;
+        } finally {
+            for (int skippedId : skipped) {
+                roomIdAllocator.release(skippedId);
+            }
+        }
+    }
+
+    // 集群中其他节点仍在使用的房间ID，本节点不再分配
+    public boolean reserveRoomId(int roomId) {
+        return roomIdAllocator.reserve(roomId);
+    }
+
+    public void releaseRoomId(int roomId) {
+        if (!chatRooms.containsKey(roomId)) {
+            roomIdAllocator.release(roomId);
+        }
+    }
+
+    // 从日志恢复房间，沿用原来的房间ID；ID已被占用时返回null
+    public ChatRoom restoreRoom(int roomId) {
+        if (!roomIdAllocator.reserve(roomId)) {
+            return null;
+        }
+        ChatRoom chatRoom = new ChatRoom(roomId);
+        chatRooms.put(roomId, chatRoom);
+        return chatRoom;
+    }
+
+    // 从日志恢复的成员还没有连接，按断线处理，等待同一playId重新连接
+    public Member restoreMember(ChatRoom chatRoom, String playId, String nickName) {
+        chatRoom.tryReserveSeat();
+        joinedPlayIds.add(playId);
+        Member member = chatRoom.addMember(null, playId, nickName);
+        member.markDisconnected();
+        return member;
+    }
+
+    // 从日志恢复的对局，开局记录已经在日志中
+    public void restoreGame(ChatRoom chatRoom) {
+        chatRoom.startGame();
+        gamingRooms.increment();
+    }
+
+    // 开局：分配座位、创建对局状态并记录到日志，在房间分片上执行
+    public void startGame(ChatRoom chatRoom) {
+        chatRoom.startGame();
+        gamingRooms.increment();
+        RoomJournal current = journal;
+        if (current != null) {
+            current.gameStarted(chatRoom.getRoomId(), chatRoom.getMembers());
+        }
+    }
+
+    // playId 同一时间只能在一个房间中
+    public boolean claimPlayId(String playId) {
+        return joinedPlayIds.add(playId);
+    }
+
+    public void releasePlayId(String playId) {
+        joinedPlayIds.remove(playId);
+    }
+
+    // 将连接加入房间并更新连接与房间的索引，调用前已经为该成员预留了座位，在房间分片上执行
+    public Member addMember(ChatRoom chatRoom, WebSocket conn, String playId, String nickName) {
+        if (chatRoom.removeMember(conn)) {
+            chatRoom.releaseSeat();
+        }
+        Member member = chatRoom.addMember(conn, playId, nickName);
+        connectionRooms.put(conn, chatRoom);
+        chatRoom.touch();
+        return member;
+    }
+
+    // 成员离开房间：释放座位、连接索引和playId，在房间分片上执行；成员不在房间中时返回false
+    public boolean releaseMember(ChatRoom chatRoom, WebSocket conn) {
+        Member member = chatRoom.getMemberByWebSocket(conn);
+        return member != null && releaseMember(chatRoom, member);
+    }
+
+    public boolean releaseMember(ChatRoom chatRoom, Member member) {
+        if (!chatRoom.removeMember(member)) {
+            return false;
+        }
+        chatRoom.releaseSeat();
+        unindexConnection(member.getWebSocket(), chatRoom);
+        joinedPlayIds.remove(member.getPlayId());
+        chatRoom.touch();
+        GameState gameState = chatRoom.getGameState();
+        if (gameState != null) {
+            gameState.markLeft(member.getPlayId());
+        }
+        RoomJournal current = journal;
+        if (current != null && gameState != null) {
+            current.memberLeft(chatRoom.getRoomId(), member.getPlayId());
+        }
+        return true;
+    }
+
+    // 成员断线但保留座位和playId，只移除旧连接的房间索引，在房间分片上执行
+    public void detachMember(ChatRoom chatRoom, Member member) {
+        unindexConnection(member.getWebSocket(), chatRoom);
+        member.markDisconnected();
+    }
+
+    // 同一playId重新连接，把保留的座位换到新连接上，在房间分片上执行
+    public void rebindMember(ChatRoom chatRoom, Member member, WebSocket conn) {
+        unindexConnection(member.getWebSocket(), chatRoom);
+        member.rebind(conn);
+        connectionRooms.put(conn, chatRoom);
+        chatRoom.touch();
+    }
+
+    // 关闭房间并释放房间及其成员的所有登记信息，在房间分片上执行；重复调用无副作用
+    public boolean releaseRoom(ChatRoom chatRoom) {
+        return releaseRoom(chatRoom, false);
+    }
+
+    // keepRoomId为true时房间ID不归还，继续保留（集群中该ID已让给其他节点）
+    public boolean releaseRoom(ChatRoom chatRoom, boolean keepRoomId) {
+        if (chatRoom.isClosed()) {
+            return false;
+        }
+        chatRoom.setClosed(true);
+        chatRooms.remove(chatRoom.getRoomId(), chatRoom);
+        for (Member member : chatRoom.getMembers()) {
+            unindexConnection(member.getWebSocket(), chatRoom);
+            joinedPlayIds.remove(member.getPlayId());
+        }
+        if (!keepRoomId) {
+            roomIdAllocator.release(chatRoom.getRoomId());
+        }
+        if (chatRoom.isGaming()) {
+            gamingRooms.decrement();
+        }
+        RoomJournal current = journal;
+        if (current != null && chatRoom.getGameState() != null) {
+            current.roomClosed(chatRoom.getRoomId());
+        }
+        return true;
+    }
+
+    // 从日志恢复、还没有重新连接的成员没有连接
+    private void unindexConnection(WebSocket conn, ChatRoom chatRoom) {
+        if (conn != null) {
+            connectionRooms.remove(conn, chatRoom);
+        }
+    }
+
+    public long getGamingRoomCount() {
+        return gamingRooms.sum();
+    }
+
+    // 各结构的存活数量，用于确认长时间运行时内存保持平稳
+    public Map<String, Long> getLiveCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("connections", (long) clientInfo.size());
+        counts.put("linkedUsers", (long) userConnections.size());
+        counts.put("userIdIndex", (long) userIdConnections.size());
+        counts.put("friendGraphUsers", (long) friendGraph.getUserCount());
+        counts.put("friendGraphEdges", friendGraph.getEdgeCount());
+        counts.put("rooms", (long) chatRooms.size());
+        counts.put("gamingRooms", gamingRooms.sum());
+        counts.put("roomIds", (long) roomIdAllocator.getAllocatedCount());
+        counts.put("connectionRooms", (long) connectionRooms.size());
+        counts.put("joinedPlayIds", (long) joinedPlayIds.size());
+        counts.put("pendingInvites", (long) pendingInvites.size());
+        counts.put("timers", roomExecutor.getTimers().getPendingCount());
+        return counts;
+    }
+}
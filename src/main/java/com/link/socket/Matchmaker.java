@@ -0,0 +1,164 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// 匹配引擎：等待中的玩家和有空位的房间各一个并发队列
+// 任意线程入队后尝试成为唯一的匹配线程，把积压的玩家批量分配到最早的空房间中，直到4人上限
+// 这样先打开的房间先坐满，房间有人离开后会重新进入队列补位
+class Matchmaker {
+    private final Queue<Ticket> waitingPlayers = new ConcurrentLinkedQueue<>();
+    private final Queue<ChatRoom> openRooms = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean matching = new AtomicBoolean();
+    private final Supplier<ChatRoom> roomFactory;
+    private final BiConsumer<ChatRoom, Ticket> seatHandler;
+
+    // 统计：入队到分配座位、入队到游戏开始的耗时
+    private final LongAdder matchedPlayers = new LongAdder();
+    private final LongAdder matchWaitNanos = new LongAdder();
+    private final LongAdder startedPlayers = new LongAdder();
+    private final LongAdder gameStartWaitNanos = new LongAdder();
+    private final AtomicLong maxGameStartWaitNanos = new AtomicLong();
+
+    // roomFactory 创建并注册新房间；seatHandler 在座位预留成功后把玩家加入房间
+    public Matchmaker(Supplier<ChatRoom> roomFactory, BiConsumer<ChatRoom, Ticket> seatHandler) {
+        this.roomFactory = roomFactory;
+        this.seatHandler = seatHandler;
+    }
+
+    public void enqueue(WebSocket conn, String playId, String nickName) {
+        enqueue(new Ticket(conn, playId, nickName, System.nanoTime()));
+    }
+
+    // 重新入队时保留原来的入队时间
+    public void enqueue(Ticket ticket) {
+        waitingPlayers.add(ticket);
+        match();
+    }
+
+    // 房间有了空位（例如成员离开）时重新开放给匹配
+    public void offerRoom(ChatRoom chatRoom) {
+        if (!chatRoom.isGaming() && !chatRoom.isClosed() && chatRoom.markMatchQueued()) {
+            openRooms.add(chatRoom);
+            match();
+        }
+    }
+
+    private void match() {
+        while (!waitingPlayers.isEmpty() && matching.compareAndSet(false, true)) {
+            try {
+                matchBatch();
+            } finally {
+                matching.set(false);
+            }
+        }
+    }
+
+    private void matchBatch() {
+        Ticket ticket;
+        while ((ticket = waitingPlayers.poll()) != null) {
+            ChatRoom chatRoom = reserveOpenSeat();
+            matchedPlayers.increment();
+            matchWaitNanos.add(System.nanoTime() - ticket.getEnqueuedNanos());
+            seatHandler.accept(chatRoom, ticket);
+        }
+    }
+
+    // 从最早的空房间中预留一个座位，没有空房间时创建新房间
+    private ChatRoom reserveOpenSeat() {
+        while (true) {
+            ChatRoom chatRoom = openRooms.peek();
+            if (chatRoom == null) {
+                chatRoom = roomFactory.get();
+                chatRoom.markMatchQueued();
+                openRooms.add(chatRoom);
+                continue;
+            }
+            if (chatRoom.tryReserveSeat()) {
+                return chatRoom;
+            }
+            // 房间已满、已开始或已关闭，移出队列；只有匹配线程出队，队头就是刚才查看的房间
+            openRooms.poll();
+            chatRoom.clearMatchQueued();
+        }
+    }
+
+    // 房间开始游戏时记录通过匹配加入的成员的等待时间
+    public void recordGameStart(List<Member> members) {
+        long now = System.nanoTime();
+        for (Member member : members) {
+            if (member.getMatchQueuedNanos() != 0) {
+                long wait = now - member.getMatchQueuedNanos();
+                startedPlayers.increment();
+                gameStartWaitNanos.add(wait);
+                maxGameStartWaitNanos.accumulateAndGet(wait, Math::max);
+            }
+        }
+    }
+
+    public int getWaitingPlayers() {
+        return waitingPlayers.size();
+    }
+
+    public int getOpenRooms() {
+        return openRooms.size();
+    }
+
+    public long getMatchedPlayers() {
+        return matchedPlayers.sum();
+    }
+
+    public double getAverageMatchMillis() {
+        long count = matchedPlayers.sum();
+        return count == 0 ? 0 : matchWaitNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getAverageGameStartMillis() {
+        long count = startedPlayers.sum();
+        return count == 0 ? 0 : gameStartWaitNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxGameStartMillis() {
+        return maxGameStartWaitNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    // 等待匹配的玩家
+    static class Ticket {
+        private final WebSocket conn;
+        private final String playId;
+        private final String nickName;
+        private final long enqueuedNanos;
+
+        Ticket(WebSocket conn, String playId, String nickName, long enqueuedNanos) {
+            this.conn = conn;
+            this.playId = playId;
+            this.nickName = nickName;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        public WebSocket getConn() {
+            return conn;
+        }
+
+        public String getPlayId() {
+            return playId;
+        }
+
+        public String getNickName() {
+            return nickName;
+        }
+
+        public long getEnqueuedNanos() {
+            return enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+
+class Member {
+    private volatile WebSocket webSocket; // 断线重连后换成新连接
+    private volatile long disconnectedNanos; // 断线保留座位的开始时间，0表示在线
+    private String playId;
+    private String nickName;
+    private long matchQueuedNanos; // 进入匹配队列的时间，0表示不是通过匹配加入的
+
+    public Member(WebSocket webSocket, String playId, String nickName) {
+        this.webSocket = webSocket;
+        this.playId = playId;
+        this.nickName = nickName;
+    }
+
+    public WebSocket getWebSocket() {
+        return webSocket;
+    }
+
+    // 断线后在宽限期内保留座位，等待同一playId重新连接
+    public void markDisconnected() {
+        disconnectedNanos = System.nanoTime();
+    }
+
+    public boolean isDisconnected() {
+        return disconnectedNanos != 0;
+    }
+
+    public long getDisconnectedNanos() {
+        return disconnectedNanos;
+    }
+
+    // 重新连接：换成新连接并恢复在线
+    public void rebind(WebSocket webSocket) {
+        this.webSocket = webSocket;
+        disconnectedNanos = 0;
+    }
+
+    public String getPlayId() {
+        return playId;
+    }
+
+    public String getNickName() {
+        return nickName;
+    }
+
+    public long getMatchQueuedNanos() {
+        return matchQueuedNanos;
+    }
+
+    public void setMatchQueuedNanos(long matchQueuedNanos) {
+        this.matchQueuedNanos = matchQueuedNanos;
+    }
+}
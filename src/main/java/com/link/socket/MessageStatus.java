@@ -0,0 +1,44 @@
+package com.link.socket;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// 客户端上行消息的status，按wire名称路由
+enum MessageStatus {
+    LINK("Link"),//连接服务器后发送好友列表
+    INVITE_SHIP("InviteShip"),//邀请添加好友
+    INVITE_SHIP_BACK("InviteShipBack"),
+    REMOVE_SHIP("RemoveShip"),//删除好友
+    ALONG_WH_GAME("AlongWHGame"),//邀请加入对局
+    ALONG_WH_GAME_DECI("AlongWHGameDeci"),//邀请加入对局的回复
+    CANCEL_ROOM("CancelRoom"),//删除房间
+    ID_SEND("IdSend"),//以下为game相关
+    MEMBER_PLAY_STEP("MemberPlayStep"),
+    HEARTBEAT("Heartbeat"),//应用层心跳，服务器回复HeartbeatAck
+    ROSTER("Roster"),//成员名单版本不连续时取回完整名单
+    UNKNOWN("");
+
+    private static final Map<String, MessageStatus> BY_WIRE_NAME = new HashMap<>();
+
+    static {
+        for (MessageStatus status : values()) {
+            if (status != UNKNOWN) {
+                BY_WIRE_NAME.put(status.wireName, status);
+            }
+        }
+    }
+
+    private final String wireName;
+
+    MessageStatus(String wireName) {
+        this.wireName = wireName;
+    }
+
+    public String getWireName() {
+        return wireName;
+    }
+
+    public static MessageStatus fromWireName(String wireName) {
+        return BY_WIRE_NAME.getOrDefault(wireName, UNKNOWN);
+    }
+}
@@ -1,369 +1,1039 @@
 package com.link.socket;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
 import org.java_websocket.drafts.Draft;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.protocols.Protocol;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+// 线程模型：全局注册表使用并发容器，可在任意网络线程上读写；
+// 房间内的状态变化（加入、离开、转发、关闭）都提交到房间所属的分片上按顺序执行
 public class MultiChatServer extends org.java_websocket.server.WebSocketServer {
-    private Map<WebSocket, JSONObject> userConnections = new HashMap<>();
+    private static final int ROOM_ID_CAPACITY = 1 << 20;  // 存活房间ID唯一，最多约100万个房间
+    private static final long ROOM_IDLE_TTL_MILLIS = 10 * 60 * 1000;  // 房间空置10分钟后回收
+    private static final long RECONNECT_GRACE_MILLIS = 60 * 1000;  // 对局中断线后保留座位60秒
+    private static final int OUTBOUND_QUEUE_CAPACITY = 256;  // 每个连接最多积压的出站消息数
+    private static final long OUTBOUND_FLUSH_MILLIS = 5;  // 积压队列的刷新间隔
+    private static final int CONNECTION_LOST_TIMEOUT_SECONDS = 0;  // 库自带的丢失连接检查默认关闭，由心跳检查代替
+    private static final long HEARTBEAT_INTERVAL_MILLIS = 15 * 1000;  // 连接空闲超过该时间时发送ping
+    private static final long HEARTBEAT_TIMEOUT_MILLIS = 45 * 1000;  // 超过该时间没有收到任何消息或pong时断开
+    private static final long INVITE_TTL_MILLIS = 60 * 1000;  // 好友邀请和对局邀请等待回复的时间
+    private static final String HEARTBEAT_ACK = "{\"status\":\"HeartbeatAck\"}";
+    private static final long DRAIN_POLL_MILLIS = 100;  // 排空等待时的检查间隔
+
+    private Map<WebSocket, JSONObject> userConnections;
+    private final AtomicLong nextClientId = new AtomicLong();  // 连接ID计数，只增不减
     private Map<WebSocket, String> clientInfo;  // 记录客户端信息，WebSocket对象与客户端标识的映射
-    private List<ChatRoom> chatRooms;  // 房间列表，存储多个聊天室
-    private int currentRoomIndex;  // 当前房间索引
-    private Set<String> joinedPlayIds = new HashSet<>();//已加入房间的playId 防止重复加入
+    private Map<String, WebSocket> userIdConnections;//userId与连接的映射 O(1)查找用户连接
+    private FriendGraph friendGraph;//服务器保存的好友关系，userId之间双向
+    private PresenceBatcher presenceBatcher;//上线通知合并，窗口50ms
+    private TimingWheel timers;  // 心跳、邀请过期、行动超时等定时任务共用的时间轮
+    private Map<String, TimingWheel.Timeout> pendingInvites;  // 等待回复的好友邀请：邀请方userId + 被邀请方userId
+    private Map<Integer, ChatRoom> chatRooms;  // 房间索引，roomId与聊天室的映射
+    private Matchmaker matchmaker;  // 匹配引擎，为未指定房间的玩家分配座位
+    private RoomExecutor roomExecutor;  // 房间事件分片执行器
+    private LifecycleManager lifecycle;  // 连接与房间结构的登记和释放
+    private OutboundDispatcher outboundDispatcher;  // 每个连接的有界出站队列
+    private StepRelay stepRelay;  // 对局步骤转发，可按tick合并
+    private ServerMetrics metrics;  // 运行指标，通过JMX暴露
+    private EventLog eventLog;  // 结构化事件日志，由后台线程写出
+    private volatile boolean draining;  // 排空中：不再接受新的匹配和邀请，进行中的对局继续
+    private int receiveBufferSize;  // 每个连接的SO_RCVBUF，0表示使用系统默认值
+    private int sendBufferSize;  // 每个连接的SO_SNDBUF，0表示使用系统默认值
+    private volatile long reconnectGraceMillis = RECONNECT_GRACE_MILLIS;  // 对局中断线后保留座位的时间，0表示立即离开
+    private volatile long heartbeatIntervalMillis = HEARTBEAT_INTERVAL_MILLIS;  // 0表示关闭心跳检查
+    private volatile long heartbeatTimeoutMillis = HEARTBEAT_TIMEOUT_MILLIS;
+    private volatile long inviteTtlMillis = INVITE_TTL_MILLIS;  // 0表示邀请不过期
+    private volatile long turnTimeoutMillis;  // 对局中每一手的行动时限，0表示不限时
+    private volatile RateLimiter rateLimiter = RateLimiter.defaults();  // 每个连接的上行消息限流
+    private RoomJournal journal;  // 对局日志，未开启时为null
+    private volatile ClusterNode cluster;  // 集群模式，未开启时为null
+    private volatile AdminServer admin;  // 本机管理接口，未开启时为null
+    private List<String> clusterSeeds = List.of();
 
 
     public MultiChatServer(int port) throws UnknownHostException {
-        super(new InetSocketAddress(port));
-        clientInfo = new HashMap<>();
-        chatRooms = new ArrayList<>();
-        currentRoomIndex = -1;
+        this(port, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MultiChatServer(int port, int roomShards) throws UnknownHostException {
+        this(port, roomShards, OUTBOUND_QUEUE_CAPACITY, OutboundQueue.OverflowPolicy.COALESCE);
+    }
+
+    public MultiChatServer(int port, int roomShards, int outboundCapacity, OutboundQueue.OverflowPolicy overflowPolicy) throws UnknownHostException {
+        this(port, Runtime.getRuntime().availableProcessors(), new RoomExecutor(roomShards), outboundCapacity, overflowPolicy);
+    }
+
+    // 可替换房间执行器，基准测试用它在调用线程上同步执行房间事件
+    MultiChatServer(int port, RoomExecutor roomExecutor, int outboundCapacity, OutboundQueue.OverflowPolicy overflowPolicy) {
+        this(port, Runtime.getRuntime().availableProcessors(), roomExecutor, outboundCapacity, overflowPolicy);
+    }
+
+    // decoders为解码消息的网络工作线程数
+    MultiChatServer(int port, int decoders, RoomExecutor roomExecutor, int outboundCapacity, OutboundQueue.OverflowPolicy overflowPolicy) {
+        // 协商二进制子协议，未请求子协议的客户端仍按JSON处理
+        super(new InetSocketAddress(port), decoders, Collections.singletonList(new Draft_6455(Collections.emptyList(),
+                Arrays.asList(new Protocol(BinaryProtocol.NAME), new Protocol("")))));
+        //用于丢失连接的间隔检查的设置器 值小于或等于 0 会导致检查被停用 单位为s
+        setConnectionLostTimeout(CONNECTION_LOST_TIMEOUT_SECONDS);
+        this.roomExecutor = roomExecutor;
+        timers = roomExecutor.getTimers();
+        presenceBatcher = new PresenceBatcher(timers, 50);
+        lifecycle = new LifecycleManager(roomExecutor, presenceBatcher, ROOM_ID_CAPACITY, ROOM_IDLE_TTL_MILLIS);
+        clientInfo = lifecycle.getClientInfo();
+        userConnections = lifecycle.getUserConnections();
+        userIdConnections = lifecycle.getUserIdConnections();
+        friendGraph = lifecycle.getFriendGraph();
+        pendingInvites = lifecycle.getPendingInvites();
+        chatRooms = lifecycle.getChatRooms();
+        eventLog = new EventLog();
+        roomExecutor.setEventLog(eventLog);
+        metrics = new ServerMetrics(lifecycle, eventLog);
+        matchmaker = new Matchmaker(this::createChatRoom, this::seatMatchedPlayer);
+        outboundDispatcher = new OutboundDispatcher(outboundCapacity, overflowPolicy, timers, OUTBOUND_FLUSH_MILLIS, metrics);
+        stepRelay = new StepRelay(roomExecutor, metrics, 0);
+    }
+
+    // 设置每个连接的收发缓冲区大小，0表示使用系统默认值；需在start之前调用
+    public void setSocketBufferSizes(int receiveBufferSize, int sendBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    // 设置对局步骤的合并间隔，建议10~30ms；0表示收到即转发（默认）
+    public void setStepTickMillis(long stepTickMillis) {
+        stepRelay.setTickMillis(stepTickMillis);
+    }
+
+    // 设置每个房间为断线重连保留的最近步骤数，只影响之后创建的房间
+    public void setEventRingSize(int eventRingSize) {
+        stepRelay.setEventRingSize(eventRingSize);
+    }
+
+    // 开启对局日志并恢复上次未结束的对局，需在start之前调用；恢复的成员按断线处理，在重连宽限期内可以重新加入
+    public void openJournal(Path directory, int segmentBytes, long commitIntervalMillis) throws IOException {
+        RoomJournal opened = RoomJournal.open(directory, segmentBytes, commitIntervalMillis, eventLog);
+        List<ChatRoom> restored = new ArrayList<>();
+        for (RoomJournal.RecoveredRoom recovered : opened.getRecoveredRooms()) {
+            ChatRoom chatRoom = restoreChatRoom(recovered);
+            if (chatRoom != null) {
+                restored.add(chatRoom);
+            }
+        }
+        journal = opened;
+        lifecycle.setJournal(opened);
+        stepRelay.setJournal(opened);
+        for (ChatRoom chatRoom : restored) {
+            roomExecutor.execute(chatRoom.getRoomId(), () -> {
+                for (Member member : chatRoom.getMembers()) {
+                    scheduleReconnectExpiry(chatRoom, member);
+                }
+                startTurnTimer(chatRoom);
+            });
+        }
+        eventLog.info(EventLog.Event.JOURNAL_RESTORED, null, EventLog.NO_ROOM,
+                "Restored " + restored.size() + " games from " + directory);
+    }
+
+    // 读入好友关系快照并定期保存，需在start之前调用；停止时再保存一次
+    public void openFriendGraph(Path file, long snapshotIntervalMillis) throws IOException {
+        friendGraph.load(file);
+        friendGraph.startSnapshots(file, snapshotIntervalMillis, eventLog);
+        eventLog.info(EventLog.Event.FRIEND_GRAPH_LOADED, null, EventLog.NO_ROOM, "Loaded " + friendGraph.getUserCount()
+                + " users and " + friendGraph.getEdgeCount() + " friendships from " + file);
+    }
+
+    // 事件日志改为追加写到文件，需在start之前调用
+    public void openEventLog(Path file) throws IOException {
+        eventLog.openFile(file);
+    }
+
+    // 按事件名设置采样，例如 conn.open=10 表示每10次连接只记录一次；需在start之前调用
+    public void setEventSampleRates(Map<String, Integer> sampleRates) {
+        for (Map.Entry<String, Integer> entry : sampleRates.entrySet()) {
+            eventLog.setSampleRate(EventLog.Event.fromWireName(entry.getKey()), entry.getValue());
+        }
+    }
+
+    EventLog getEventLog() {
+        return eventLog;
+    }
+
+    // 在127.0.0.1上开启管理接口；onStop不为null时提供 POST /stop
+    public void startAdmin(int port, Runnable onStop) throws IOException {
+        AdminServer created = new AdminServer(this, lifecycle, port, onStop);
+        admin = created;
+        eventLog.info(EventLog.Event.ADMIN_START, null, EventLog.NO_ROOM, "Listening on " + created.getAddress());
+    }
+
+    // 管理接口：按连接标识断开连接，返回是否找到
+    boolean kickConnection(String clientIdentifier) {
+        for (Map.Entry<WebSocket, String> entry : clientInfo.entrySet()) {
+            if (entry.getValue().equals(clientIdentifier)) {
+                kick(entry.getKey(), clientIdentifier);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 管理接口：按userId断开连接，返回是否找到
+    boolean kickUser(String userId) {
+        WebSocket conn = userIdConnections.get(userId);
+        if (conn == null) {
+            return false;
+        }
+        kick(conn, clientInfo.get(conn));
+        return true;
+    }
+
+    private void kick(WebSocket conn, String clientIdentifier) {
+        eventLog.info(EventLog.Event.ADMIN_KICK, clientIdentifier, EventLog.NO_ROOM, null);
+        conn.close(CloseFrame.POLICY_VALIDATION, "Kicked by admin");
+    }
+
+    // 管理接口：通知成员后关闭房间，在房间分片上执行；返回房间是否存在
+    boolean closeRoom(int roomId) {
+        ChatRoom chatRoom = chatRooms.get(roomId);
+        if (chatRoom == null) {
+            return false;
+        }
+        eventLog.info(EventLog.Event.ADMIN_CLOSE_ROOM, null, roomId, null);
+        roomExecutor.execute(roomId, () -> {
+            if (!chatRoom.isClosed()) {
+                closeIdleRoom(chatRoom);
+            }
+        });
+        return true;
+    }
+
+    // 集群中其他节点胜出了同一个房间ID：通知成员后关闭本节点的房间，在房间分片上执行
+    void closeRoomHeldElsewhere(int roomId) {
+        ChatRoom chatRoom = chatRooms.get(roomId);
+        if (chatRoom == null) {
+            return;
+        }
+        roomExecutor.execute(roomId, () -> {
+            if (!chatRoom.isClosed()) {
+                closeIdleRoom(chatRoom);
+            }
+        });
+    }
+
+    FriendGraph getFriendGraph() {
+        return friendGraph;
+    }
+
+    // 按开局时的成员顺序重建房间，再依次重放步骤和离开；此时服务器还没有启动，不会有其他线程访问房间
+    private ChatRoom restoreChatRoom(RoomJournal.RecoveredRoom recovered) {
+        ChatRoom chatRoom = lifecycle.restoreRoom(recovered.roomId);
+        if (chatRoom == null) {
+            return null;
+        }
+        for (int i = 0; i < recovered.playIds.length; i++) {
+            lifecycle.restoreMember(chatRoom, recovered.playIds[i], recovered.nickNames[i]);
+        }
+        lifecycle.restoreGame(chatRoom);
+        GameState gameState = chatRoom.getGameState();
+        EventRing eventRing = chatRoom.getOrCreateEventRing(stepRelay.getEventRingSize());
+        for (RoomJournal.RecoveredEvent event : recovered.events) {
+            if (event.type == RoomJournal.MEMBER_LEFT) {
+                Member member = chatRoom.getMemberByPlayId(event.playId);
+                if (member != null) {
+                    lifecycle.releaseMember(chatRoom, member);
+                }
+                continue;
+            }
+            String playId = event.playId.isEmpty() ? null : event.playId;
+            PlayStep step;
+            if (event.binary) {
+                step = PlayStep.fromBinary(null, event.seat, playId, event.payload);
+                if (playId != null) {
+                    gameState.applyEvent(playId, event.payload);
+                }
+            } else {
+                String text = new String(event.payload, StandardCharsets.UTF_8);
+                step = PlayStep.fromText(null, event.seat, playId, text);
+                if (playId != null) {
+                    gameState.applyStep(playId, text);
+                }
+            }
+            eventRing.append(step);
+        }
+        return chatRoom;
+    }
+
+    // 开启集群模式，需在start之前调用；url为其他节点连接本节点的地址，seeds为启动时连接的节点地址
+    public void enableCluster(String nodeId, String url, String secret, List<String> seeds) {
+        ClusterNode created = new ClusterNode(nodeId, url, secret, this, lifecycle);
+        lifecycle.setRoomIdFilter(created::ownsRoomId);
+        clusterSeeds = List.copyOf(seeds);
+        cluster = created;
+    }
+
+    ClusterNode getCluster() {
+        return cluster;
+    }
+
+    // 设置对局中断线后保留座位的时间，0表示断线立即离开房间
+    public void setReconnectGraceMillis(long reconnectGraceMillis) {
+        if (reconnectGraceMillis < 0) {
+            throw new IllegalArgumentException("reconnectGraceMillis must not be negative: " + reconnectGraceMillis);
+        }
+        this.reconnectGraceMillis = reconnectGraceMillis;
+    }
+
+    // 设置心跳检查：连接空闲超过intervalMillis时发送ping，超过timeoutMillis没有收到任何消息或pong时断开；
+    // intervalMillis为0时关闭检查。只影响之后建立的连接
+    public void setHeartbeat(long intervalMillis, long timeoutMillis) {
+        if (intervalMillis < 0 || (intervalMillis > 0 && timeoutMillis <= intervalMillis)) {
+            throw new IllegalArgumentException("heartbeat timeout must be longer than the interval: "
+                    + intervalMillis + "/" + timeoutMillis);
+        }
+        this.heartbeatIntervalMillis = intervalMillis;
+        this.heartbeatTimeoutMillis = timeoutMillis;
+    }
+
+    // 设置好友邀请和对局邀请等待回复的时间，0表示不过期
+    public void setInviteTtlMillis(long inviteTtlMillis) {
+        if (inviteTtlMillis < 0) {
+            throw new IllegalArgumentException("inviteTtlMillis must not be negative: " + inviteTtlMillis);
+        }
+        this.inviteTtlMillis = inviteTtlMillis;
+    }
+
+    // 设置上行消息限流，立即对所有连接生效
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    // 设置对局中每一手的行动时限，超时后由服务器跳到下一位玩家；0表示不限时，只影响之后开始的对局
+    public void setTurnTimeoutMillis(long turnTimeoutMillis) {
+        if (turnTimeoutMillis < 0) {
+            throw new IllegalArgumentException("turnTimeoutMillis must not be negative: " + turnTimeoutMillis);
+        }
+        this.turnTimeoutMillis = turnTimeoutMillis;
     }
 
     // ...
 
+    // 集群链路在握手时校验密钥，并在响应中带上本节点ID
+    @Override
+    public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft, ClientHandshake request)
+            throws InvalidDataException {
+        ServerHandshakeBuilder builder = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+        ClusterNode current = cluster;
+        if (current != null && ClusterNode.PATH.equals(request.getResourceDescriptor())) {
+            if (current.acceptPeer(request) == null) {
+                throw new InvalidDataException(CloseFrame.POLICY_VALIDATION, "Cluster handshake rejected");
+            }
+            builder.put(ClusterNode.NODE_HEADER, current.getNodeId());
+        }
+        return builder;
+    }
+
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        ClusterNode current = cluster;
+        if (current != null && current.isPeerConnection(conn)) {
+            current.onPeerOpen(conn, handshake);
+            return;
+        }
         String clientIdentifier = generateClientIdentifier();
+        applySocketBufferSizes(conn);
         clientInfo.put(conn, clientIdentifier);
+        ClientSession session = new ClientSession(clientIdentifier, outboundDispatcher.createQueue(conn), outboundDispatcher,
+                rateLimiter.newState());
+        conn.setAttachment(session);
+        long heartbeatInterval = heartbeatIntervalMillis;
+        if (heartbeatInterval > 0) {
+            session.setHeartbeat(timers.scheduleRepeating(() -> checkHeartbeat(conn, session), heartbeatInterval));
+        }
 
         // 发送初始状态给客户端
         sendInitialStatus(conn);
 
-        System.out.println(clientIdentifier + " entered the server.");
+        eventLog.info(EventLog.Event.CONNECTION_OPEN, clientIdentifier, EventLog.NO_ROOM, null);
+    }
+
+    // 在时间轮线程上执行：空闲超过间隔时发送ping，超过时限时按异常断开处理，对局中的座位进入重连宽限期
+    private void checkHeartbeat(WebSocket conn, ClientSession session) {
+        if (!conn.isOpen()) {
+            session.cancelHeartbeat();
+            return;
+        }
+        long idleNanos = System.nanoTime() - session.getLastInboundNanos();
+        if (idleNanos > TimeUnit.MILLISECONDS.toNanos(heartbeatTimeoutMillis)) {
+            session.cancelHeartbeat();
+            conn.closeConnection(CloseFrame.ABNORMAL_CLOSE, "Heartbeat timeout");
+            return;
+        }
+        if (idleNanos >= TimeUnit.MILLISECONDS.toNanos(heartbeatIntervalMillis)) {
+            try {
+                conn.sendPing();
+            } catch (WebsocketNotConnectedException ex) {
+                // 连接刚刚关闭
+            }
+        }
+    }
+
+    private static void touchSession(WebSocket conn) {
+        ClientSession session = conn.getAttachment();
+        if (session != null) {
+            session.touch();
+        }
+    }
+
+    // 记录连接流量，并在解析消息体之前按连接和status限流，超限时按配置丢弃、通知客户端或断开连接；返回是否继续处理
+    private boolean admit(WebSocket conn, MessageStatus messageStatus, int bytes) {
+        ClientSession session = conn.getAttachment();
+        if (session == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        session.getInbound().record(bytes, now);
+        RateLimiter limiter = rateLimiter;
+        long waitNanos = limiter.acquire(session.getRateLimitState(), messageStatus, now);
+        if (waitNanos == 0) {
+            session.setThrottleNotified(false);
+            return true;
+        }
+        metrics.recordRateLimited(messageStatus);
+        switch (limiter.getAction()) {
+            case THROTTLE:
+                if (!session.isThrottleNotified()) {
+                    session.setThrottleNotified(true);
+                    JSONObject json = new JSONObject();
+                    json.put("status", "RateLimited");
+                    json.put("limitedStatus", messageStatus.getWireName());
+                    json.put("retryAfterMillis", Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+                    String text = json.toString();
+                    OutgoingMessage.of(() -> text, null).sendTo(conn);
+                }
+                break;
+            case DISCONNECT:
+                if (!conn.isOpen()) {
+                    // 已经在关闭，缓冲区里剩下的消息直接丢弃
+                    break;
+                }
+                metrics.recordRateLimitDisconnect();
+                eventLog.log(EventLog.Level.WARN, EventLog.Event.RATE_LIMIT_DISCONNECT, session.getClientIdentifier(),
+                        EventLog.NO_ROOM, messageStatus.getWireName(), null, null);
+                conn.close(CloseFrame.POLICY_VALIDATION, "Rate limit exceeded");
+                break;
+            default:
+                break;
+        }
+        return false;
+    }
+
+    @Override
+    public void onWebsocketPong(WebSocket conn, Framedata frame) {
+        touchSession(conn);
+    }
+
+    private void applySocketBufferSizes(WebSocket conn) {
+        if ((receiveBufferSize <= 0 && sendBufferSize <= 0) || !(conn instanceof WebSocketImpl)) {
+            return;
+        }
+        if (!(((WebSocketImpl) conn).getChannel() instanceof SocketChannel)) {
+            return;
+        }
+        SocketChannel channel = (SocketChannel) ((WebSocketImpl) conn).getChannel();
+        try {
+            if (receiveBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            }
+            if (sendBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+            }
+        } catch (IOException ex) {
+            eventLog.warn(EventLog.Event.SOCKET_OPTIONS_FAILED, clientInfo.get(conn), "Failed to set socket buffer sizes", ex);
+        }
     }
 
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-        String clientIdentifier = clientInfo.get(conn);
-        clientInfo.remove(conn);
+        ClusterNode current = cluster;
+        if (current != null && current.isPeerConnection(conn)) {
+            // 节点下线以本节点发起的链路为准
+            return;
+        }
+        ClientSession session = conn.getAttachment();
+        if (session != null) {
+            session.cancelHeartbeat();
+        }
+        JSONObject userConnectionInfo = userConnections.get(conn);
 
-        // 获取房间
+        // 释放连接的所有登记信息
+        String clientIdentifier = lifecycle.releaseConnection(conn);
+        if (current != null && userConnectionInfo != null && !userIdConnections.containsKey(userConnectionInfo.getString("userId"))) {
+            current.userOffline(userConnectionInfo.getString("userId"));
+        }
+
+        // 获取房间，离开房间在房间分片上处理
         ChatRoom chatRoom = getChatRoomByWebSocket(conn);
         if (chatRoom != null) {
-            // 从joinedPlayIds集合中移除离开的客户端的playId
-            String playId = chatRoom.getMemberPlayId(conn);
-            if (playId != null) {
-                joinedPlayIds.remove(playId);
-            }
+            roomExecutor.execute(chatRoom.getRoomId(), () -> handleMemberDisconnect(chatRoom, conn));
+        }
 
-            chatRoom.removeMember(conn);
+        eventLog.info(EventLog.Event.CONNECTION_CLOSE, clientIdentifier,
+                chatRoom == null ? EventLog.NO_ROOM : chatRoom.getRoomId(), code + (remote ? " remote" : " local"));
+    }
 
-            // 更新房间状态或关闭房间
-            if (chatRoom.members.isEmpty()) {
-                // 房间内没有成员了，关闭房间
-                chatRooms.remove(chatRoom.getRoomId());
-            } else {
-                // 房间仍有成员，更新房间信息并广播给其他成员
-                JSONObject roomInfoMessage = createRoomInfoMessage(chatRoom);
-                broadcastToRoomMembers(chatRoom, roomInfoMessage);
+    // 成员连接断开，在房间分片上执行；对局中的成员在宽限期内保留座位，等待同一playId重新连接
+    private void handleMemberDisconnect(ChatRoom chatRoom, WebSocket conn) {
+        Member member = chatRoom.getMemberByWebSocket(conn);
+        if (member == null) {
+            // 已经离开或已被新连接替换
+            return;
+        }
+        long grace = reconnectGraceMillis;
+        if (!chatRoom.isGaming() || grace == 0 || chatRoom.isClosed()) {
+            handleMemberLeave(chatRoom, conn);
+            return;
+        }
+        lifecycle.detachMember(chatRoom, member);
+        scheduleReconnectExpiry(chatRoom, member);
+    }
+
+    // 宽限期到期仍未重新连接时离开房间，在房间分片上执行
+    private void scheduleReconnectExpiry(ChatRoom chatRoom, Member member) {
+        long disconnectedNanos = member.getDisconnectedNanos();
+        roomExecutor.schedule(chatRoom.getRoomId(), () -> {
+            // 宽限期内重新连接过（或再次断线重新计时）时不处理
+            if (member.getDisconnectedNanos() == disconnectedNanos && !chatRoom.isClosed()) {
+                handleMemberLeave(chatRoom, member);
             }
+        }, reconnectGraceMillis);
+    }
 
-            // 构建房间信息消息
-            JSONObject roomInfoMessage = createRoomInfoMessage(chatRoom);
-            broadcastToRoomMembers(chatRoom, roomInfoMessage);
+    // 成员离开房间，在房间分片上执行
+    private void handleMemberLeave(ChatRoom chatRoom, WebSocket conn) {
+        Member member = chatRoom.getMemberByWebSocket(conn);
+        if (member != null) {
+            handleMemberLeave(chatRoom, member);
         }
+    }
 
-        System.out.println(clientIdentifier + " has left the server.");
+    private void handleMemberLeave(ChatRoom chatRoom, Member member) {
+        // 后面的成员座位号依次前移，先记下离开的座位
+        int seat = chatRoom.getMembers().indexOf(member);
+
+        // 释放座位、连接索引和playId
+        if (!lifecycle.releaseMember(chatRoom, member)) {
+            // 已经离开过
+            return;
+        }
+
+        // 更新房间状态或关闭房间
+        if (chatRoom.getMembers().isEmpty()) {
+            // 房间内没有成员了，关闭房间，不需要再通知
+            removeChatRoom(chatRoom);
+            return;
+        }
+
+        // 未开始游戏的房间有了空位，重新开放给匹配
+        if (!chatRoom.isGaming() && !chatRoom.isInviteOnly()) {
+            matchmaker.offerRoom(chatRoom);
+        }
+
+        // 只把离开的座位广播给剩下的成员；离开的是房主时再通知新房主
+        broadcastToRoomMembers(chatRoom, createMemberLeftMessage(chatRoom, seat, member.getPlayId()));
+        if (seat == 0) {
+            broadcastToRoomMembers(chatRoom, createHostChangedMessage(chatRoom));
+        }
     }
 
     @Override
     public void onMessage(WebSocket conn, String message) {
-        String clientIdentifier = clientInfo.get(conn);
-        JSONObject json = new JSONObject(message);
-        String status = json.getString("status");
+        ClusterNode current = cluster;
+        if (current != null && current.isPeerConnection(conn)) {
+            current.onPeerMessage(conn, message);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        touchSession(conn);
+        // 只扫描路由需要的status字段，扫描失败时先按连接限流，再退回完整解析（格式错误时照常抛出异常）
+        String status = JsonFields.readString(message, "status");
+        MessageStatus messageStatus = status == null ? MessageStatus.UNKNOWN : MessageStatus.fromWireName(status);
+        if (!admit(conn, messageStatus, message.length())) {
+            return;
+        }
+        if (status == null) {
+            messageStatus = MessageStatus.fromWireName(new JSONObject(message).getString("status"));
+        }
+        try {
+            dispatchMessage(conn, messageStatus, message);
+        } finally {
+            metrics.recordMessage(messageStatus, message.length(), System.nanoTime() - startNanos);
+        }
+    }
 
-        switch (status) {
-            case "Link"://连接服务器后发送好友列表
+    private void dispatchMessage(WebSocket conn, MessageStatus messageStatus, String message) {
+        // 只转发的消息不解析消息体，原样转发客户端发送的文本
+        if (messageStatus == MessageStatus.MEMBER_PLAY_STEP) {
+            // 原文会被拼进其他消息转发出去，格式错误的消息直接丢弃
+            if (!JsonFields.isObject(message)) {
+                eventLog.log(EventLog.Level.WARN, EventLog.Event.MALFORMED_MESSAGE, clientInfo.get(conn), EventLog.NO_ROOM,
+                        messageStatus.getWireName(), null, null);
+                return;
+            }
+            handleMemberPlayStep(conn, message);
+            return;
+        }
+        if (messageStatus == MessageStatus.HEARTBEAT) {
+            OutgoingMessage.of(() -> HEARTBEAT_ACK, null).sendTo(conn);
+            return;
+        }
+        if (messageStatus == MessageStatus.ROSTER) {
+            handleRosterRequest(conn);
+            return;
+        }
+        if (messageStatus == MessageStatus.UNKNOWN) {
+            eventLog.log(EventLog.Level.WARN, EventLog.Event.UNKNOWN_STATUS, clientInfo.get(conn), EventLog.NO_ROOM,
+                    JsonFields.readString(message, "status"), null, null);
+            return;
+        }
+
+        JSONObject json = new JSONObject(message);
+        switch (messageStatus) {
+            case LINK://连接服务器后发送好友列表
                 handleUserLink(conn, json);
                 break;
-            case "InviteShip"://邀请添加好友
+            case INVITE_SHIP://邀请添加好友
                 handleFriendInvitation(conn, json);
                 break;
-            case "InviteShipBack":
+            case INVITE_SHIP_BACK:
                 handleInviteShipBack(conn, json);
                 break;
-            case "RemoveShip"://删除好友
+            case REMOVE_SHIP://删除好友
                 handleRemoveFriend(conn, json);
                 break;
-            case "AlongWHGame"://邀请加入对局
+            case ALONG_WH_GAME://邀请加入对局
                 handleInviteToRoom(conn, json);
                 break;
-            case "AlongWHGameDeci"://邀请加入对局
+            case ALONG_WH_GAME_DECI://邀请加入对局
                 handleAlongWHGameDeci(conn, json);
                 break;
-            case "CancelRoom"://删除房间
+            case CANCEL_ROOM://删除房间
                 handleCancelRoom(conn, json);
                 break;
-            case "IdSend"://以下为game相关
+            case ID_SEND://以下为game相关
                 handleIdSendStatus(conn, json);
                 break;
-            case "MemberPlayStep":
-                handleMemberPlayStep(conn, json);
-                break;
             default:
-                System.out.println("Received unknown status from " + clientIdentifier);
                 break;
         }
     }
 
+    // 二进制协议只承载对局消息，其他消息仍走JSON文本帧
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        ClusterNode current = cluster;
+        if (current != null && current.isPeerConnection(conn)) {
+            // 节点之间只使用JSON文本帧
+            return;
+        }
+        long startNanos = System.nanoTime();
+        touchSession(conn);
+        int bytes = message.remaining();
+        MessageStatus messageStatus = MessageStatus.UNKNOWN;
+        if (bytes == 0) {
+            // 空帧没有操作码，只计入连接的限流
+            admit(conn, MessageStatus.UNKNOWN, 0);
+            return;
+        }
+        byte opcode = message.get(message.position());
+        if (!admit(conn, opcode == BinaryProtocol.OP_ID_SEND ? MessageStatus.ID_SEND
+                : opcode == BinaryProtocol.OP_PLAY_STEP ? MessageStatus.MEMBER_PLAY_STEP
+                : opcode == BinaryProtocol.OP_ROSTER_REQUEST ? MessageStatus.ROSTER : MessageStatus.UNKNOWN, bytes)) {
+            return;
+        }
+        try {
+            message.get();
+            switch (opcode) {
+                case BinaryProtocol.OP_ID_SEND: {
+                    messageStatus = MessageStatus.ID_SEND;
+                    String playId = BinaryProtocol.readString(message);
+                    String nickName = BinaryProtocol.readString(message);
+                    int roomId = BinaryProtocol.readVarInt(message);
+                    long lastSeq = BinaryProtocol.readLastSeq(message);
+                    joinChatRoom(conn, playId, nickName, roomId == 0 ? "" : Integer.toString(roomId), lastSeq);
+                    break;
+                }
+                case BinaryProtocol.OP_PLAY_STEP:
+                    messageStatus = MessageStatus.MEMBER_PLAY_STEP;
+                    handleMemberPlayStep(conn, BinaryProtocol.readRemaining(message));
+                    break;
+                case BinaryProtocol.OP_ROSTER_REQUEST:
+                    messageStatus = MessageStatus.ROSTER;
+                    handleRosterRequest(conn);
+                    break;
+                default:
+                    eventLog.log(EventLog.Level.WARN, EventLog.Event.UNKNOWN_STATUS, clientInfo.get(conn), EventLog.NO_ROOM,
+                            null, "Binary opcode " + opcode, null);
+                    break;
+            }
+        } finally {
+            metrics.recordMessage(messageStatus, bytes, System.nanoTime() - startNanos);
+        }
+    }
+
     private void sendInitialStatus(WebSocket conn) {
         JSONObject json = new JSONObject();
         json.put("status", "IdSend");
-        conn.send(json.toString());
+        OutgoingMessage.of(json, () -> BinaryProtocol.encodeOpcode(BinaryProtocol.OP_REQUEST_ID)).critical().sendTo(conn);
     }
 
     // 处理Link操作
     private void handleUserLink(WebSocket conn, JSONObject json) {
         String userId = json.getString("userId");
-        JSONArray friendList = json.getJSONArray("friendList");
 
-        // 将用户连接信息存储到userConnections
+        // 第一次Link时导入客户端的好友列表，之后以服务器保存的好友关系为准；集群中在任一节点导入过即可
+        ClusterNode current = cluster;
+        if (!friendGraph.isSeeded(userId) && friendGraph.seed(userId, friendIds(json.optJSONArray("friendList")))
+                && current != null) {
+            current.friendsSeeded(userId);
+        }
+
+        // 将用户连接信息存储到userConnections，同时登记userId索引
         JSONObject userConnectionInfo = new JSONObject();
         userConnectionInfo.put("userId", userId);
-        userConnectionInfo.put("friendList", friendList);
-        userConnections.put(conn, userConnectionInfo);
+        userConnectionInfo.put("nickName", json.optString("nickName", userId));
+        lifecycle.linkUser(conn, userConnectionInfo);
 //
 //        // 发送初始状态给客户端
 //        sendInitialStatus(conn);
 
-        // 向所有好友发送FriendKeepLine消息
-        for (WebSocket friendConn : userConnections.keySet()) {
-            if (friendConn != conn) {
-                JSONObject friendKeepLineMsg = new JSONObject();
-                friendKeepLineMsg.put("status", "FriendKeepLine");
-                friendKeepLineMsg.put("userId", userId);
-                friendKeepLineMsg.put("friendId", userConnections.get(friendConn).getString("userId"));
-                friendConn.send(friendKeepLineMsg.toString());
-            }
+        notifyFollowers(userId, conn);
+        if (current != null) {
+            // 其他节点上的好友由所在节点通知
+            current.userOnline(userId);
         }
     }
 
-    private void handleFriendInvitation(WebSocket conn, JSONObject json) {
-        String userId = json.getString("userId");
-        String invitedUserId = json.getString("invitedUserId");
-
-        // 获取发起邀请用户的信息
-        JSONObject userConnectionInfo = userConnections.get(conn);
-        if (userConnectionInfo == null) {
-            // 未找到用户连接信息，可能用户未连接或连接信息已失效
-            return;
-        }
-
-        // 获取好友列表
-        JSONArray friendList = userConnectionInfo.getJSONArray("friendList");
+    private static List<String> friendIds(JSONArray friendList) {
         if (friendList == null) {
-            friendList = new JSONArray();
+            return List.of();
         }
-
-        // 检查被邀请用户是否已经是好友
-        if (isFriend(userId, invitedUserId, friendList)) {
-            // 被邀请用户已经是好友，返回错误信息给发起邀请用户
-            JSONObject response = new JSONObject();
-            response.put("status", "Error");
-            response.put("message", "The invited user is already your friend.");
-            conn.send(response.toString());
-            return;
+        List<String> friendIds = new ArrayList<>(friendList.length());
+        for (int i = 0; i < friendList.length(); i++) {
+            JSONObject friendInfo = friendList.optJSONObject(i);
+            if (friendInfo != null && friendInfo.has("userId")) {
+                friendIds.add(friendInfo.getString("userId"));
+            }
         }
+        return friendIds;
+    }
 
-        // 查找被邀请用户的连接
-        WebSocket invitedUserConn = null;
-        for (Map.Entry<WebSocket, JSONObject> entry : userConnections.entrySet()) {
-            JSONObject invitedUserInfo = entry.getValue();
-            String invitedUserIdInMap = invitedUserInfo.getString("userId");
-            if (invitedUserIdInMap.equals(invitedUserId)) {
-                invitedUserConn = entry.getKey();
-                break;
+    // 只向该用户的在线好友发送FriendKeepLine消息，登录高峰时按接收者合并
+    void notifyFollowers(String userId, WebSocket conn) {
+        for (String followerId : friendGraph.friendsOf(userId)) {
+            WebSocket friendConn = userIdConnections.get(followerId);
+            if (friendConn != null && friendConn != conn) {
+                presenceBatcher.offer(friendConn, followerId, userId);
             }
         }
+    }
 
-        if (invitedUserConn == null) {
-            // 未找到被邀请用户的连接，可能用户未连接或连接信息已失效
-            // 在此可以处理未找到被邀请用户的情况，例如返回错误信息给发起邀请用户
-            return;
+    Set<String> getLocalUserIds() {
+        return userIdConnections.keySet();
+    }
+
+    // 发给用户的消息：用户连在本节点时直接发送，连在其他节点时经集群转发；用户不在线时返回false
+    private boolean sendToUser(String userId, OutgoingMessage message) {
+        WebSocket userConn = getWebSocketByUserId(userId);
+        if (userConn != null) {
+            message.sendTo(userConn);
+            return true;
         }
+        ClusterNode current = cluster;
+        return current != null && current.forwardToUser(userId, message.getText(), message.isCritical());
+    }
 
-        // 转发邀请消息给被邀请用户
-        invitedUserConn.send(json.toString());
+    // 其他节点转发来的消息
+    void deliverToLocalUser(String userId, String text, boolean critical) {
+        WebSocket userConn = getWebSocketByUserId(userId);
+        if (userConn != null) {
+            OutgoingMessage message = OutgoingMessage.of(() -> text, null);
+            (critical ? message.critical() : message).sendTo(userConn);
+        }
     }
 
-    private void handleInviteShipBack(WebSocket conn, JSONObject json) {
-        String userId = json.getString("userId");
-        String invitedUserId = json.getString("invitedUserId");
-        String nickName = json.getString("nickName");
+    // 房间在其他节点上：告诉客户端去连接那个节点，返回是否已重定向
+    private boolean redirectToRoomNode(WebSocket conn, int roomId) {
+        ClusterNode current = cluster;
+        String nodeUrl = current == null ? null : current.routeRoom(roomId);
+        if (nodeUrl == null) {
+            return false;
+        }
+        JSONObject response = new JSONObject();
+        response.put("status", "Redirect");
+        response.put("roomId", Integer.toString(roomId));
+        response.put("url", nodeUrl);
+        OutgoingMessage.of(response).critical().sendTo(conn);
+        return true;
+    }
 
-        // 获取邀请方用户的信息
+    // 好友操作的发起方以连接Link时的userId为准，消息里的userId与之不一致时返回错误；未Link时返回null
+    private String linkedUserId(WebSocket conn, JSONObject json, String field) {
         JSONObject userConnectionInfo = userConnections.get(conn);
         if (userConnectionInfo == null) {
             // 未找到用户连接信息，可能用户未连接或连接信息已失效
-            return;
+            return null;
+        }
+        String userId = userConnectionInfo.getString("userId");
+        if (!userId.equals(json.optString(field, userId))) {
+            eventLog.log(EventLog.Level.WARN, EventLog.Event.IDENTITY_MISMATCH, clientInfo.get(conn), EventLog.NO_ROOM,
+                    json.optString("status"), field + " " + json.optString(field) + " on a connection linked as " + userId, null);
+            sendError(conn, "The userId does not match the linked user.");
+            return null;
         }
+        return userId;
+    }
 
-        // 获取好友列表
-        JSONArray friendList = userConnectionInfo.getJSONArray("friendList");
-        if (friendList == null) {
-            friendList = new JSONArray();
+    private static void sendError(WebSocket conn, String message) {
+        JSONObject response = new JSONObject();
+        response.put("status", "Error");
+        response.put("message", message);
+        OutgoingMessage.of(response).sendTo(conn);
+    }
+
+    private void handleFriendInvitation(WebSocket conn, JSONObject json) {
+        String userId = linkedUserId(conn, json, "userId");
+        if (userId == null) {
+            return;
         }
+        String invitedUserId = json.getString("invitedUserId");
 
-        // 检查邀请方用户是否已经是好友
-        if (isFriend(userId, invitedUserId, friendList)) {
-            // 邀请方用户已经是好友，返回错误信息给被邀请用户
+        // 检查被邀请用户是否已经是好友
+        if (friendGraph.areFriends(userId, invitedUserId)) {
+            // 被邀请用户已经是好友，返回错误信息给发起邀请用户
             JSONObject response = new JSONObject();
             response.put("status", "Error");
-            response.put("message", "You are already friends with the inviting user.");
-            conn.send(response.toString());
+            response.put("message", "The invited user is already your friend.");
+            OutgoingMessage.of(response).sendTo(conn);
             return;
         }
 
-        // 查找邀请方用户的连接
-        WebSocket invitingUserConn = getWebSocketByUserId(userId);
-        if (invitingUserConn == null) {
-            // 未找到邀请方用户的连接，可能用户未连接或连接信息已失效
-            // 在此可以处理未找到邀请方用户的情况，例如返回错误信息给被邀请用户
+        // 转发邀请消息给被邀请用户（可能在其他节点上）
+        if (!sendToUser(invitedUserId, OutgoingMessage.of(json))) {
+            // 未找到被邀请用户的连接，可能用户未连接或连接信息已失效
+            // 在此可以处理未找到被邀请用户的情况，例如返回错误信息给发起邀请用户
             return;
         }
+        registerInvite(userId, invitedUserId);
+    }
 
-        // 转发回复消息给邀请方用户
-        invitingUserConn.send(json.toString());
+    private static String inviteKey(String userId, String invitedUserId) {
+        return userId + '\n' + invitedUserId;
     }
 
-    private boolean isFriend(String userId, String invitedUserId, JSONArray friendList) {
-        for (int i = 0; i < friendList.length(); i++) {
-            JSONObject friendInfo = friendList.getJSONObject(i);
-            String friendUserId = friendInfo.getString("userId");
-            if (friendUserId.equals(invitedUserId)) {
-                return true;
-            }
+    // 好友邀请在TTL内等待回复，到期后通知邀请方；TTL为0时一直保存到回复。重复邀请同一个人时重新计时
+    private void registerInvite(String userId, String invitedUserId) {
+        long ttl = inviteTtlMillis;
+        String key = inviteKey(userId, invitedUserId);
+        TimingWheel.Timeout previous = pendingInvites.put(key, ttl == 0 ? TimingWheel.Timeout.never()
+                : timers.schedule(() -> expireInvite(key, userId, invitedUserId), ttl));
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    // 在时间轮线程上执行；邀请已被回复或重新发出时不处理
+    private void expireInvite(String key, String userId, String invitedUserId) {
+        boolean[] expired = new boolean[1];
+        pendingInvites.computeIfPresent(key, (k, timeout) -> {
+            expired[0] = timeout.isExpired();
+            return expired[0] ? null : timeout;
+        });
+        if (expired[0]) {
+            JSONObject message = new JSONObject();
+            message.put("status", "InviteExpired");
+            message.put("userId", userId);
+            message.put("invitedUserId", invitedUserId);
+            sendToUser(userId, OutgoingMessage.of(message));
+        }
+    }
+
+    // 取出等待回复的邀请，返回邀请是否还有效
+    private boolean takeInvite(String userId, String invitedUserId) {
+        TimingWheel.Timeout timeout = pendingInvites.remove(inviteKey(userId, invitedUserId));
+        if (timeout == null) {
+            return false;
         }
-        return false;
+        timeout.cancel();
+        return true;
     }
 
-    private void handleRemoveFriend(WebSocket conn, JSONObject json) {
+    private void handleInviteShipBack(WebSocket conn, JSONObject json) {
+        // 回复的是被邀请方；消息里的userId只用来找到要回复的邀请，邀请方以保存的邀请为准
+        String invitedUserId = linkedUserId(conn, json, "invitedUserId");
+        if (invitedUserId == null) {
+            return;
+        }
         String userId = json.getString("userId");
-        String removeUserId = json.getString("removeUserId");
 
-        // 获取发起删除好友用户的信息
-        JSONObject userConnectionInfo = userConnections.get(conn);
-        if (userConnectionInfo == null) {
-            // 未找到用户连接信息，可能用户未连接或连接信息已失效
+        // 邀请保存在邀请方所连的节点上，邀请方连在其他节点上时交给那个节点处理
+        ClusterNode current = cluster;
+        if (getWebSocketByUserId(userId) == null && current != null
+                && current.forwardAcceptance(userId, invitedUserId, json)) {
             return;
         }
-
-        // 获取好友列表
-        JSONArray friendList = userConnectionInfo.getJSONArray("friendList");
-        if (friendList == null) {
-            friendList = new JSONArray();
+        String error = acceptInvite(userId, invitedUserId, json);
+        if (error != null) {
+            sendError(conn, error);
         }
+    }
 
-        // 检查被删除用户是否已经是好友
-        if (!isFriend(userId, removeUserId, friendList)) {
-            // 被删除用户不是好友，返回错误信息给发起删除好友用户
+    // 其他节点转发来的邀请回复，错误信息经集群发回被邀请方
+    void handleRemoteAcceptance(String userId, String invitedUserId, JSONObject json) {
+        String error = acceptInvite(userId, invitedUserId, json);
+        if (error != null) {
             JSONObject response = new JSONObject();
             response.put("status", "Error");
-            response.put("message", "The user to be removed is not your friend.");
-            conn.send(response.toString());
-            return;
+            response.put("message", error);
+            sendToUser(invitedUserId, OutgoingMessage.of(response));
         }
+    }
 
-        // 查找被删除用户的连接
-        WebSocket removeUserConn = null;
-        for (Map.Entry<WebSocket, JSONObject> entry : userConnections.entrySet()) {
-            JSONObject removeUserInfo = entry.getValue();
-            String removeUserIdInMap = removeUserInfo.getString("userId");
-            if (removeUserIdInMap.equals(removeUserId)) {
-                removeUserConn = entry.getKey();
-                break;
-            }
+    // 被邀请方接受邀请：取出保存的邀请，双方成为好友并把回复转发给邀请方（可能在其他节点上）。
+    // 返回给被邀请方的错误信息，成功时返回null
+    private String acceptInvite(String userId, String invitedUserId, JSONObject json) {
+        if (!takeInvite(userId, invitedUserId)) {
+            // 邀请已过期或从未发出
+            return "The invitation has expired.";
+        }
+        if (friendGraph.areFriends(userId, invitedUserId)) {
+            return "You are already friends with the inviting user.";
         }
+        if (!friendGraph.addFriendship(userId, invitedUserId)) {
+            // 任一方的好友数已达上限
+            return "Friend list is full.";
+        }
+        ClusterNode current = cluster;
+        if (current != null) {
+            current.friendshipAdded(userId, invitedUserId);
+        }
+        // 邀请方已离线时不通知，下次登录以服务器的好友关系为准
+        sendToUser(userId, OutgoingMessage.of(json));
+        return null;
+    }
 
-        // 如果未找到被删除用户的连接，则直接返回
-        if (removeUserConn == null) {
+    private void handleRemoveFriend(WebSocket conn, JSONObject json) {
+        String userId = linkedUserId(conn, json, "userId");
+        if (userId == null) {
             return;
         }
+        String removeUserId = json.getString("removeUserId");
 
-        // 转发删除好友消息给被删除用户
-        removeUserConn.send(json.toString());
-
-        // 从好友列表中删除被删除用户
-        for (int i = 0; i < friendList.length(); i++) {
-            JSONObject friendInfo = friendList.getJSONObject(i);
-            String friendUserId = friendInfo.getString("userId");
-            if (friendUserId.equals(removeUserId)) {
-                friendList.remove(i);
-                break;
-            }
+        // 双方的好友关系一起删除，被删除用户不是好友时返回错误
+        if (!friendGraph.removeFriendship(userId, removeUserId)) {
+            // 被删除用户不是好友，返回错误信息给发起删除好友用户
+            sendError(conn, "The user to be removed is not your friend.");
+            return;
+        }
+        ClusterNode current = cluster;
+        if (current != null) {
+            current.friendshipRemoved(userId, removeUserId);
         }
 
-        // 更新好友列表信息
-        userConnectionInfo.put("friendList", friendList);
+        // 转发删除好友消息给被删除用户（可能在其他节点上），不在线时下次登录以服务器的好友关系为准
+        sendToUser(removeUserId, OutgoingMessage.of(json));
     }
 
     private void handleInviteToRoom(WebSocket conn, JSONObject json) {
-        String userId = json.getString("userId");
-        String alongInvitedId = json.getString("alongInvitedId");
-
-        // 获取发起邀请用户的信息
+        String userId = linkedUserId(conn, json, "userId");
         JSONObject userConnectionInfo = userConnections.get(conn);
-        if (userConnectionInfo == null) {
-            // 未找到用户连接信息，可能用户未连接或连接信息已失效
+        if (userId == null || userConnectionInfo == null) {
             return;
         }
-
-        // 获取好友列表
-        JSONArray friendList = userConnectionInfo.getJSONArray("friendList");
-        if (friendList == null) {
-            friendList = new JSONArray();
-        }
+        String alongInvitedId = json.getString("alongInvitedId");
 
         // 检查被邀请用户是否已经是好友
-        if (!isFriend(userId, alongInvitedId, friendList)) {
+        if (!friendGraph.areFriends(userId, alongInvitedId)) {
             // 被邀请用户不是好友，返回错误信息给发起邀请用户
             JSONObject response = new JSONObject();
             response.put("status", "Error");
             response.put("message", "The user to be invited is not your friend.");
-            conn.send(response.toString());
+            OutgoingMessage.of(response).sendTo(conn);
             return;
         }
 
-        // 查找被邀请用户的连接
-        WebSocket alongInvitedUserConn = null;
-        for (Map.Entry<WebSocket, JSONObject> entry : userConnections.entrySet()) {
-            JSONObject alongInvitedUserInfo = entry.getValue();
-            String alongInvitedUserIdInMap = alongInvitedUserInfo.getString("userId");
-            if (alongInvitedUserIdInMap.equals(alongInvitedId)) {
-                alongInvitedUserConn = entry.getKey();
-                break;
-            }
-        }
-
-        if (alongInvitedUserConn == null) {
+        // 查找被邀请用户：在本节点或其他节点上
+        ClusterNode current = cluster;
+        if (getWebSocketByUserId(alongInvitedId) == null
+                && (current == null || !current.isRemoteUser(alongInvitedId))) {
             // 未找到被邀请用户的连接，可能用户未连接或连接信息已失效
             // 在此可以处理未找到被邀请用户的情况，例如返回错误信息给发起邀请用户
             return;
         }
 
+        if (draining) {
+            sendDrainingError(conn);
+            return;
+        }
+
         // 创建房间，并将房间信息发送给被邀请用户
-        ChatRoom chatRoom = createChatRoom(generateRoomId());
-        chatRoom.addMember(conn, userId, userConnectionInfo.getString("nickName"));
+        ChatRoom chatRoom = createChatRoom();
+        chatRoom.setInviteOnly(true);
+        chatRoom.tryReserveSeat();
+        String nickName = json.optString("nickName", userConnectionInfo.getString("nickName"));
+        roomExecutor.execute(chatRoom.getRoomId(), () -> {
+            addMemberToRoom(chatRoom, conn, userId, nickName);
+
+            JSONObject roomInfoMessage = new JSONObject();
+            roomInfoMessage.put("status", "AlongWHGame");
+            roomInfoMessage.put("userId", userId);
+            roomInfoMessage.put("nickName", nickName);
+            roomInfoMessage.put("alongInvitedId", alongInvitedId);
+            roomInfoMessage.put("roomId", chatRoom.getRoomId());
+            sendToUser(alongInvitedId, OutgoingMessage.of(roomInfoMessage).critical());
+            scheduleRoomInviteExpiry(chatRoom, alongInvitedId);
+        });
+    }
 
-        JSONObject roomInfoMessage = new JSONObject();
-        roomInfoMessage.put("status", "AlongWHGame");
-        roomInfoMessage.put("userId", userId);
-        roomInfoMessage.put("nickName", userConnectionInfo.getString("nickName"));
-        roomInfoMessage.put("alongInvitedId", alongInvitedId);
-        roomInfoMessage.put("roomId", chatRoom.getRoomId());
-        alongInvitedUserConn.send(roomInfoMessage.toString());
+    // 对局邀请在TTL内没有被接受时，通知房主并关闭只有房主一人的房间
+    private void scheduleRoomInviteExpiry(ChatRoom chatRoom, String alongInvitedId) {
+        long ttl = inviteTtlMillis;
+        if (ttl == 0) {
+            return;
+        }
+        roomExecutor.schedule(chatRoom.getRoomId(), () -> {
+            if (chatRoom.isClosed() || chatRoom.isGaming() || chatRoom.getMembers().size() > 1) {
+                return;
+            }
+            JSONObject message = new JSONObject();
+            message.put("status", "InviteExpired");
+            message.put("roomId", chatRoom.getRoomId());
+            message.put("alongInvitedId", alongInvitedId);
+            broadcastToRoomMembers(chatRoom, OutgoingMessage.of(message));
+            closeIdleRoom(chatRoom);
+        }, ttl);
     }
 
     private void handleCancelRoom(WebSocket conn, JSONObject json) {
@@ -378,15 +1048,21 @@ public class MultiChatServer extends org.java_websocket.server.WebSocketServer {
 
         // 判断用户是否为房主
         ChatRoom chatRoom = getChatRoomByWebSocket(conn);
-        if (chatRoom != null && chatRoom.isHost(userId)) {
-            // 关闭房间
-            chatRooms.remove(chatRoom.getRoomId());
-
-            // 广播房间已关闭消息给房间内其他成员
-            JSONObject response = new JSONObject();
-            response.put("status", "RoomClosed");
-            broadcastToRoomMembers(chatRoom, response);
+        if (chatRoom == null) {
+            return;
         }
+        roomExecutor.execute(chatRoom.getRoomId(), () -> {
+            if (!chatRoom.isClosed() && chatRoom.isHost(userId)) {
+                // 关闭房间
+                removeChatRoom(chatRoom);
+
+                // 广播房间已关闭消息给房间内其他成员
+                JSONObject response = new JSONObject();
+                response.put("status", "RoomClosed");
+                broadcastToRoomMembers(chatRoom, OutgoingMessage.of(response,
+                        () -> BinaryProtocol.encodeOpcode(BinaryProtocol.OP_ROOM_CLOSED)).critical());
+            }
+        });
     }
 
     private void handleAlongWHGameDeci(WebSocket conn, JSONObject json) {
@@ -398,23 +1074,52 @@ public class MultiChatServer extends org.java_websocket.server.WebSocketServer {
         // 获取房间
         ChatRoom chatRoom = getChatRoomById(roomId);
         if (chatRoom == null) {
+            // 房间在其他节点上：接受时客户端需要连到那个节点再回复，拒绝时由那个节点通知房主
+            ClusterNode current = cluster;
+            if (current != null) {
+                if (decision.equals("recive")) {
+                    redirectToRoomNode(conn, Integer.parseInt(roomId));
+                } else {
+                    current.forwardDecision(Integer.parseInt(roomId), json);
+                }
+            }
             // 房间不存在，返回错误信息给客户端或其他处理方式
             return;
         }
 
+        roomExecutor.execute(chatRoom.getRoomId(), () -> handleAlongWHGameDeci(chatRoom, decision, alongInvitedId, nickName));
+    }
+
+    // 其他节点转发来的对局邀请回复
+    void handleRemoteDecision(int roomId, JSONObject json) {
+        ChatRoom chatRoom = chatRooms.get(roomId);
+        if (chatRoom == null) {
+            return;
+        }
+        roomExecutor.execute(roomId, () -> handleAlongWHGameDeci(chatRoom, json.getString("decision"),
+                json.getString("alonginvitedId"), json.getString("nickName")));
+    }
+
+    // 处理邀请加入对局的回复，在房间分片上执行
+    private void handleAlongWHGameDeci(ChatRoom chatRoom, String decision, String alongInvitedId, String nickName) {
+        if (chatRoom.isClosed()) {
+            return;
+        }
+
         if (decision.equals("recive")) {
             // 接受邀请
             // 创建新的WebSocket成员并加入房间
             WebSocket invitedWebSocket = getWebSocketByUserId(alongInvitedId);
-            if (invitedWebSocket != null) {
-                chatRoom.addMember(invitedWebSocket, alongInvitedId, nickName);
-                // 广播新加入的玩家信息给房间内其他成员
-                broadcastNewPlayerJoined(chatRoom, chatRoom.getMemberByWebSocket(invitedWebSocket));
+            if (invitedWebSocket != null && chatRoom.tryReserveSeat()) {
+                Member member = addMemberToRoom(chatRoom, invitedWebSocket, alongInvitedId, nickName);
+                // 被邀请者收到完整名单，房间内其他成员只收到新加入的玩家
+                createJoinSuccessResponse(chatRoom, invitedWebSocket).sendTo(invitedWebSocket);
+                broadcastMemberJoined(chatRoom, member);
             }
         } else if (decision.equals("refuse")) {
             // 拒绝邀请
             // 将拒绝信息发送给房间内房主
-            Member host = chatRoom.getMembers().get(0); // 获取房间内第一个成员作为房主
+            Member host = chatRoom.getMembers().isEmpty() ? null : chatRoom.getMembers().get(0); // 获取房间内第一个成员作为房主
             if (host != null) {
                 WebSocket hostWebSocket = host.getWebSocket();
                 if (hostWebSocket != null && hostWebSocket.isOpen()) {
@@ -423,20 +1128,47 @@ public class MultiChatServer extends org.java_websocket.server.WebSocketServer {
                     refuseMessage.put("decision", "refuse");
                     refuseMessage.put("alonginvitedId", alongInvitedId);
                     refuseMessage.put("nickName", nickName);
-                    hostWebSocket.send(refuseMessage.toString());
+                    OutgoingMessage.of(refuseMessage).sendTo(hostWebSocket);
                 }
             }
         }
     }
 
-    public WebSocket getWebSocketByUserId(String userId) {
-        for (Map.Entry<WebSocket, String> entry : clientInfo.entrySet()) {
-            String playId = entry.getValue();
-            if (playId.equals(userId)) {
-                return entry.getKey();
+    private void sendDrainingError(WebSocket conn) {
+        JSONObject response = new JSONObject();
+        response.put("status", "Error");
+        response.put("message", "The server is shutting down.");
+        OutgoingMessage.of(response).sendTo(conn);
+    }
+
+    // 开始排空：拒绝新的匹配和对局邀请，已在房间中的对局照常进行
+    public void beginDrain() {
+        draining = true;
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    // 开始排空：不再接纳新的房间，对局日志落盘，等出站队列写完，超时返回false。
+    // 不等进行中的对局结束（一局远长于排空时间），这些对局在下次启动时从对局日志恢复
+    public boolean drain(long timeoutMillis) throws InterruptedException {
+        beginDrain();
+        if (journal != null) {
+            journal.flush();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (metrics.getOutboundQueueDepth() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
             }
+            Thread.sleep(DRAIN_POLL_MILLIS);
         }
-        return null;
+        return true;
+    }
+
+    public WebSocket getWebSocketByUserId(String userId) {
+        return userIdConnections.get(userId);
     }
 
     //以下游戏相关
@@ -446,11 +1178,37 @@ public class MultiChatServer extends org.java_websocket.server.WebSocketServer {
 
         //重新加入 获取房间号
         String roomId = json.optString("roomId");
+        // 断线重连时客户端收到的最后一个步骤序号，没有时补发全部保留的步骤
+        long lastSeq = json.optLong("lastSeq", -1);
+
+        joinChatRoom(conn, playId, nickName, roomId, lastSeq);
+    }
 
+    // JSON和二进制协议共用的加入房间入口，roomId为空字符串时自动匹配房间
+    private void joinChatRoom(WebSocket conn, String playId, String nickName, String roomId, long lastSeq) {
         // 创建房间
         ChatRoom chatRoom;
 
-        if (joinedPlayIds.contains(playId)) {
+        if (draining && roomId.isEmpty()) {
+            // 排空中不再开始新的匹配
+            sendDrainingError(conn);
+            return;
+        }
+
+        if (!roomId.isEmpty()) {
+            // 房间在集群中的其他节点上
+            if (getChatRoomById(roomId) == null && redirectToRoomNode(conn, Integer.parseInt(roomId))) {
+                return;
+            }
+            // 对局中的房间只接受原成员重新连接，playId仍由保留的座位占用
+            ChatRoom gamingRoom = getChatRoomById(roomId);
+            if (gamingRoom != null && gamingRoom.isGaming()) {
+                roomExecutor.execute(gamingRoom.getRoomId(), () -> rejoinChatRoom(gamingRoom, conn, playId, lastSeq));
+                return;
+            }
+        }
+
+        if (!lifecycle.claimPlayId(playId)) {
             // 重复加入房间的处理，例如返回错误信息给客户端
             return;
         }
@@ -463,402 +1221,482 @@ public class MultiChatServer extends org.java_websocket.server.WebSocketServer {
 
             if (chatRoom == null) {
                 // 房间不存在，返回错误信息给客户端或其他处理方式
+                lifecycle.releasePlayId(playId);
                 return;
             }
 
-            if (!chatRoom.isJoinAllowed()) {
+            if (!chatRoom.tryReserveSeat()) {
                 // 房间不允许加入，返回错误信息给客户端或其他处理方式
+                lifecycle.releasePlayId(playId);
                 return;
             }
 
-            // 移除先前的 WebSocket 实例（如果存在）
-            chatRoom.removeMember(conn);
-
-            // 加入房间
-            chatRoom.addMember(conn, playId, nickName);
-
-            // 将playId添加到已加入房间的列表中
-            joinedPlayIds.add(playId);
-
-            // 构建响应消息
-            JSONObject response = createJoinSuccessResponse(chatRoom,conn);
-
-            // 发送响应消息给客户端
-            conn.send(response.toString());
-
-            //广播新加入的客户端给房间内其他成员
-            broadcastNewPlayerJoined(chatRoom, chatRoom.getMembers().get(0));
-
-            if (chatRoom.getMembers().size() >= 4) {
-                chatRoom.isGaming = true;
-                JSONObject broadcastMsg = new JSONObject();
-                broadcastMsg.put("status", "GBegin");
-                String roomIdStr = Integer.toString(chatRoom.getRoomId());
-                broadcastMsg.put("roomId", roomIdStr);
-                broadcastToRoomMembers(chatRoom, broadcastMsg);
-            }
-
-            System.out.println(clientInfo.get(conn) + " joined chat room " + chatRoom.getRoomId());
+            roomExecutor.execute(chatRoom.getRoomId(), () -> completeJoin(chatRoom, conn, playId, nickName, 0));
 
         }else{
-            chatRoom = getOrCreateChatRoom();
-
-            // 移除先前的 WebSocket 实例（如果存在）
-            chatRoom.removeMember(conn);
-
-            // 加入房间
-            chatRoom.addMember(conn, playId, nickName);
-
-            // 将playId添加到已加入房间的列表中
-            joinedPlayIds.add(playId);
+            // 交给匹配引擎分配房间
+            matchmaker.enqueue(conn, playId, nickName);
+        }
 
-            // 构建响应消息
-            JSONObject response = createJoinSuccessResponse(chatRoom,conn);
 
-            // 发送响应消息给客户端
-            conn.send(response.toString());
 
-            //广播新加入的客户端给房间内其他成员
-            broadcastNewPlayerJoined(chatRoom, chatRoom.getMembers().get(0));
+    }
 
-            if (chatRoom.getMembers().size() >= 4) {
-                chatRoom.isGaming = true;
-                JSONObject broadcastMsg = new JSONObject();
-                broadcastMsg.put("status", "GBegin");
-                String roomIdStr = Integer.toString(chatRoom.getRoomId());
-                broadcastMsg.put("roomId", roomIdStr);
-                broadcastToRoomMembers(chatRoom, broadcastMsg);
+    // 匹配引擎已为玩家预留座位，到房间分片上完成加入；房间在此期间关闭时重新匹配
+    private void seatMatchedPlayer(ChatRoom chatRoom, Matchmaker.Ticket ticket) {
+        roomExecutor.execute(chatRoom.getRoomId(), () -> {
+            if (chatRoom.isClosed() && ticket.getConn().isOpen()) {
+                matchmaker.enqueue(ticket);
+                return;
             }
-
-            System.out.println(clientInfo.get(conn) + " joined chat room " + chatRoom.getRoomId());
-        }
-
-
-
+            completeJoin(chatRoom, ticket.getConn(), ticket.getPlayId(), ticket.getNickName(), ticket.getEnqueuedNanos());
+        });
     }
 
-    private void handleMemberPlayStep(WebSocket conn, JSONObject json) {
-//        String playId = json.getString("playId");
-//        String memberPlayStepEvent = json.getString("memberPlayStepEvent");
-//
-        // 查找客户端所在的房间
-        ChatRoom chatRoom = getChatRoomByWebSocket(conn);
-        if (chatRoom == null) {
-            // 客户端不在任何房间中，忽略该消息
+    // 加入房间并通知房间成员，在房间分片上执行；调用前已经预留了座位
+    private void completeJoin(ChatRoom chatRoom, WebSocket conn, String playId, String nickName, long matchQueuedNanos) {
+        if (!conn.isOpen() || chatRoom.isClosed()) {
+            chatRoom.releaseSeat();
+            lifecycle.releasePlayId(playId);
             return;
         }
 
-        // 构建广播消息
-//        JSONObject broadcastMsg = new JSONObject();
-//        broadcastMsg.put("status", "MemberPlayStep");
-//        broadcastMsg.put("playId", playId);
-//        broadcastMsg.put("memberPlayStepEvent", memberPlayStepEvent);
-
-        // 广播消息给房间内其他客户端
-        broadcastToRoomMembersExceptSender(chatRoom, conn, json);
-    }
+        // 加入房间（会先移除先前的 WebSocket 实例）
+        Member member = addMemberToRoom(chatRoom, conn, playId, nickName);
+        member.setMatchQueuedNanos(matchQueuedNanos);
 
-    private JSONObject createJoinSuccessResponse(ChatRoom chatRoom , WebSocket conn) {
-        JSONObject response = new JSONObject();
-        response.put("status", "JinSuccess");
-        response.put("Index", chatRoom.getMemberIndex(conn));
-        response.put("roomMembers", chatRoom.getMemberInfo());
-        return response;
-    }
+        // 连接可能在加入过程中关闭，此时onClose可能看不到房间索引
+        if (!conn.isOpen()) {
+            handleMemberLeave(chatRoom, conn);
+            return;
+        }
 
-    private JSONObject createRoomInfoMessage(ChatRoom chatRoom) {
-        JSONObject message = new JSONObject();
-        message.put("status", "SoneLeave");
-        message.put("roomMembers", chatRoom.getMemberInfo());
+        // 构建响应消息
+        OutgoingMessage response = createJoinSuccessResponse(chatRoom,conn);
+
+        // 发送响应消息给客户端
+        response.sendTo(conn);
+
+        //广播新加入的客户端给房间内其他成员
+        broadcastMemberJoined(chatRoom, member);
+
+        if (chatRoom.getMembers().size() >= ChatRoom.MAX_MEMBERS) {
+            lifecycle.startGame(chatRoom);
+            startTurnTimer(chatRoom);
+            matchmaker.recordGameStart(chatRoom.getMembers());
+            JSONObject broadcastMsg = new JSONObject();
+            broadcastMsg.put("status", "GBegin");
+            String roomIdStr = Integer.toString(chatRoom.getRoomId());
+            broadcastMsg.put("roomId", roomIdStr);
+            int roomId = chatRoom.getRoomId();
+            broadcastToRoomMembers(chatRoom, OutgoingMessage.of(broadcastMsg,
+                    () -> BinaryProtocol.encodeRoomId(BinaryProtocol.OP_GAME_BEGIN, roomId)).critical());
+        }
 
-        return message;
+        eventLog.info(EventLog.Event.ROOM_JOIN, clientInfo.get(conn), chatRoom.getRoomId(), null);
     }
 
-    private void broadcastNewPlayerJoined(ChatRoom chatRoom, Member newMember) {
-        List<Member> roomMembers = chatRoom.getMembers();
-
-        JSONObject message = new JSONObject();
-        message.put("status", "JinNPlayer");
-
-        JSONArray memberArray = new JSONArray();
-        for (Member member : roomMembers) {
-            JSONObject memberInfo = new JSONObject();
-            memberInfo.put("playId", member.getPlayId());
-            memberInfo.put("nickName", member.getNickName());
-            memberArray.put(memberInfo);
+    // 断线重连：把保留的座位换到新连接上，再补发错过的步骤，在房间分片上执行
+    private void rejoinChatRoom(ChatRoom chatRoom, WebSocket conn, String playId, long lastSeq) {
+        if (!conn.isOpen() || chatRoom.isClosed()) {
+            return;
         }
-        message.put("roomMembers", memberArray);
-
-        String broadcastMessage = message.toString();
-        for (Member member : roomMembers) {
-            WebSocket memberWebSocket = member.getWebSocket();
-            memberWebSocket.send(broadcastMessage);
+        Member member = chatRoom.getMemberByPlayId(playId);
+        if (member == null) {
+            // 不是这个房间的成员，对局中的房间不接受新成员
+            return;
         }
-    }
-
-    //还需要处理发送消息失败、异常处理等情况。
-    private void broadcastToRoomMembers(ChatRoom chatRoom, JSONObject message) {
-        List<Member> roomMembers = chatRoom.getMembers();
-
-        for (Member member : roomMembers) {
-            member.webSocket.send(message.toString());
+        WebSocket previous = member.getWebSocket();
+        lifecycle.rebindMember(chatRoom, member, conn);
+        if (previous != null && previous != conn && previous.isOpen()) {
+            // 旧连接还没有被发现断开，关闭后它的onClose找不到成员，不会再离开房间
+            previous.close(CloseFrame.NORMAL, "Reconnected from another connection");
         }
-    }
 
-    private void broadcastToRoomMembersExceptSender(ChatRoom chatRoom, WebSocket conn, JSONObject message) {
-        List<Member> roomMembers = chatRoom.getMembers();
+        createJoinSuccessResponse(chatRoom, conn).sendTo(conn);
+        createCatchUpMessage(chatRoom, lastSeq).sendTo(conn);
+        eventLog.info(EventLog.Event.ROOM_REJOIN, clientInfo.get(conn), chatRoom.getRoomId(), null);
+    }
 
-        for (Member member : roomMembers) {
-            WebSocket memberWebSocket = member.getWebSocket();
-            if (memberWebSocket != null && memberWebSocket.isOpen() && memberWebSocket != conn) {
-                member.getWebSocket().send(message.toString());
+    // CatchUp：lastSeq之后仍保留的步骤和当前对局状态；缺口已被覆盖时complete为false，客户端以state为准。
+    // 仍在tick中等待合并的步骤之后会照常转发，客户端按seq去重
+    private OutgoingMessage createCatchUpMessage(ChatRoom chatRoom, long lastSeq) {
+        EventRing eventRing = chatRoom.getEventRing();
+        List<PlayStep> steps = eventRing == null ? List.of() : eventRing.since(lastSeq);
+        long currentSeq = eventRing == null ? 0 : eventRing.getLastSeq();
+        boolean complete = eventRing == null ? lastSeq >= 0 : eventRing.covers(lastSeq);
+
+        StringBuilder builder = new StringBuilder(96 + steps.size() * 96);
+        builder.append("{\"status\":\"CatchUp\",\"roomId\":\"").append(chatRoom.getRoomId())
+                .append("\",\"lastSeq\":").append(currentSeq)
+                .append(",\"complete\":").append(complete)
+                .append(",\"steps\":[");
+        for (int i = 0; i < steps.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
             }
+            builder.append(steps.get(i).getText());
+        }
+        builder.append(']');
+        GameState gameState = chatRoom.getGameState();
+        if (gameState != null) {
+            builder.append(",\"state\":").append(gameState.toJson());
         }
+        String text = builder.append('}').toString();
+        // 二进制客户端同样收到JSON文本帧
+        return OutgoingMessage.of(() -> text, null).critical();
     }
 
-
-    private ChatRoom getChatRoomById(String roomId) {
-        int targetRoomId = Integer.parseInt(roomId);
-        for (ChatRoom chatRoom : chatRooms) {
-            if (chatRoom.getRoomId() == targetRoomId) {
-                return chatRoom;
-            }
+    private void handleMemberPlayStep(WebSocket conn, String message) {
+        // 查找客户端所在的房间
+        ChatRoom chatRoom = getChatRoomByWebSocket(conn);
+        if (chatRoom == null) {
+            // 客户端不在任何房间中，忽略该消息
+            return;
         }
-        return null; // 没有找到对应的房间
-    }
 
-    private ChatRoom createChatRoom(int roomId) {
-        ChatRoom chatRoom = new ChatRoom(roomId);
-        chatRooms.add(chatRoom);
-        return chatRoom;
+        // 转发给房间内其他客户端，原始文本只编码分帧一次；二进制接收者只需要事件内容
+        roomExecutor.execute(chatRoom.getRoomId(), () -> {
+            chatRoom.touch();
+            // 步骤中带有状态字段时更新对局状态；不是发送者的回合或字段不合规则时只是不更新状态，
+            // 步骤仍然原样转发（例如给其他玩家记入租金），与原协议一致
+            String playId = chatRoom.getMemberPlayId(conn);
+            GameState gameState = chatRoom.getGameState();
+            if (gameState != null && playId != null) {
+                int turnNumber = gameState.getTurnNumber();
+                gameState.applyStep(playId, message);
+                noteTurnProgress(chatRoom, gameState, playId, turnNumber);
+            }
+            stepRelay.relay(chatRoom, PlayStep.fromCheckedText(conn, chatRoom.getMemberIndex(conn), playId, message));
+        });
     }
 
-    private class ChatRoom {
-        private int roomId;
-        private boolean isGaming; // 添加isGaming属性
-        private List<Member> members;
-
-        public ChatRoom(int roomId) {
-            this.roomId = roomId;
-            this.isGaming = false; // 默认房间游戏状态为false，即未进行游戏
-            members = new ArrayList<>();
+    // 二进制客户端发来的对局步骤，JSON接收者收到与原协议相同格式的MemberPlayStep
+    private void handleMemberPlayStep(WebSocket conn, byte[] event) {
+        ChatRoom chatRoom = getChatRoomByWebSocket(conn);
+        if (chatRoom == null) {
+            return;
         }
 
-        public int getRoomId() {
-            return roomId;
-        }
+        roomExecutor.execute(chatRoom.getRoomId(), () -> {
+            Member sender = chatRoom.getMemberByWebSocket(conn);
+            if (sender == null) {
+                return;
+            }
+            chatRoom.touch();
+            // 与JSON步骤相同：事件带有状态字段时按同样的回合和规则校验，步骤本身照常转发
+            GameState gameState = chatRoom.getGameState();
+            if (gameState != null) {
+                int turnNumber = gameState.getTurnNumber();
+                gameState.applyEvent(sender.getPlayId(), event);
+                noteTurnProgress(chatRoom, gameState, sender.getPlayId(), turnNumber);
+            }
+            int seat = chatRoom.getMemberIndex(conn);
+            stepRelay.relay(chatRoom, PlayStep.fromBinary(conn, seat, sender.getPlayId(), event));
+        });
+    }
 
-        public boolean isGaming() {
-            return isGaming;
+    // 开局或恢复对局时开始计时，在房间分片上执行
+    private void startTurnTimer(ChatRoom chatRoom) {
+        long timeout = turnTimeoutMillis;
+        if (timeout == 0) {
+            return;
         }
+        chatRoom.setTurnDeadlineNanos(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+        roomExecutor.schedule(chatRoom.getRoomId(), () -> checkTurnDeadline(chatRoom), timeout);
+    }
 
-        public void setGaming(boolean isGaming) {
-            this.isGaming = isGaming;
+    // 当前玩家发出步骤或轮到下一位玩家时顺延截止时间，只改一个字段，定时任务到期时再按剩余时间重新计时
+    private void noteTurnProgress(ChatRoom chatRoom, GameState gameState, String playId, int turnNumberBefore) {
+        if (chatRoom.getTurnDeadlineNanos() == 0) {
+            return;
         }
-
-        // ChatRoom类内部的isHost方法
-        public boolean isHost(String userId) {
-            if (members.isEmpty()) {
-                return false;
-            }
-            Member hostMember = members.get(0); // 假设房主是第一个加入房间的成员
-            return hostMember.getPlayId().equals(userId);
+        if (gameState.getTurnNumber() != turnNumberBefore || gameState.getCurrentTurn() == gameState.seatOf(playId)) {
+            chatRoom.setTurnDeadlineNanos(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(turnTimeoutMillis));
         }
+    }
 
-        public Member getMemberByWebSocket(WebSocket webSocket) {
-            for (Member member : members) {
-                if (member.getWebSocket() == webSocket) {
-                    return member;
-                }
-            }
-            return null;
+    // 在房间分片上执行
+    private void checkTurnDeadline(ChatRoom chatRoom) {
+        GameState gameState = chatRoom.getGameState();
+        long deadline = chatRoom.getTurnDeadlineNanos();
+        if (chatRoom.isClosed() || gameState == null || deadline == 0) {
+            return;
         }
-
-        // 获取房主的userId
-        public String getHostId() {
-            if (!members.isEmpty()) {
-                return members.get(0).getPlayId();
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+            skipTurn(chatRoom, gameState);
+            remainingNanos = TimeUnit.MILLISECONDS.toNanos(turnTimeoutMillis);
+            if (remainingNanos == 0) {
+                chatRoom.setTurnDeadlineNanos(0);
+                return;
             }
-            return null;
+            chatRoom.setTurnDeadlineNanos(System.nanoTime() + remainingNanos);
         }
+        roomExecutor.schedule(chatRoom.getRoomId(), () -> checkTurnDeadline(chatRoom),
+                Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos)));
+    }
 
-        public String getMemberPlayId(WebSocket conn) {
-            for (Member member : members) {
-                if (member.getWebSocket() == conn) {
-                    return member.getPlayId();
-                }
-            }
-            return null;
-        }
+    // 当前玩家超时：服务器代为发出一条TurnTimeout步骤，把行动权交给下一位仍在对局中的玩家。
+    // 它和玩家的步骤一样分配序号、写入对局日志并转发给所有成员，重连补发和重启恢复时同样生效
+    private void skipTurn(ChatRoom chatRoom, GameState gameState) {
+        int seat = gameState.getCurrentTurn();
+        int next = gameState.nextTurn();
+        String playId = gameState.getPlayId(seat);
+        String text = "{\"status\":\"TurnTimeout\",\"roomId\":\"" + chatRoom.getRoomId()
+                + "\",\"playId\":" + JSONObject.quote(playId) + ",\"turn\":" + next + "}";
+        gameState.applyStep(playId, text);
+        stepRelay.relay(chatRoom, PlayStep.fromCheckedText(null, seat, playId, text));
+    }
 
-        // 判断房间是否允许加入
-        // ChatRoom类内部的isJoinAllowed方法
-        public boolean isJoinAllowed() {
-            return members.size() < 4; // 假设房间最多允许4名成员
-        }
+    // 加入或重连时的完整名单，带上名单版本号，之后的成员变化只发增量
+    private OutgoingMessage createJoinSuccessResponse(ChatRoom chatRoom , WebSocket conn) {
+        JSONObject response = new JSONObject();
+        response.put("status", "JinSuccess");
+        int index = chatRoom.getMemberIndex(conn);
+        response.put("Index", index);
+        int version = chatRoom.getRosterVersion();
+        response.put("version", version);
+        response.put("roomMembers", chatRoom.getMemberInfo());
+        int roomId = chatRoom.getRoomId();
+        List<Member> members = List.copyOf(chatRoom.getMembers());
+        return OutgoingMessage.of(response, () -> BinaryProtocol.encodeJoinSuccess(roomId, index, version, members)).critical();
+    }
 
-        public void addMember(WebSocket conn, String playId, String nickName) {
-            Member member = new Member(conn, playId, nickName);
-            members.add(member);
+    // 客户端发现名单版本不连续时取回完整名单，在房间分片上回复，与增量的顺序一致
+    private void handleRosterRequest(WebSocket conn) {
+        ChatRoom chatRoom = getChatRoomByWebSocket(conn);
+        if (chatRoom == null) {
+            return;
         }
-
-        public void removeMember(WebSocket conn) {
-            Iterator<Member> iterator = members.iterator();
-            while (iterator.hasNext()) {
-                Member member = iterator.next();
-                if (member.getWebSocket() == conn) {
-                    iterator.remove();
-                    break;
-                }
+        roomExecutor.execute(chatRoom.getRoomId(), () -> {
+            if (chatRoom.isClosed() || chatRoom.getMemberByWebSocket(conn) == null) {
+                return;
             }
-        }
+            JSONObject response = new JSONObject();
+            response.put("status", "Roster");
+            response.put("roomId", Integer.toString(chatRoom.getRoomId()));
+            int version = chatRoom.getRosterVersion();
+            response.put("version", version);
+            response.put("roomMembers", chatRoom.getMemberInfo());
+            int roomId = chatRoom.getRoomId();
+            List<Member> members = List.copyOf(chatRoom.getMembers());
+            OutgoingMessage.of(response, () -> BinaryProtocol.encodeRoster(roomId, version, members)).critical().sendTo(conn);
+        });
+    }
 
-        public List<Member> getMembers() {
-            return members;
-        }
+    // 名单增量：每次加入或离开版本号加一，客户端按座位号更新本地名单；
+    // 增量在出站队列满时可能被丢弃，客户端看到版本号不连续时发送Roster取回完整名单
+    private OutgoingMessage createMemberLeftMessage(ChatRoom chatRoom, int seat, String playId) {
+        JSONObject message = new JSONObject();
+        message.put("status", "MemberLeft");
+        int version = chatRoom.getRosterVersion();
+        message.put("version", version);
+        message.put("seat", seat);
+        message.put("playId", playId);
+        return OutgoingMessage.of(message, () -> BinaryProtocol.encodeMemberLeft(version, seat));
+    }
 
-        public int getMemberIndex(WebSocket conn) {
-            for (int i = 0; i < members.size(); i++) {
-                if (members.get(i).getWebSocket() == conn) {
-                    return i;
-                }
-            }
-            return -1;
-        }
+    // 房主总是0号座位，房主离开后由下一位成员接任；版本号与引起变化的MemberLeft相同
+    private OutgoingMessage createHostChangedMessage(ChatRoom chatRoom) {
+        JSONObject message = new JSONObject();
+        message.put("status", "HostChanged");
+        int version = chatRoom.getRosterVersion();
+        message.put("version", version);
+        String hostId = chatRoom.getHostId();
+        message.put("playId", hostId);
+        return OutgoingMessage.of(message, () -> BinaryProtocol.encodeHostChanged(version, hostId));
+    }
 
-        public JSONArray getMemberInfo() {
-            JSONArray memberInfo = new JSONArray();
-            for (Member member : members) {
-                JSONObject info = new JSONObject();
-                info.put("playId", member.getPlayId());
-                info.put("nickName", member.getNickName());
-                memberInfo.put(info);
+    // 新成员自己收到JinSuccess，只通知房间内的其他成员
+    void broadcastMemberJoined(ChatRoom chatRoom, Member newMember) {
+        JSONObject message = new JSONObject();
+        message.put("status", "MemberJoined");
+        int version = chatRoom.getRosterVersion();
+        message.put("version", version);
+        int seat = chatRoom.getMembers().indexOf(newMember);
+        message.put("seat", seat);
+        String playId = newMember.getPlayId();
+        String nickName = newMember.getNickName();
+        message.put("playId", playId);
+        message.put("nickName", nickName);
+
+        OutgoingMessage joined = OutgoingMessage.of(message,
+                () -> BinaryProtocol.encodeMemberJoined(version, seat, playId, nickName));
+        for (Member member : chatRoom.getMembers()) {
+            if (member != newMember) {
+                joined.sendTo(member.getWebSocket());
             }
-            return memberInfo;
         }
     }
 
-    private class Member {
-        private WebSocket webSocket;
-        private String playId;
-        private String nickName;
+    //还需要处理发送消息失败、异常处理等情况。
+    private void broadcastToRoomMembers(ChatRoom chatRoom, JSONObject message) {
+        broadcastToRoomMembers(chatRoom, OutgoingMessage.of(message));
+    }
 
-        public Member(WebSocket webSocket, String playId, String nickName) {
-            this.webSocket = webSocket;
-            this.playId = playId;
-            this.nickName = nickName;
+    // 消息只编码一次，所有成员共享同一组帧
+    private void broadcastToRoomMembers(ChatRoom chatRoom, OutgoingMessage message) {
+        for (Member member : chatRoom.getMembers()) {
+            message.sendTo(member.getWebSocket());
         }
+    }
 
-        public WebSocket getWebSocket() {
-            return webSocket;
-        }
+    // 向所有客户端连接广播文本，只编码一次；集群节点之间的链路不在其中
+    public void broadcastToAll(String text) {
+        eventLog.info(EventLog.Event.ADMIN_BROADCAST, null, EventLog.NO_ROOM, text);
+        OutgoingMessage.text(text).sendTo(clientInfo.keySet());
+    }
 
-        public String getPlayId() {
-            return playId;
-        }
 
-        public String getNickName() {
-            return nickName;
-        }
+    ChatRoom getChatRoomById(String roomId) {
+        int targetRoomId = Integer.parseInt(roomId);
+        return chatRooms.get(targetRoomId); // 没有找到对应的房间时返回null
     }
 
+    // 创建房间，分配一个当前未被任何存活房间使用的ID，房间关闭时释放
+    private ChatRoom createChatRoom() {
+        return lifecycle.createRoom();
+    }
 
-    private ChatRoom getChatRoomByWebSocket(WebSocket conn) {
-        for (ChatRoom chatRoom : chatRooms) {
-            if (chatRoom.getMembers().stream().anyMatch(member -> member.getWebSocket() == conn)) {
-                return chatRoom;
-            }
+    // 关闭房间，释放房间和成员的所有登记信息，在房间分片上执行
+    private void removeChatRoom(ChatRoom chatRoom) {
+        ClusterNode current = cluster;
+        if (current == null) {
+            lifecycle.releaseRoom(chatRoom);
+        } else if (lifecycle.releaseRoom(chatRoom, current.isHeldElsewhere(chatRoom.getRoomId()))) {
+            current.roomReleased(chatRoom.getRoomId());
         }
-        return null;
     }
 
-    private ChatRoom getOrCreateChatRoom() {
-        if (chatRooms.isEmpty() || chatRooms.get(chatRooms.size() - 1).getMembers().size() >= 4 || chatRooms.get(chatRooms.size() - 1).isGaming()) {
-            int newRoomId = generateRoomId();
-            ChatRoom newChatRoom = createChatRoom(newRoomId);
-            return newChatRoom;
-        } else {
-            return chatRooms.get(chatRooms.size() - 1);
-        }
+    // 空置超时的房间：通知仍在房间中的成员后关闭，在房间分片上执行
+    private void closeIdleRoom(ChatRoom chatRoom) {
+        JSONObject response = new JSONObject();
+        response.put("status", "RoomClosed");
+        broadcastToRoomMembers(chatRoom, OutgoingMessage.of(response,
+                () -> BinaryProtocol.encodeOpcode(BinaryProtocol.OP_ROOM_CLOSED)).critical());
+        removeChatRoom(chatRoom);
     }
 
+    // 将连接加入房间并更新连接与房间的索引，调用前已经为该成员预留了座位
+    private Member addMemberToRoom(ChatRoom chatRoom, WebSocket conn, String playId, String nickName) {
+        return lifecycle.addMember(chatRoom, conn, playId, nickName);
+    }
 
-    private int generateRoomId() {
-        // Generate a random room ID (you can customize the logic here)
-        Random random = new Random();
-        return random.nextInt(10000);
+    ChatRoom getChatRoomByWebSocket(WebSocket conn) {
+        return lifecycle.getChatRoomByWebSocket(conn);
     }
 
+    // 各结构的存活数量
+    public Map<String, Long> getLiveCounts() {
+        return lifecycle.getLiveCounts();
+    }
 
-    private String generateClientIdentifier() {
-        return "Client" + (clientInfo.size() + 1);
+    public ServerMetricsMXBean getMetrics() {
+        return metrics;
     }
 
+    LifecycleManager getLifecycle() {
+        return lifecycle;
+    }
 
-    private void joinChatRoom(WebSocket conn, List<WebSocket> chatRoom) {
-        chatRoom.add(conn);
+    Matchmaker getMatchmaker() {
+        return matchmaker;
     }
 
-    private void removeClientFromChatRoom(WebSocket conn, List<WebSocket> chatRoom) {
-        chatRoom.remove(conn);
+    OutboundDispatcher getOutboundDispatcher() {
+        return outboundDispatcher;
+    }
 
-        if (chatRoom.isEmpty()) {
-            chatRooms.remove(chatRoom);
-            currentRoomIndex--;
-        }
+    // 单个连接的出站队列，连接未建立会话时返回null
+    OutboundQueue getOutboundQueue(WebSocket conn) {
+        ClientSession session = conn.getAttachment();
+        return session == null ? null : session.getOutbound();
     }
 
-    private void broadcastToChatRoom(WebSocket sender, List<WebSocket> chatRoom, String message) {
-        for (WebSocket client : chatRoom) {
-            if (client != sender) {
-                client.send(message);
-            }
-        }
+
+    // 连接ID在进程内不重复，事件日志和管理接口据此区分连接；按当前连接数编号会在断开后被复用
+    private String generateClientIdentifier() {
+        return "Client" + nextClientId.incrementAndGet();
     }
 
 
+    // 参数：端口 [管理接口端口]，管理接口默认使用端口 + 1，只监听127.0.0.1；POST /stop 停止服务器
     public static void main(String[] args) throws InterruptedException, IOException {
         int port = 8887;
         try {
             port = Integer.parseInt(args[0]);
         } catch (Exception ex) {
         }
+        int adminPort = args.length > 1 ? Integer.parseInt(args[1]) : port + 1;
         MultiChatServer server = new MultiChatServer(port);
+        CountDownLatch stopRequested = new CountDownLatch(1);
         server.start();
-        System.out.println("MultiChatServer started on port: " + server.getPort());
-
-        BufferedReader sysin = new BufferedReader(new InputStreamReader(System.in));
-        while (true) {
-            if (sysin.ready()) {//防止 BufferedReader readLine
-                String in = sysin.readLine();
-                server.broadcast(in);
-                if (in.equals("exit")) {
-                    server.stop(1000);
-                    break;
-                }
-            } else {
-                // 执行其他逻辑，或者可以添加适当的延迟
-                Thread.sleep(100);
-            }
-        }
-        // ...
+        server.startAdmin(adminPort, stopRequested::countDown);
+        System.out.println("MultiChatServer started on port: " + server.getPort() + ", admin on 127.0.0.1:" + adminPort);
+
+        stopRequested.await();
+        server.stop(1000);
     }
 
     //发生错误时调用。 如果错误导致 websocket 连接失败onClose(WebSocket, int, String, boolean)将被额外调用。 此方法将主要因为 IO 或协议错误而被调用
     @Override
     public void onError(WebSocket conn, Exception ex) {
-        ex.printStackTrace();
-        if (conn != null) {
+        // 堆栈在日志线程上展开
+        eventLog.error(EventLog.Event.CONNECTION_ERROR, conn == null ? null : clientInfo.get(conn), ex);
+    }
+
+    // 停止服务器，同时关闭房间分片和后台任务
+    @Override
+    public void stop(int timeout) throws InterruptedException {
+        stopAdmin();
+        super.stop(timeout);
+        shutdownBackground(timeout);
+    }
+
+    // start之前的配置步骤失败时调用：服务器没有启动，只停止已经创建的后台线程（房间分片、时间轮、日志线程等）
+    public void discard() {
+        stopAdmin();
+        try {
+            shutdownBackground(0);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stopAdmin() {
+        AdminServer currentAdmin = admin;
+        if (currentAdmin != null) {
+            currentAdmin.stop();
+            admin = null;
+        }
+    }
+
+    private void shutdownBackground(int timeout) throws InterruptedException {
+        metrics.unregister();
+        roomExecutor.shutdown(timeout);
+        lifecycle.shutdown();
+        outboundDispatcher.shutdown();
+        if (cluster != null) {
+            cluster.shutdown();
+        }
+        if (journal != null) {
+            // 房间分片已停止，剩余记录落盘后关闭；未结束的对局下次启动时恢复
+            journal.close();
         }
+        eventLog.close();
     }
 
     //服务器启动成功的时候执行该操作
 
     @Override
     public void onStart() {
-        System.out.println("Server started!");
-        //用于丢失连接的间隔检查的设置器 值小于或等于 0 会导致检查被停用 单位为s
-        setConnectionLostTimeout(100);
+        eventLog.info(EventLog.Event.SERVER_START, null, EventLog.NO_ROOM, "Listening on port " + getPort());
+        lifecycle.startIdleSweep(this::closeIdleRoom);
+        metrics.register(getPort());
+        if (cluster != null) {
+            cluster.start(clusterSeeds);
+        }
     }
 }
 
@@ -0,0 +1,62 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// 出站调度：为每个连接创建有界队列，并定期刷新有积压的队列
+class OutboundDispatcher {
+    private final int capacity;
+    private final OutboundQueue.OverflowPolicy policy;
+    private final ServerMetrics metrics;
+    private final Queue<OutboundQueue> backlog = new ConcurrentLinkedQueue<>();
+    private final LongAdder deferred = new LongAdder();
+    private final TimingWheel.Timeout flusher;
+
+    public OutboundDispatcher(int capacity, OutboundQueue.OverflowPolicy policy, TimingWheel timers, long flushIntervalMillis, ServerMetrics metrics) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.metrics = metrics;
+        flusher = timers.scheduleRepeating(this::flushBacklog, flushIntervalMillis);
+    }
+
+    public OutboundQueue createQueue(WebSocket conn) {
+        return new OutboundQueue(conn, capacity, policy, metrics);
+    }
+
+    public void send(OutboundQueue queue, OutgoingMessage message) {
+        if (queue.offer(message)) {
+            deferred.increment();
+            backlog.add(queue);
+        }
+    }
+
+    private void flushBacklog() {
+        int count = backlog.size();
+        for (int i = 0; i < count; i++) {
+            OutboundQueue queue = backlog.poll();
+            if (queue == null) {
+                break;
+            }
+            if (queue.flush()) {
+                // 连接仍未跟上，留到下一次
+                backlog.add(queue);
+            }
+        }
+    }
+
+    // 因连接发送缓冲未清空而排队的次数
+    public long getDeferredCount() {
+        return deferred.sum();
+    }
+
+    public int getBacklogSize() {
+        return backlog.size();
+    }
+
+    public void shutdown() {
+        flusher.cancel();
+    }
+}
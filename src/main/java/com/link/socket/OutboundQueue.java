@@ -0,0 +1,163 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.framing.CloseFrame;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+// 单个连接的有界出站队列
+// 连接的发送缓冲未超过水位且队列为空时直接发送，否则排队，由 OutboundDispatcher 在连接跟上后批量发出
+// 队列满时按策略处理：断开连接、丢弃最早的非关键消息，或先合并同类的上线/房间信息再丢弃；关键消息永不丢弃
+class OutboundQueue {
+    // 队列满时的处理策略
+    enum OverflowPolicy {
+        DISCONNECT,
+        DROP_OLDEST,
+        COALESCE
+    }
+
+    private static final int WRITE_HIGH_WATERMARK = 64; // 库内待写出帧数超过该值视为连接跟不上
+
+    private final WebSocket conn;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final ServerMetrics metrics;
+    private final ArrayDeque<OutgoingMessage> pending = new ArrayDeque<>();
+    private boolean scheduled; // 已登记到 dispatcher 等待刷新
+
+    // 统计
+    private long sent;
+    private long dropped;
+    private long coalesced;
+    private int maxDepth;
+
+    OutboundQueue(WebSocket conn, int capacity, OverflowPolicy policy, ServerMetrics metrics) {
+        this.conn = conn;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    // 入队或直接发送；返回true表示需要 dispatcher 稍后刷新
+    boolean offer(OutgoingMessage message) {
+        boolean disconnect = false;
+        synchronized (this) {
+            if (pending.isEmpty() && !isCongested()) {
+                metrics.recordBytesOut(message.writeTo(conn));
+                sent++;
+                return false;
+            }
+            if (policy == OverflowPolicy.COALESCE && message.getCoalesceKey() != null && replaceQueued(message)) {
+                coalesced++;
+                metrics.recordOutboundCoalesced();
+                return false;
+            }
+            if (pending.size() >= capacity) {
+                if (policy == OverflowPolicy.DISCONNECT) {
+                    disconnect = true;
+                } else if (!dropOldestDroppable()) {
+                    // 队列中全是关键消息：新的非关键消息直接丢弃，关键消息允许超出容量，超出两倍时断开
+                    if (!message.isCritical()) {
+                        dropped++;
+                        metrics.recordOutboundDropped();
+                        return false;
+                    }
+                    disconnect = pending.size() >= capacity * 2;
+                }
+            }
+            if (!disconnect) {
+                pending.addLast(message);
+                maxDepth = Math.max(maxDepth, pending.size());
+                if (!scheduled) {
+                    scheduled = true;
+                    return true;
+                }
+                return false;
+            }
+            pending.clear();
+        }
+        conn.close(CloseFrame.TRY_AGAIN_LATER, "Outbound queue overflow");
+        return false;
+    }
+
+    private boolean isCongested() {
+        if (conn instanceof WebSocketImpl) {
+            return ((WebSocketImpl) conn).outQueue.size() >= WRITE_HIGH_WATERMARK;
+        }
+        return conn.hasBufferedData();
+    }
+
+    // 用新消息替换队列中同类的旧消息，保留原来的位置
+    private boolean replaceQueued(OutgoingMessage message) {
+        Iterator<OutgoingMessage> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            OutgoingMessage queued = iterator.next();
+            if (message.getCoalesceKey().equals(queued.getCoalesceKey())) {
+                iterator.remove();
+                pending.addLast(message);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean dropOldestDroppable() {
+        Iterator<OutgoingMessage> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().isCritical()) {
+                iterator.remove();
+                dropped++;
+                metrics.recordOutboundDropped();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 连接的发送缓冲已清空时发出全部排队消息；返回true表示仍有消息等待下一次刷新
+    boolean flush() {
+        synchronized (this) {
+            if (!conn.isOpen()) {
+                pending.clear();
+                scheduled = false;
+                return false;
+            }
+            if (isCongested()) {
+                return true;
+            }
+            OutgoingMessage message;
+            while ((message = pending.pollFirst()) != null) {
+                metrics.recordBytesOut(message.writeTo(conn));
+                sent++;
+            }
+            scheduled = false;
+            return false;
+        }
+    }
+
+    public synchronized int getDepth() {
+        return pending.size();
+    }
+
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    public WebSocket getConn() {
+        return conn;
+    }
+}
@@ -0,0 +1,144 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
+
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+// 只序列化、编码一次的出站消息，房间广播时所有接收者共享同一份编码后的负载
+// 同一条消息可以同时带有JSON文本和二进制协议两种表示，按连接协商的协议选择，两种表示都在第一次需要时才编码
+class OutgoingMessage {
+    private final Supplier<String> textSupplier;
+    private final Supplier<ByteBuffer> binarySupplier;
+    private volatile String text;
+    private volatile ByteBuffer textPayload; // UTF-8编码后的只读负载
+    private volatile ByteBuffer binaryPayload;
+    private boolean critical; // 关键消息，出站队列满时也不丢弃
+    private String coalesceKey; // 同一连接队列中相同key的旧消息可被新消息替换
+
+    private OutgoingMessage(Supplier<String> textSupplier, Supplier<ByteBuffer> binarySupplier) {
+        this.textSupplier = textSupplier;
+        this.binarySupplier = binarySupplier;
+    }
+
+    public static OutgoingMessage text(String text) {
+        return new OutgoingMessage(() -> text, null);
+    }
+
+    public static OutgoingMessage of(JSONObject message) {
+        return new OutgoingMessage(message::toString, null);
+    }
+
+    // 同时提供二进制表示；supplier必须只依赖创建时的快照数据
+    public static OutgoingMessage of(JSONObject message, Supplier<ByteBuffer> binarySupplier) {
+        return new OutgoingMessage(message::toString, binarySupplier);
+    }
+
+    public static OutgoingMessage of(Supplier<String> textSupplier, Supplier<ByteBuffer> binarySupplier) {
+        return new OutgoingMessage(textSupplier, binarySupplier);
+    }
+
+    // 标记为关键消息，需在消息共享给接收者之前调用
+    public OutgoingMessage critical() {
+        this.critical = true;
+        return this;
+    }
+
+    // 设置合并key，需在消息共享给接收者之前调用
+    public OutgoingMessage coalesceAs(String coalesceKey) {
+        this.coalesceKey = coalesceKey;
+        return this;
+    }
+
+    public boolean isCritical() {
+        return critical;
+    }
+
+    public String getCoalesceKey() {
+        return coalesceKey;
+    }
+
+    public String getText() {
+        String result = text;
+        if (result == null) {
+            result = textSupplier.get();
+            text = result;
+        }
+        return result;
+    }
+
+    private ByteBuffer getTextPayload() {
+        ByteBuffer payload = textPayload;
+        if (payload == null) {
+            payload = ByteBuffer.wrap(getText().getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+            textPayload = payload;
+        }
+        return payload;
+    }
+
+    private ByteBuffer getBinaryPayload() {
+        ByteBuffer payload = binaryPayload;
+        if (payload == null) {
+            payload = binarySupplier.get().slice().asReadOnlyBuffer();
+            binaryPayload = payload;
+        }
+        return payload;
+    }
+
+    // 每次写入都新建帧并使用负载的独立视图：Draft_6455编码帧时会移动负载缓冲的position和limit，
+    // 同一条消息可能同时由分片线程和出站刷新线程写给不同的连接，帧对象不能共享
+    DataFrame newFrame(boolean binary) {
+        DataFrame frame = binary ? new BinaryFrame() : new TextFrame();
+        frame.setPayload((binary ? getBinaryPayload() : getTextPayload()).duplicate());
+        return frame;
+    }
+
+    // 发送给单个连接，经过连接的有界出站队列；连接已关闭时直接忽略
+    public void sendTo(WebSocket conn) {
+        if (conn == null || !conn.isOpen()) {
+            return;
+        }
+        ClientSession session = conn.getAttachment();
+        if (session != null) {
+            session.send(this);
+        } else {
+            writeTo(conn);
+        }
+    }
+
+    // 直接写入连接，由出站队列调用；返回写出的负载字节数
+    int writeTo(WebSocket conn) {
+        if (!conn.isOpen()) {
+            return 0;
+        }
+        boolean binary = binarySupplier != null && BinaryProtocol.isBinary(conn);
+        if (conn.getDraft() instanceof Draft_6455) {
+            DataFrame frame = newFrame(binary);
+            int bytes = frame.getPayloadData().remaining();
+            conn.sendFrame(frame);
+            return bytes;
+        }
+        if (binary) {
+            ByteBuffer buffer = getBinaryPayload().duplicate();
+            int bytes = buffer.remaining();
+            conn.send(buffer);
+            return bytes;
+        }
+        String message = getText();
+        conn.send(message);
+        return message.length();
+    }
+
+    public void sendTo(Iterable<WebSocket> conns) {
+        for (WebSocket conn : conns) {
+            sendTo(conn);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// 一条待转发的对局步骤，JSON原文和二进制事件内容都在第一次需要时才生成
+class PlayStep {
+    private final WebSocket sender;
+    private final int seat;
+    private final String playId;
+    private final String raw; // JSON客户端发来的原文
+    private final boolean checked; // 原文已经确认是一个完整的JSON对象
+    private final long receivedNanos = System.nanoTime();
+    private long seq; // 房间内的步骤序号，写入EventRing时在分片线程上分配，0表示未分配
+    private volatile String text;
+    private volatile byte[] event;
+    private volatile OutgoingMessage message;
+
+    private PlayStep(WebSocket sender, int seat, String playId, String text, boolean checked, byte[] event) {
+        this.sender = sender;
+        this.seat = seat;
+        this.playId = playId;
+        this.raw = text;
+        this.checked = checked;
+        this.event = event;
+    }
+
+    // JSON客户端发来的步骤，原文原样转发；第一次生成转发文本时检查原文，格式错误时重新编码
+    public static PlayStep fromText(WebSocket sender, int seat, String message) {
+        return new PlayStep(sender, seat, null, message, false, null);
+    }
+
+    public static PlayStep fromText(WebSocket sender, int seat, String playId, String message) {
+        return new PlayStep(sender, seat, playId, message, false, null);
+    }
+
+    // 调用方已经用JsonFields.isObject检查过原文，或原文由服务器生成
+    public static PlayStep fromCheckedText(WebSocket sender, int seat, String playId, String message) {
+        return new PlayStep(sender, seat, playId, message, true, null);
+    }
+
+    // 二进制客户端发来的步骤
+    public static PlayStep fromBinary(WebSocket sender, int seat, String playId, byte[] event) {
+        return new PlayStep(sender, seat, playId, null, false, event);
+    }
+
+    public WebSocket getSender() {
+        return sender;
+    }
+
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    public int getSeat() {
+        return seat;
+    }
+
+    public String getPlayId() {
+        return playId;
+    }
+
+    public boolean isText() {
+        return raw != null;
+    }
+
+    // JSON客户端发来的原文，二进制步骤为null
+    public String getRaw() {
+        return raw;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    // 必须在第一次发送之前设置
+    void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    // 转发给JSON接收者的文本；分配了序号时去掉客户端自带的seq，在原文开头插入服务器分配的seq，其余内容原样转发。
+    // 结果总是一个完整的JSON对象，合并到MemberPlaySteps或CatchUp中时不会破坏其他步骤：
+    // 格式错误的原文和二进制事件一样放进memberPlayStepEvent重新编码
+    public String getText() {
+        String result = text;
+        if (result == null) {
+            if (raw != null && (checked || JsonFields.isObject(raw))) {
+                result = seq == 0 ? raw : insertSeq(raw, seq);
+            } else {
+                JSONObject broadcastMsg = new JSONObject();
+                broadcastMsg.put("status", "MemberPlayStep");
+                broadcastMsg.put("playId", playId);
+                broadcastMsg.put("memberPlayStepEvent", raw != null ? raw : new String(event, StandardCharsets.UTF_8));
+                if (seq != 0) {
+                    broadcastMsg.put("seq", seq);
+                }
+                result = broadcastMsg.toString();
+            }
+            text = result;
+        }
+        return result;
+    }
+
+    // 客户端自带的seq会和分配的序号成为重复的键，各解析器取值不同，所以先去掉
+    static String insertSeq(String json, long seq) {
+        json = JsonFields.removeField(json, "seq");
+        int open = json.indexOf('{');
+        if (open < 0) {
+            return json;
+        }
+        int next = open + 1;
+        while (next < json.length() && Character.isWhitespace(json.charAt(next))) {
+            next++;
+        }
+        boolean empty = next < json.length() && json.charAt(next) == '}';
+        StringBuilder builder = new StringBuilder(json.length() + 24);
+        builder.append(json, 0, open + 1).append("\"seq\":").append(seq);
+        if (!empty) {
+            builder.append(',');
+        }
+        return builder.append(json, open + 1, json.length()).toString();
+    }
+
+    // 二进制接收者只需要事件内容，取不到时退回整条原文
+    public byte[] getEvent() {
+        byte[] result = event;
+        if (result == null) {
+            String value = JsonFields.readString(raw, "memberPlayStepEvent");
+            result = (value != null ? value : raw).getBytes(StandardCharsets.UTF_8);
+            event = result;
+        }
+        return result;
+    }
+
+    // 单条步骤的MemberPlayStep消息，所有接收者共享
+    public OutgoingMessage toMessage() {
+        OutgoingMessage result = message;
+        if (result == null) {
+            result = OutgoingMessage.of(this::getText, () -> BinaryProtocol.encodeMemberStep(seat, getEvent()));
+            message = result;
+        }
+        return result;
+    }
+
+    // 多条步骤合并为一条MemberPlaySteps消息，steps中按收到的顺序排列
+    public static OutgoingMessage toBatchMessage(List<PlayStep> steps) {
+        return OutgoingMessage.of(() -> encodeBatchText(steps), () -> BinaryProtocol.encodeMemberSteps(steps));
+    }
+
+    // getText保证每条步骤都是一个完整的JSON对象，直接拼接而不重新解析
+    static String encodeBatchText(List<PlayStep> steps) {
+        StringBuilder builder = new StringBuilder(32 + steps.size() * 96);
+        builder.append("{\"status\":\"MemberPlaySteps\",\"steps\":[");
+        for (int i = 0; i < steps.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(steps.get(i).getText());
+        }
+        return builder.append("]}").toString();
+    }
+}
@@ -0,0 +1,83 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 好友上线通知合并器：同一个接收者在一个窗口内收到的多条上线通知合并成一条消息发送
+// 只有一条时仍发送原来的 FriendKeepLine，多条时发送 FriendKeepLineBatch
+class PresenceBatcher {
+    private final long windowMillis;
+    private final Map<WebSocket, PendingPresence> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final TimingWheel timers;
+
+    public PresenceBatcher(TimingWheel timers, long windowMillis) {
+        this.timers = timers;
+        this.windowMillis = windowMillis;
+    }
+
+    // 记录userId上线，通知给接收者recipientId
+    public void offer(WebSocket recipientConn, String recipientId, String userId) {
+        pending.compute(recipientConn, (conn, presence) -> {
+            if (presence == null) {
+                presence = new PendingPresence(recipientId);
+            }
+            presence.userIds.add(userId);
+            return presence;
+        });
+        if (flushScheduled.compareAndSet(false, true)) {
+            timers.schedule(this::flush, windowMillis);
+        }
+    }
+
+    // 接收者断开时丢弃尚未发送的通知
+    public void discard(WebSocket recipientConn) {
+        pending.remove(recipientConn);
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        for (WebSocket conn : pending.keySet()) {
+            PendingPresence presence = pending.remove(conn);
+            if (presence != null) {
+                createMessage(presence).sendTo(conn);
+            }
+        }
+        // flush期间到达的通知已经触发了新的调度，或仍在pending中等待下一次
+        if (!pending.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+            timers.schedule(this::flush, windowMillis);
+        }
+    }
+
+    private OutgoingMessage createMessage(PendingPresence presence) {
+        JSONObject message = new JSONObject();
+        if (presence.userIds.size() == 1) {
+            String userId = presence.userIds.iterator().next();
+            message.put("status", "FriendKeepLine");
+            message.put("userId", userId);
+            message.put("friendId", presence.recipientId);
+            return OutgoingMessage.of(message).coalesceAs("FriendKeepLine:" + userId);
+        }
+        message.put("status", "FriendKeepLineBatch");
+        message.put("userIds", new JSONArray(presence.userIds));
+        message.put("friendId", presence.recipientId);
+        return OutgoingMessage.of(message);
+    }
+
+    private static class PendingPresence {
+        private final String recipientId;
+        private final Set<String> userIds = new LinkedHashSet<>();
+
+        PendingPresence(String recipientId) {
+            this.recipientId = recipientId;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.link.socket;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 每个连接的令牌桶限流：整个连接一个桶，每种status各一个桶，在解析消息体之前检查。
+// 桶按GCRA实现，每个桶只保存一个long（理论到达时间），状态数组在连接建立时分配一次，检查时不分配对象。
+// 同一个连接的消息总在同一个网络线程上处理，状态数组不需要同步
+final class RateLimiter {
+    // 超出限制时的处理方式
+    enum Action {
+        DROP,       // 丢弃消息
+        THROTTLE,   // 丢弃消息，并告诉客户端多久之后可以重试（连续超限只通知一次）
+        DISCONNECT  // 断开连接
+    }
+
+    static final String DEFAULT_CONNECTION_LIMIT = "100/200";
+
+    private static final MessageStatus[] STATUSES = MessageStatus.values();
+    private static final int CONNECTION = STATUSES.length;  // 最后一个槽是整个连接的桶
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long[] intervalNanos = new long[STATUSES.length + 1];  // 每个令牌的间隔，0表示不限制
+    private final long[] toleranceNanos = new long[STATUSES.length + 1];  // 突发容量对应的时间
+    private final Action action;
+
+    private RateLimiter(Action action) {
+        this.action = action;
+    }
+
+    // 每种status的默认限制，格式为 每秒令牌数/突发容量
+    static Map<String, String> defaultStatusLimits() {
+        Map<String, String> limits = new LinkedHashMap<>();
+        limits.put(MessageStatus.LINK.getWireName(), "1/5");
+        limits.put(MessageStatus.INVITE_SHIP.getWireName(), "1/5");
+        limits.put(MessageStatus.ALONG_WH_GAME.getWireName(), "1/5");
+        limits.put(MessageStatus.ID_SEND.getWireName(), "2/5");
+        limits.put(MessageStatus.MEMBER_PLAY_STEP.getWireName(), "30/60");
+        limits.put(MessageStatus.ROSTER.getWireName(), "1/5");
+        return limits;
+    }
+
+    static RateLimiter defaults() {
+        return of(DEFAULT_CONNECTION_LIMIT, defaultStatusLimits(), Action.THROTTLE);
+    }
+
+    static RateLimiter unlimited() {
+        return new RateLimiter(Action.DROP);
+    }
+
+    // statusLimits的键为status的wire名称（不区分大小写），值为 每秒令牌数/突发容量；为空或0表示不限制
+    static RateLimiter of(String connectionLimit, Map<String, String> statusLimits, Action action) {
+        RateLimiter limiter = new RateLimiter(action);
+        limiter.setLimit(CONNECTION, connectionLimit);
+        for (Map.Entry<String, String> entry : statusLimits.entrySet()) {
+            limiter.setLimit(statusOf(entry.getKey()).ordinal(), entry.getValue());
+        }
+        return limiter;
+    }
+
+    private static MessageStatus statusOf(String wireName) {
+        for (MessageStatus status : STATUSES) {
+            if (status != MessageStatus.UNKNOWN && status.getWireName().equalsIgnoreCase(wireName)) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown message status in rate limits: " + wireName);
+    }
+
+    private void setLimit(int slot, String limit) {
+        String trimmed = limit == null ? "" : limit.trim();
+        if (trimmed.isEmpty() || trimmed.equals("0")) {
+            intervalNanos[slot] = 0;
+            toleranceNanos[slot] = 0;
+            return;
+        }
+        int slash = trimmed.indexOf('/');
+        double ratePerSecond;
+        int burst;
+        try {
+            ratePerSecond = Double.parseDouble(slash < 0 ? trimmed : trimmed.substring(0, slash).trim());
+            burst = slash < 0 ? 1 : Integer.parseInt(trimmed.substring(slash + 1).trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Rate limit must be rate/burst: " + limit, ex);
+        }
+        if (!(ratePerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("Rate limit needs a positive rate and burst: " + limit);
+        }
+        long interval = Math.max(1, (long) (NANOS_PER_SECOND / ratePerSecond));
+        intervalNanos[slot] = interval;
+        toleranceNanos[slot] = interval * burst;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    // 新连接的桶状态，所有桶都是满的
+    public long[] newState() {
+        long[] state = new long[STATUSES.length + 1];
+        Arrays.fill(state, System.nanoTime());
+        return state;
+    }
+
+    // 连接桶和status桶都有令牌时各取一个并返回0；否则都不取，返回至少还要等待的纳秒数
+    public long acquire(long[] state, MessageStatus status, long nowNanos) {
+        int slot = status.ordinal();
+        long wait = Math.max(waitNanos(state, CONNECTION, nowNanos), waitNanos(state, slot, nowNanos));
+        if (wait > 0) {
+            return wait;
+        }
+        take(state, CONNECTION, nowNanos);
+        take(state, slot, nowNanos);
+        return 0;
+    }
+
+    private long waitNanos(long[] state, int slot, long nowNanos) {
+        long interval = intervalNanos[slot];
+        if (interval == 0) {
+            return 0;
+        }
+        return later(state[slot], nowNanos) + interval - nowNanos - toleranceNanos[slot];
+    }
+
+    private void take(long[] state, int slot, long nowNanos) {
+        long interval = intervalNanos[slot];
+        if (interval != 0) {
+            state[slot] = later(state[slot], nowNanos) + interval;
+        }
+    }
+
+    // nanoTime可能为负数，按差值比较
+    private static long later(long a, long b) {
+        return a - b > 0 ? a : b;
+    }
+}
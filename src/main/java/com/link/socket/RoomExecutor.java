@@ -0,0 +1,93 @@
+package com.link.socket;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// 按房间分片的执行器：同一房间的事件总是在同一个单线程分片上按顺序执行
+// 房间之间没有共享锁，分片数量决定可以并行处理房间事件的核数
+// 延迟任务由服务器共用的时间轮计时，到期后再提交到房间分片
+class RoomExecutor {
+    static final long TIMER_TICK_MILLIS = 1;
+
+    private final ThreadPoolExecutor[] shards;
+    private final TimingWheel timers = new TimingWheel("timing-wheel", TIMER_TICK_MILLIS);
+    private volatile EventLog eventLog;  // 任务异常记录到这里，未设置时交给线程的默认异常处理
+
+    public RoomExecutor(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        }
+        shards = new ThreadPoolExecutor[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String threadName = "room-shard-" + i;
+            shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(task, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // 服务器创建事件日志后设置，时间轮上的任务异常也记录到这里
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+        timers.setEventLog(eventLog);
+    }
+
+    // 服务器共用的时间轮
+    public TimingWheel getTimers() {
+        return timers;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public int shardOf(int roomId) {
+        return Math.floorMod(roomId, shards.length);
+    }
+
+    // 在房间所属分片上执行任务，任务异常不会终止分片线程；执行器关闭后提交的任务被丢弃
+    public void execute(int roomId, Runnable task) {
+        try {
+            shards[shardOf(roomId)].execute(guarded(roomId, task));
+        } catch (RejectedExecutionException ex) {
+            // 服务器正在停止
+        }
+    }
+
+    // 延迟后在房间所属分片上执行任务，与该房间的其他事件保持串行
+    public void schedule(int roomId, Runnable task, long delayMillis) {
+        timers.schedule(() -> execute(roomId, task), delayMillis);
+    }
+
+    private Runnable guarded(int roomId, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                EventLog log = eventLog;
+                if (log != null) {
+                    log.log(EventLog.Level.ERROR, EventLog.Event.ROOM_TASK_FAILED, null, roomId, null, null, ex);
+                } else {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+                }
+            }
+        };
+    }
+
+    // 停止时不再执行尚未到期的延迟任务
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        timers.shutdown();
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (ThreadPoolExecutor shard : shards) {
+            shard.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+}
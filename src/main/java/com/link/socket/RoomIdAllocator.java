@@ -0,0 +1,132 @@
+package com.link.socket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 房间ID分配器：用位图记录正在使用的ID，保证存活房间的ID唯一
+// 每个线程从共享游标领取一个64位的字，之后在自己的字里按位向前分配并用CAS占位，用完再领下一个字，
+// 共享游标每64次分配才移动一次，并发分配的线程各自落在不同的字上，不会争用同一个缓存行；释放时清除对应位。
+// 游标只向前移动，刚释放的ID要等游标绕回才会被复用，避免旧客户端用过期roomId进入新房间
+// ID 0 保留不用（二进制协议中表示未指定房间）
+class RoomIdAllocator {
+    private final AtomicLongArray words;
+    private final int capacity;
+    private final AtomicLong nextWord = new AtomicLong(); // 下一个要领取的字，取模后得到位图中的位置
+    // 每个线程当前领取的字：{下一个查找的位置, 字的结束位置}，按位计数
+    private final ThreadLocal<int[]> threadCursor = ThreadLocal.withInitial(() -> new int[2]);
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    // capacity 为可分配ID的上限（不含），有效ID范围 [1, capacity)
+    public RoomIdAllocator(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2: " + capacity);
+        }
+        this.capacity = capacity;
+        this.words = new AtomicLongArray((capacity + 63) >>> 6);
+        // 占用ID 0 和超出容量的尾部位
+        words.set(0, 1L);
+        int tailBits = capacity & 63;
+        if (tailBits != 0) {
+            int last = words.length() - 1;
+            words.set(last, words.get(last) | (-1L << tailBits));
+        }
+    }
+
+    public int allocate() {
+        int wordCount = words.length();
+        int[] local = threadCursor.get();
+        // 连续领取到wordCount个没有空位的字后，说明位图基本已满，退回完整扫描
+        for (int misses = 0; misses <= wordCount; ) {
+            if (local[0] < local[1]) {
+                int roomId = allocateInWord(local[0] >>> 6, -1L << (local[0] & 63));
+                if (roomId >= 0) {
+                    local[0] = roomId + 1;
+                    return roomId;
+                }
+                local[0] = local[1];
+                misses++;
+            }
+            int index = (int) Math.floorMod(nextWord.getAndIncrement(), (long) wordCount);
+            local[0] = index << 6;
+            local[1] = local[0] + 64;
+        }
+        for (int index = 0; index < wordCount; index++) {
+            int roomId = allocateInWord(index, -1L);
+            if (roomId >= 0) {
+                local[0] = roomId + 1;
+                local[1] = (index << 6) + 64;
+                return roomId;
+            }
+        }
+        throw new IllegalStateException("No free room id, capacity " + capacity);
+    }
+
+    // 在字中window范围内占用最低的空位，没有空位时返回-1
+    private int allocateInWord(int index, long window) {
+        while (true) {
+            long word = words.get(index);
+            long free = ~word & window;
+            if (free == 0) {
+                return -1;
+            }
+            long freeBit = Long.lowestOneBit(free);
+            if (words.compareAndSet(index, word, word | freeBit)) {
+                allocated.incrementAndGet();
+                return (index << 6) + Long.numberOfTrailingZeros(freeBit);
+            }
+        }
+    }
+
+    // 占用指定的ID，用于从日志恢复房间；已被占用或超出范围时返回false
+    public boolean reserve(int roomId) {
+        if (roomId <= 0 || roomId >= capacity) {
+            return false;
+        }
+        int index = roomId >>> 6;
+        long bit = 1L << (roomId & 63);
+        while (true) {
+            long word = words.get(index);
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(index, word, word | bit)) {
+                allocated.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    public void release(int roomId) {
+        if (roomId <= 0 || roomId >= capacity) {
+            throw new IllegalArgumentException("Room id out of range: " + roomId);
+        }
+        int index = roomId >>> 6;
+        long bit = 1L << (roomId & 63);
+        while (true) {
+            long word = words.get(index);
+            if ((word & bit) == 0) {
+                return; // 已经释放
+            }
+            if (words.compareAndSet(index, word, word & ~bit)) {
+                allocated.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    public boolean isAllocated(int roomId) {
+        if (roomId <= 0 || roomId >= capacity) {
+            return false;
+        }
+        return (words.get(roomId >>> 6) & (1L << (roomId & 63))) != 0;
+    }
+
+    public int getAllocatedCount() {
+        return allocated.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,394 @@
+package com.link.socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+// 对局日志：开局、转发的步骤、成员离开和房间关闭追加写入内存映射的分段文件，重启后据此重建进行中的对局。
+// 分片线程只把编码好的记录放入队列，由单独的写线程批量写入并每批force一次（组提交），转发路径不等待落盘。
+// 记录格式：[int 长度][int CRC32][类型][varint 房间ID][字段...]，长度为0表示分段结束；
+// 一个分段里的对局都已结束（房间关闭或成员全部离开）且分段已写满时删除该分段
+class RoomJournal {
+    static final byte GAME_STARTED = 1;  // [varint 人数]{[playId][nickName]}
+    static final byte STEP = 2;          // [座位][是否二进制][playId][varint 长度][内容]
+    static final byte MEMBER_LEFT = 3;   // [playId]
+    static final byte ROOM_CLOSED = 4;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final EventLog eventLog;
+    private final Queue<ByteBuffer> pending = new ConcurrentLinkedQueue<>();
+    private final LongAdder appended = new LongAdder();
+    private volatile long committed;
+    private final List<RecoveredRoom> recoveredRooms;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "room-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 以下只在写线程上访问（打开时在调用线程上初始化）
+    private final CRC32 crc = new CRC32();
+    private final TreeMap<Long, Set<Long>> segmentGames = new TreeMap<>(); // 分段 -> 有记录的对局
+    private final Map<Integer, Long> roomGames = new HashMap<>(); // 房间 -> 进行中的对局
+    private final Set<Long> liveGames = new HashSet<>();
+    private long nextGameId;
+    private long segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int forcedPosition;
+
+    private RoomJournal(Path directory, int segmentBytes, EventLog eventLog) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.eventLog = eventLog;
+        this.recoveredRooms = new ArrayList<>();
+    }
+
+    // 打开日志目录：重放已有分段得到进行中的对局，删除已结束对局的分段，然后在新分段上继续追加；写入失败记录到eventLog
+    public static RoomJournal open(Path directory, int segmentBytes, long commitIntervalMillis, EventLog eventLog) throws IOException {
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("segmentBytes must be at least 4096: " + segmentBytes);
+        }
+        Files.createDirectories(directory);
+        RoomJournal journal = new RoomJournal(directory, segmentBytes, eventLog);
+        journal.replay();
+        journal.compact();
+        journal.openSegment(journal.segmentIndex + 1);
+        journal.writer.scheduleWithFixedDelay(journal::commit, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+        return journal;
+    }
+
+    // 重放得到的进行中对局，按开局顺序排列
+    public List<RecoveredRoom> getRecoveredRooms() {
+        return recoveredRooms;
+    }
+
+    // ---- 追加，可在任意线程上调用 ----
+
+    public void gameStarted(int roomId, List<Member> members) {
+        BinaryProtocol.Writer writer = newRecord(GAME_STARTED, roomId, 16 + members.size() * 24);
+        writer.writeVarInt(members.size());
+        for (Member member : members) {
+            writer.writeString(member.getPlayId());
+            writer.writeString(member.getNickName());
+        }
+        append(writer);
+    }
+
+    public void stepRelayed(int roomId, PlayStep step) {
+        boolean binary = !step.isText();
+        byte[] payload = binary ? step.getEvent() : step.getRaw().getBytes(StandardCharsets.UTF_8);
+        String playId = step.getPlayId();
+        BinaryProtocol.Writer writer = newRecord(STEP, roomId, 32 + payload.length);
+        writer.writeByte(step.getSeat());
+        writer.writeByte(binary ? 1 : 0);
+        writer.writeString(playId == null ? "" : playId);
+        writer.writeVarInt(payload.length);
+        writer.writeBytes(payload, 0, payload.length);
+        append(writer);
+    }
+
+    public void memberLeft(int roomId, String playId) {
+        BinaryProtocol.Writer writer = newRecord(MEMBER_LEFT, roomId, 16 + playId.length());
+        writer.writeString(playId);
+        append(writer);
+    }
+
+    public void roomClosed(int roomId) {
+        append(newRecord(ROOM_CLOSED, roomId, 8));
+    }
+
+    private static BinaryProtocol.Writer newRecord(byte type, int roomId, int capacity) {
+        BinaryProtocol.Writer writer = new BinaryProtocol.Writer(capacity);
+        writer.writeByte(type);
+        writer.writeVarInt(roomId);
+        return writer;
+    }
+
+    private void append(BinaryProtocol.Writer writer) {
+        pending.add(writer.toByteBuffer());
+        appended.increment();
+    }
+
+    // 已追加但还没有落盘的记录数
+    public long getBacklog() {
+        return appended.sum() - committed;
+    }
+
+    public long getCommittedCount() {
+        return committed;
+    }
+
+    // 在调用线程上立即写入队列中的记录并落盘，不等下一次定期提交
+    public void flush() {
+        commit();
+    }
+
+    // 停止写线程，写入剩余记录后关闭
+    public void close() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        commit();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            eventLog.warn(EventLog.Event.JOURNAL_CLOSE_FAILED, null, "Segment " + segmentIndex, ex);
+        }
+    }
+
+    // ---- 写线程 ----
+
+    // 组提交：把队列中的记录全部写入后只force一次
+    private synchronized void commit() {
+        long count = 0;
+        boolean closedGame = false;
+        try {
+            ByteBuffer record;
+            while ((record = pending.poll()) != null) {
+                if (write(record)) {
+                    closedGame |= record.get(0) == ROOM_CLOSED;
+                }
+                count++;
+            }
+            if (count > 0) {
+                force();
+            }
+            if (closedGame) {
+                compact();
+            }
+        } catch (IOException ex) {
+            eventLog.log(EventLog.Level.ERROR, EventLog.Event.JOURNAL_WRITE_FAILED, null, EventLog.NO_ROOM, null,
+                    "Segment " + segmentIndex, ex);
+        } finally {
+            committed += count;
+        }
+    }
+
+    private boolean write(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (HEADER_BYTES + length > segmentBytes - 4) {
+            eventLog.log(EventLog.Level.WARN, EventLog.Event.JOURNAL_RECORD_DROPPED, null, EventLog.NO_ROOM, null,
+                    "Record of " + length + " bytes does not fit in a segment", null);
+            return false;
+        }
+        if (segment.remaining() < HEADER_BYTES + length + 4) {
+            force();
+            openSegment(segmentIndex + 1);
+        }
+        crc.reset();
+        crc.update(record.duplicate());
+        segment.putInt(length);
+        segment.putInt((int) crc.getValue());
+        segment.put(record.duplicate());
+        track(record.duplicate());
+        return true;
+    }
+
+    private void force() {
+        int position = segment.position();
+        if (position > forcedPosition) {
+            segment.force(forcedPosition, position - forcedPosition);
+            forcedPosition = position;
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        segmentIndex = index;
+        channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        forcedPosition = 0;
+        segmentGames.put(index, new HashSet<>());
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+    }
+
+    // 记录属于哪一局，用于判断分段何时可以删除
+    private void track(ByteBuffer body) {
+        byte type = body.get();
+        int roomId = BinaryProtocol.readVarInt(body);
+        Long gameId;
+        if (type == GAME_STARTED) {
+            gameId = nextGameId++;
+            roomGames.put(roomId, gameId);
+            liveGames.add(gameId);
+        } else {
+            gameId = roomGames.get(roomId);
+        }
+        if (gameId == null) {
+            // 开局没有记录的房间，不影响分段回收
+            return;
+        }
+        segmentGames.get(segmentIndex).add(gameId);
+        if (type == ROOM_CLOSED) {
+            roomGames.remove(roomId);
+            liveGames.remove(gameId);
+        }
+    }
+
+    // 删除已写满且其中对局都已结束的分段
+    private void compact() {
+        Iterator<Map.Entry<Long, Set<Long>>> iterator = segmentGames.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Set<Long>> entry = iterator.next();
+            if (channel != null && entry.getKey() == segmentIndex) {
+                break;
+            }
+            entry.getValue().retainAll(liveGames);
+            if (entry.getValue().isEmpty()) {
+                try {
+                    Files.deleteIfExists(segmentPath(entry.getKey()));
+                    iterator.remove();
+                } catch (IOException ex) {
+                    eventLog.warn(EventLog.Event.JOURNAL_COMPACT_FAILED, null, "Segment " + entry.getKey(), ex);
+                }
+            }
+        }
+    }
+
+    // ---- 重放 ----
+
+    private void replay() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        Collections.sort(segments);
+
+        Map<Integer, RecoveredRoom> rooms = new LinkedHashMap<>();
+        for (Path path : segments) {
+            String name = path.getFileName().toString();
+            segmentIndex = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            segmentGames.put(segmentIndex, new HashSet<>());
+            try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                replaySegment(readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size()), rooms);
+            }
+        }
+        for (RecoveredRoom room : rooms.values()) {
+            if (room.remainingMembers > 0) {
+                recoveredRooms.add(room);
+            } else {
+                // 成员都已离开但没来得及记录房间关闭
+                liveGames.remove(roomGames.remove(room.roomId));
+            }
+        }
+    }
+
+    // 遇到长度为0、越界或校验失败时停止，崩溃时写了一半的记录被丢弃
+    private void replaySegment(ByteBuffer buffer, Map<Integer, RecoveredRoom> rooms) {
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                return;
+            }
+            ByteBuffer body = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return;
+            }
+            track(body.duplicate());
+            apply(body, rooms);
+        }
+    }
+
+    private static void apply(ByteBuffer body, Map<Integer, RecoveredRoom> rooms) {
+        byte type = body.get();
+        int roomId = BinaryProtocol.readVarInt(body);
+        switch (type) {
+            case GAME_STARTED: {
+                int count = BinaryProtocol.readVarInt(body);
+                RecoveredRoom room = new RecoveredRoom(roomId, count);
+                for (int i = 0; i < count; i++) {
+                    room.playIds[i] = BinaryProtocol.readString(body);
+                    room.nickNames[i] = BinaryProtocol.readString(body);
+                }
+                rooms.put(roomId, room);
+                break;
+            }
+            case STEP: {
+                RecoveredRoom room = rooms.get(roomId);
+                if (room != null) {
+                    int seat = body.get();
+                    boolean binary = body.get() != 0;
+                    String playId = BinaryProtocol.readString(body);
+                    byte[] payload = new byte[BinaryProtocol.readVarInt(body)];
+                    body.get(payload);
+                    room.events.add(new RecoveredEvent(STEP, playId, seat, binary, payload));
+                }
+                break;
+            }
+            case MEMBER_LEFT: {
+                RecoveredRoom room = rooms.get(roomId);
+                if (room != null) {
+                    room.events.add(new RecoveredEvent(MEMBER_LEFT, BinaryProtocol.readString(body), -1, false, null));
+                    room.remainingMembers--;
+                }
+                break;
+            }
+            case ROOM_CLOSED:
+                rooms.remove(roomId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // 重放得到的一局：开局时的成员顺序，以及之后按顺序发生的步骤和离开
+    static final class RecoveredRoom {
+        final int roomId;
+        final String[] playIds;
+        final String[] nickNames;
+        final List<RecoveredEvent> events = new ArrayList<>();
+        private int remainingMembers;
+
+        RecoveredRoom(int roomId, int memberCount) {
+            this.roomId = roomId;
+            this.playIds = new String[memberCount];
+            this.nickNames = new String[memberCount];
+            this.remainingMembers = memberCount;
+        }
+    }
+
+    static final class RecoveredEvent {
+        final byte type;
+        final String playId;
+        final int seat;
+        final boolean binary;
+        final byte[] payload;
+
+        RecoveredEvent(byte type, String playId, int seat, boolean binary, byte[] payload) {
+            this.type = type;
+            this.playId = playId;
+            this.seat = seat;
+            this.binary = binary;
+            this.payload = payload;
+        }
+    }
+}
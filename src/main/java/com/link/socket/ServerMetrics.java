@@ -0,0 +1,189 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 服务器运行指标。记录方法只对预先分配的 LongAdder 和直方图计数，不分配对象；
+// 连接数和房间数取自 LifecycleManager 的登记和计数，队列深度在读取时现算
+class ServerMetrics implements ServerMetricsMXBean {
+    private static final MessageStatus[] STATUSES = MessageStatus.values();
+
+    private final LifecycleManager lifecycle;
+    private final EventLog eventLog;
+    private final LongAdder[] messageCounts = new LongAdder[STATUSES.length];
+    private final LongAdder[] rateLimited = new LongAdder[STATUSES.length];
+    private final LatencyHistogram[] handlerLatency = new LatencyHistogram[STATUSES.length];
+    private final LatencyHistogram relayFanout = new LatencyHistogram();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder outboundDropped = new LongAdder();
+    private final LongAdder outboundCoalesced = new LongAdder();
+    private final LongAdder rateLimitDisconnects = new LongAdder();
+    private ObjectName objectName;
+
+    public ServerMetrics(LifecycleManager lifecycle, EventLog eventLog) {
+        this.lifecycle = lifecycle;
+        this.eventLog = eventLog;
+        for (int i = 0; i < STATUSES.length; i++) {
+            messageCounts[i] = new LongAdder();
+            rateLimited[i] = new LongAdder();
+            handlerLatency[i] = new LatencyHistogram();
+        }
+    }
+
+    public void recordMessage(MessageStatus status, int bytes, long handlerNanos) {
+        int index = status.ordinal();
+        messageCounts[index].increment();
+        handlerLatency[index].record(TimeUnit.NANOSECONDS.toMicros(handlerNanos));
+        bytesIn.add(bytes);
+    }
+
+    public void recordRelayFanout(long nanos) {
+        relayFanout.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordBytesOut(int bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public void recordOutboundDropped() {
+        outboundDropped.increment();
+    }
+
+    public void recordOutboundCoalesced() {
+        outboundCoalesced.increment();
+    }
+
+    public void recordRateLimited(MessageStatus status) {
+        rateLimited[status.ordinal()].increment();
+    }
+
+    public void recordRateLimitDisconnect() {
+        rateLimitDisconnects.increment();
+    }
+
+    // 注册到平台MBeanServer，同一进程内多个服务器按端口区分
+    public void register(int port) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.link.socket:type=ServerMetrics,port=" + port);
+            mBeanServer.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException ex) {
+            eventLog.warn(EventLog.Event.METRICS_REGISTER_FAILED, null, "Failed to register server metrics", ex);
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            // 已经注销
+        }
+        objectName = null;
+    }
+
+    @Override
+    public Map<String, Long> getMessageCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (MessageStatus status : STATUSES) {
+            counts.put(nameOf(status), messageCounts[status.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRateLimitedCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (MessageStatus status : STATUSES) {
+            counts.put(nameOf(status), rateLimited[status.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getRateLimitDisconnects() {
+        return rateLimitDisconnects.sum();
+    }
+
+    @Override
+    public Map<String, Latency> getHandlerLatency() {
+        Map<String, Latency> latencies = new LinkedHashMap<>();
+        for (MessageStatus status : STATUSES) {
+            latencies.put(nameOf(status), handlerLatency[status.ordinal()].snapshot());
+        }
+        return latencies;
+    }
+
+    private static String nameOf(MessageStatus status) {
+        return status == MessageStatus.UNKNOWN ? "Unknown" : status.getWireName();
+    }
+
+    @Override
+    public Latency getRelayFanoutLatency() {
+        return relayFanout.snapshot();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getActiveConnections() {
+        return lifecycle.getClientInfo().size();
+    }
+
+    @Override
+    public long getWaitingRooms() {
+        return Math.max(0, lifecycle.getChatRooms().size() - lifecycle.getGamingRoomCount());
+    }
+
+    @Override
+    public long getGamingRooms() {
+        return lifecycle.getGamingRoomCount();
+    }
+
+    @Override
+    public long getOutboundQueueDepth() {
+        long depth = 0;
+        for (WebSocket conn : lifecycle.getClientInfo().keySet()) {
+            ClientSession session = conn.getAttachment();
+            if (session != null) {
+                depth += session.getOutbound().getDepth();
+            }
+        }
+        return depth;
+    }
+
+    @Override
+    public long getOutboundDropped() {
+        return outboundDropped.sum();
+    }
+
+    @Override
+    public long getOutboundCoalesced() {
+        return outboundCoalesced.sum();
+    }
+
+    @Override
+    public long getEventLogDropped() {
+        return eventLog.getDropped();
+    }
+}
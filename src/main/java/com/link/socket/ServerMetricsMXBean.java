@@ -0,0 +1,81 @@
+package com.link.socket;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+
+// 通过JMX暴露的服务器指标，延迟单位均为微秒
+public interface ServerMetricsMXBean {
+
+    // 每种status收到的消息数，二进制消息按对应的status计数
+    Map<String, Long> getMessageCounts();
+
+    // 每种status因超出限流被拒绝的消息数，不计入getMessageCounts
+    Map<String, Long> getRateLimitedCounts();
+
+    // 因超出限流被断开的连接数
+    long getRateLimitDisconnects();
+
+    // 每种status在网络线程上的处理耗时，不含之后在房间分片上执行的部分
+    Map<String, Latency> getHandlerLatency();
+
+    // 从收到步骤到写给房间内所有其他成员的耗时，开启tick时包含等待tick的时间
+    Latency getRelayFanoutLatency();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getActiveConnections();
+
+    long getWaitingRooms();
+
+    long getGamingRooms();
+
+    // 所有连接出站队列中积压的消息数
+    long getOutboundQueueDepth();
+
+    long getOutboundDropped();
+
+    long getOutboundCoalesced();
+
+    // 事件日志缓冲已满而丢弃的事件数
+    long getEventLogDropped();
+
+    // 延迟直方图的快照
+    final class Latency {
+        private final long count;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final long p999Micros;
+        private final long maxMicros;
+
+        @ConstructorProperties({"count", "p50Micros", "p99Micros", "p999Micros", "maxMicros"})
+        public Latency(long count, long p50Micros, long p99Micros, long p999Micros, long maxMicros) {
+            this.count = count;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.p999Micros = p999Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getP999Micros() {
+            return p999Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+}
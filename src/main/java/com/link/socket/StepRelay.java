@@ -0,0 +1,130 @@
+package com.link.socket;
+
+import org.java_websocket.WebSocket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 对局步骤转发：tick为0时收到即转发；开启tick后，同一房间一个tick内收到的步骤按顺序合并，
+// 每个接收者只收到一帧MemberPlaySteps（不含自己发出的步骤），tick内只有一条时仍发送MemberPlayStep。
+// 每条步骤转发前先写入房间的EventRing并分配序号，供断线重连补发
+class StepRelay {
+    public static final int DEFAULT_EVENT_RING_SIZE = 64;
+
+    private final RoomExecutor roomExecutor;
+    private final ServerMetrics metrics;
+    private volatile long tickMillis;
+    private volatile int eventRingSize = DEFAULT_EVENT_RING_SIZE;
+    private volatile RoomJournal journal; // 开启对局日志时记录每条转发的步骤
+
+    public StepRelay(RoomExecutor roomExecutor, ServerMetrics metrics, long tickMillis) {
+        this.roomExecutor = roomExecutor;
+        this.metrics = metrics;
+        setTickMillis(tickMillis);
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public void setTickMillis(long tickMillis) {
+        if (tickMillis < 0) {
+            throw new IllegalArgumentException("tickMillis must not be negative: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+    }
+
+    public int getEventRingSize() {
+        return eventRingSize;
+    }
+
+    // 只影响之后创建的房间
+    public void setEventRingSize(int eventRingSize) {
+        if (eventRingSize <= 0) {
+            throw new IllegalArgumentException("eventRingSize must be positive: " + eventRingSize);
+        }
+        this.eventRingSize = eventRingSize;
+    }
+
+    public void setJournal(RoomJournal journal) {
+        this.journal = journal;
+    }
+
+    // 必须在房间所属分片上调用
+    public void relay(ChatRoom chatRoom, PlayStep step) {
+        chatRoom.getOrCreateEventRing(eventRingSize).append(step);
+        chatRoom.getRelayed().record(step.isText() ? step.getRaw().length() : step.getEvent().length, step.getReceivedNanos());
+        RoomJournal current = journal;
+        if (current != null) {
+            current.stepRelayed(chatRoom.getRoomId(), step);
+        }
+        long tick = tickMillis;
+        if (tick == 0) {
+            sendExceptSender(chatRoom, step);
+            return;
+        }
+        List<PlayStep> pending = chatRoom.getPendingSteps();
+        pending.add(step);
+        if (pending.size() == 1) {
+            roomExecutor.schedule(chatRoom.getRoomId(), () -> flush(chatRoom), tick);
+        }
+    }
+
+    private void flush(ChatRoom chatRoom) {
+        List<PlayStep> steps = chatRoom.drainPendingSteps();
+        if (steps.isEmpty() || chatRoom.isClosed()) {
+            return;
+        }
+        if (steps.size() == 1) {
+            sendExceptSender(chatRoom, steps.get(0));
+            return;
+        }
+
+        OutgoingMessage fullBatch = null; // 本tick内没有发出步骤的接收者共享同一帧
+        for (Member member : chatRoom.getMembers()) {
+            WebSocket conn = member.getWebSocket();
+            if (!hasStepFrom(steps, conn)) {
+                if (fullBatch == null) {
+                    fullBatch = PlayStep.toBatchMessage(steps);
+                }
+                fullBatch.sendTo(conn);
+                continue;
+            }
+            List<PlayStep> others = new ArrayList<>(steps.size());
+            for (PlayStep step : steps) {
+                if (step.getSender() != conn) {
+                    others.add(step);
+                }
+            }
+            if (others.size() == 1) {
+                others.get(0).toMessage().sendTo(conn);
+            } else if (!others.isEmpty()) {
+                PlayStep.toBatchMessage(others).sendTo(conn);
+            }
+        }
+        long now = System.nanoTime();
+        for (PlayStep step : steps) {
+            metrics.recordRelayFanout(now - step.getReceivedNanos());
+        }
+    }
+
+    private static boolean hasStepFrom(List<PlayStep> steps, WebSocket conn) {
+        for (PlayStep step : steps) {
+            if (step.getSender() == conn) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void sendExceptSender(ChatRoom chatRoom, PlayStep step) {
+        OutgoingMessage relay = step.toMessage();
+        for (Member member : chatRoom.getMembers()) {
+            WebSocket memberWebSocket = member.getWebSocket();
+            if (memberWebSocket != step.getSender()) {
+                relay.sendTo(memberWebSocket);
+            }
+        }
+        metrics.recordRelayFanout(System.nanoTime() - step.getReceivedNanos());
+    }
+}
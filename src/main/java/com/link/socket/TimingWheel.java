@@ -0,0 +1,293 @@
+package com.link.socket;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// 分层时间轮：服务器所有的定时任务共用一个线程。每层256个槽，第0层每槽一个tick，
+// 上一层每槽覆盖下一层一整圈，到期前逐层下移；插入和取消都是O(1)，与定时任务数量无关。
+// 任务在时间轮线程上执行，必须很快返回，涉及房间的任务应提交到房间分片上执行
+final class TimingWheel {
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final Bucket[][] wheels = new Bucket[LEVELS][SLOTS];
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final LongAdder pending = new LongAdder();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile EventLog eventLog;  // 任务异常记录到这里，未设置时交给线程的默认异常处理
+    private long currentTick; // 只在时间轮线程上访问
+
+    public TimingWheel(String name, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        for (Bucket[] wheel : wheels) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[slot] = new Bucket();
+            }
+        }
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // delayMillis后执行一次
+    public Timeout schedule(Runnable task, long delayMillis) {
+        return submit(new Timeout(this, task, deadlineTick(delayMillis), 0));
+    }
+
+    // 每隔periodMillis执行一次，直到取消；任务执行时间不影响下一次的到期时间
+    public Timeout scheduleRepeating(Runnable task, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis must be positive: " + periodMillis);
+        }
+        long periodTicks = Math.max(1, TimeUnit.MILLISECONDS.toNanos(periodMillis) / tickNanos);
+        return submit(new Timeout(this, task, deadlineTick(periodMillis), periodTicks));
+    }
+
+    // 任务抛出的异常记录到事件日志
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    // 尚未到期也未取消的定时任务数
+    public long getPendingCount() {
+        return pending.sum();
+    }
+
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Timeout submit(Timeout timeout) {
+        pending.increment();
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    private long deadlineTick(long delayMillis) {
+        long elapsed = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        return (elapsed + tickNanos - 1) / tickNanos;
+    }
+
+    private void run() {
+        while (running) {
+            long wakeNanos = startNanos + (currentTick + 1) * tickNanos;
+            long sleepNanos = wakeNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(sleepNanos);
+                continue;
+            }
+            removeCancelled();
+            placeIncoming();
+            advance();
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void placeIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.state == Timeout.WAITING) {
+                timeout.deadline = Math.max(timeout.deadline, currentTick + 1);
+                place(timeout);
+            }
+        }
+    }
+
+    // 按到期tick与当前tick的距离放到对应层：距离小于256^(level+1)时放在第level层
+    private void place(Timeout timeout) {
+        long delta = Math.min(timeout.deadline - currentTick, MAX_DELTA);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long target = delta == MAX_DELTA ? currentTick + MAX_DELTA : timeout.deadline;
+        wheels[level][(int) (target >>> (SLOT_BITS * level)) & SLOT_MASK].add(timeout);
+    }
+
+    private void advance() {
+        long tick = ++currentTick;
+        // 下层转满一圈时，把上层当前槽的任务按剩余时间重新放置；从高层往低层处理
+        int level = 1;
+        while (level < LEVELS && (tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+            level++;
+        }
+        for (int cascade = level - 1; cascade >= 1; cascade--) {
+            Timeout timeout = wheels[cascade][(int) (tick >>> (SLOT_BITS * cascade)) & SLOT_MASK].clear();
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                timeout.prev = null;
+                if (timeout.state == Timeout.WAITING) {
+                    place(timeout);
+                }
+                timeout = next;
+            }
+        }
+        Timeout timeout = wheels[0][(int) tick & SLOT_MASK].clear();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            timeout.prev = null;
+            if (timeout.deadline > tick) {
+                // 超出最大范围的任务暂放在最远的槽里，到这里时还没到期
+                place(timeout);
+            } else {
+                expire(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void expire(Timeout timeout) {
+        if (timeout.period > 0) {
+            if (timeout.state != Timeout.WAITING) {
+                return;
+            }
+            timeout.deadline = currentTick + timeout.period;
+            place(timeout);
+        } else if (!timeout.transition(Timeout.WAITING, Timeout.EXPIRED)) {
+            return;
+        } else {
+            pending.decrement();
+        }
+        try {
+            timeout.task.run();
+        } catch (RuntimeException ex) {
+            EventLog log = eventLog;
+            if (log != null) {
+                log.error(EventLog.Event.TIMER_TASK_FAILED, null, ex);
+            } else {
+                worker.getUncaughtExceptionHandler().uncaughtException(worker, ex);
+            }
+        }
+    }
+
+    // 一个定时任务，cancel可以在任意线程上调用
+    static final class Timeout {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long period; // 重复任务的间隔tick数，0表示只执行一次
+        private volatile int state;
+        // 以下只在时间轮线程上访问
+        private long deadline;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        // 不交给时间轮、永远不会执行的占位，和定时任务放在同一个表里表示没有期限；cancel返回false
+        static Timeout never() {
+            Timeout timeout = new Timeout(null, () -> { }, Long.MAX_VALUE, 0);
+            timeout.state = CANCELLED;
+            return timeout;
+        }
+
+        private Timeout(TimingWheel wheel, Runnable task, long deadline, long period) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        // 返回是否取消成功，已经执行过的一次性任务返回false
+        public boolean cancel() {
+            if (!transition(WAITING, CANCELLED)) {
+                return false;
+            }
+            wheel.pending.decrement();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        // 一次性任务已经到期（正在执行或执行过）
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        private boolean transition(int expected, int update) {
+            return STATE.compareAndSet(this, expected, update);
+        }
+    }
+
+    // 槽内的双向链表，取消时直接摘除
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        // 取出整条链表，链表中的任务不再属于任何槽
+        Timeout clear() {
+            Timeout first = head;
+            for (Timeout timeout = first; timeout != null; timeout = timeout.next) {
+                timeout.bucket = null;
+            }
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.link.socket;
+
+import java.util.concurrent.TimeUnit;
+
+// 单写者的流量计数：累计消息数和字节数，以及最近一个完整秒内的速率。
+// 只能在一个线程上记录（连接的网络线程或房间的分片线程），其他线程读取到的是近似值
+final class TrafficMeter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile long messages;
+    private volatile long bytes;
+    private volatile long second;  // 当前窗口所在的秒
+    private volatile long secondMessages;  // 当前秒内的计数
+    private volatile long secondBytes;
+    private volatile long lastSecondMessages;  // 上一秒的计数
+    private volatile long lastSecondBytes;
+
+    TrafficMeter() {
+        second = Math.floorDiv(System.nanoTime(), NANOS_PER_SECOND);
+    }
+
+    public void record(int messageBytes, long nowNanos) {
+        long now = Math.floorDiv(nowNanos, NANOS_PER_SECOND);
+        if (now != second) {
+            boolean adjacent = now == second + 1;
+            lastSecondMessages = adjacent ? secondMessages : 0;
+            lastSecondBytes = adjacent ? secondBytes : 0;
+            secondMessages = 0;
+            secondBytes = 0;
+            second = now;
+        }
+        secondMessages++;
+        secondBytes += messageBytes;
+        messages++;
+        bytes += messageBytes;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    // 上一个完整秒内的消息数，之后没有再记录时按0计
+    public long getMessagesPerSecond(long nowNanos) {
+        long lag = Math.floorDiv(nowNanos, NANOS_PER_SECOND) - second;
+        return lag == 0 ? lastSecondMessages : lag == 1 ? secondMessages : 0;
+    }
+
+    public long getBytesPerSecond(long nowNanos) {
+        long lag = Math.floorDiv(nowNanos, NANOS_PER_SECOND) - second;
+        return lag == 0 ? lastSecondBytes : lag == 1 ? secondBytes : 0;
+    }
+}
@@ -3,7 +3,7 @@ package com.link.MonopolyOnPaper;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {"game.server.port=0", "game.server.admin-port=0"})
 class MonopolyOnPaperApplicationTests {
 
 	@Test
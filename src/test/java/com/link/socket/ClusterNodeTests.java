@@ -0,0 +1,183 @@
+package com.link.socket;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterNodeTests {
+    private static final String SECRET = "test-secret";
+
+    private final List<MultiChatServer> servers = new ArrayList<>();
+
+    @AfterEach
+    void stopServers() throws InterruptedException {
+        for (MultiChatServer server : servers) {
+            server.stop(200);
+        }
+    }
+
+    @Test
+    void refusesToStartWithoutSecret() {
+        assertThrows(IllegalArgumentException.class, () -> new ClusterNode("a", "ws://127.0.0.1:1", "", null, null));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterNode("a", "ws://127.0.0.1:1", "  ", null, null));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterNode("a", "ws://127.0.0.1:1", null, null, null));
+    }
+
+    @Test
+    void roomsAreOwnedByOneNodeAndRedirectedThere() throws Exception {
+        MultiChatServer a = newNode("a", freePort(), List.of());
+        MultiChatServer b = newNode("b", freePort(), List.of(urlOf(a)));
+        startLinked(a, b);
+
+        int remoteRoom = -1;
+        for (int roomId = 1; roomId < 200; roomId++) {
+            assertEquals(a.getCluster().getRing().ownerOf(roomId), b.getCluster().getRing().ownerOf(roomId));
+            assertNotEquals(a.getCluster().ownsRoomId(roomId), b.getCluster().ownsRoomId(roomId));
+            if (remoteRoom < 0 && b.getCluster().ownsRoomId(roomId)) {
+                remoteRoom = roomId;
+            }
+        }
+        assertEquals(urlOf(b), a.getCluster().routeRoom(remoteRoom));
+        assertNull(b.getCluster().routeRoom(remoteRoom));
+
+        // 连到不负责该房间的节点时，客户端被重定向到负责的节点
+        TestClient client = new TestClient(a.getPort());
+        assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+        client.send("{\"status\":\"IdSend\",\"playId\":\"p1\",\"nickName\":\"n1\",\"roomId\":\"" + remoteRoom + "\"}");
+        JSONObject redirect = client.next("Redirect");
+        assertEquals(Integer.toString(remoteRoom), redirect.getString("roomId"));
+        assertEquals(urlOf(b), redirect.getString("url"));
+        client.closeBlocking();
+    }
+
+    @Test
+    void lowerNodeIdWinsARoomIdUsedOnBothNodes() throws Exception {
+        MultiChatServer a = newNode("a", freePort(), List.of());
+        MultiChatServer b = newNode("b", freePort(), List.of(urlOf(a)));
+        // 两个节点各自用同一批ID建了房间：一个ID按哈希环归a，一个归b
+        HashRing ring = new HashRing(List.of("a", "b"));
+        int ownedByA = -1;
+        int ownedByB = -1;
+        for (int roomId = 1; ownedByA < 0 || ownedByB < 0; roomId++) {
+            if ("a".equals(ring.ownerOf(roomId))) {
+                ownedByA = ownedByA < 0 ? roomId : ownedByA;
+            } else {
+                ownedByB = ownedByB < 0 ? roomId : ownedByB;
+            }
+        }
+        for (int roomId : new int[]{ownedByA, ownedByB}) {
+            a.getLifecycle().restoreRoom(roomId);
+            b.getLifecycle().restoreRoom(roomId);
+        }
+        startLinked(a, b);
+
+        int[] contested = {ownedByA, ownedByB};
+        await(() -> b.getLifecycle().getChatRooms().isEmpty());
+        for (int roomId : contested) {
+            assertTrue(a.getLifecycle().getChatRooms().containsKey(roomId));
+            assertNull(a.getCluster().routeRoom(roomId));
+            assertEquals(urlOf(a), b.getCluster().routeRoom(roomId));
+            // b关闭房间后仍为a占用这个ID，不会再分配出去
+            assertFalse(b.getCluster().ownsRoomId(roomId));
+            assertFalse(b.getLifecycle().reserveRoomId(roomId));
+        }
+    }
+
+    @Test
+    void friendshipsAreSharedByBothNodes() throws Exception {
+        MultiChatServer a = newNode("a", freePort(), List.of());
+        MultiChatServer b = newNode("b", freePort(), List.of(urlOf(a)));
+        startLinked(a, b);
+        FriendGraph graphA = a.getLifecycle().getFriendGraph();
+        FriendGraph graphB = b.getLifecycle().getFriendGraph();
+
+        // 在a上导入的好友列表，b上也以它为准
+        TestClient carol = link(a, "carol", "dave");
+        await(() -> graphB.isSeeded("carol") && graphB.areFriends("carol", "dave"));
+
+        // alice在a上邀请b上的bob，bob接受后两个节点上都是好友
+        TestClient alice = link(a, "alice");
+        TestClient bob = link(b, "bob");
+        await(() -> a.getCluster().isRemoteUser("bob") && b.getCluster().isRemoteUser("alice"));
+        alice.send(new JSONObject().put("status", "InviteShip").put("userId", "alice").put("invitedUserId", "bob").toString());
+        bob.next("InviteShip");
+        bob.send(new JSONObject().put("status", "InviteShipBack").put("userId", "alice").put("invitedUserId", "bob")
+                .put("nickName", "bob").toString());
+        alice.next("InviteShipBack");
+        assertTrue(graphA.areFriends("alice", "bob"));
+        await(() -> graphB.areFriends("alice", "bob"));
+
+        // bob在b上邀请alice对局，b认得这段好友关系
+        bob.send(new JSONObject().put("status", "AlongWHGame").put("userId", "bob").put("alongInvitedId", "alice").toString());
+        assertEquals("bob", alice.next("AlongWHGame").getString("userId"));
+
+        // 删除同样同步
+        alice.send(new JSONObject().put("status", "RemoveShip").put("userId", "alice").put("removeUserId", "bob").toString());
+        bob.next("RemoveShip");
+        await(() -> !graphB.areFriends("alice", "bob"));
+        for (TestClient client : new TestClient[]{carol, alice, bob}) {
+            client.closeBlocking();
+        }
+    }
+
+    // 连到节点并Link为userId，等到节点登记了连接再返回
+    private static TestClient link(MultiChatServer server, String userId, String... friendIds) throws Exception {
+        TestClient client = new TestClient(server.getPort());
+        assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+        JSONArray friendList = new JSONArray();
+        for (String friendId : friendIds) {
+            friendList.put(new JSONObject().put("userId", friendId));
+        }
+        client.send(new JSONObject().put("status", "Link").put("userId", userId).put("friendList", friendList).toString());
+        await(() -> server.getLocalUserIds().contains(userId));
+        return client;
+    }
+
+    private MultiChatServer newNode(String nodeId, int port, List<String> seeds) {
+        MultiChatServer server = new MultiChatServer(port, 1, new RoomExecutor(2), 64, OutboundQueue.OverflowPolicy.COALESCE);
+        server.setReuseAddr(true);
+        servers.add(server);
+        server.enableCluster(nodeId, "ws://127.0.0.1:" + port, SECRET, seeds);
+        return server;
+    }
+
+    // b以a为种子，a在b连入后反向连接
+    private void startLinked(MultiChatServer a, MultiChatServer b) throws Exception {
+        a.start();
+        b.start();
+        await(() -> a.getCluster().getPeerIds().contains("b") && b.getCluster().getPeerIds().contains("a"));
+    }
+
+    private static String urlOf(MultiChatServer server) {
+        return "ws://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the cluster");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.link.socket;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLogTests {
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesOneJsonObjectPerLine() throws IOException {
+        Path file = directory.resolve("events.log");
+        EventLog log = new EventLog(64);
+        log.openFile(file);
+        log.info(EventLog.Event.ROOM_JOIN, "Client1", 42, null);
+        log.log(EventLog.Level.WARN, EventLog.Event.UNKNOWN_STATUS, "Client2", EventLog.NO_ROOM, "Bogus\"", null, null);
+        log.error(EventLog.Event.CONNECTION_ERROR, null, new IllegalStateException("boom"));
+        log.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        JSONObject join = new JSONObject(lines.get(0));
+        assertEquals("INFO", join.getString("level"));
+        assertEquals("room.join", join.getString("event"));
+        assertEquals("Client1", join.getString("conn"));
+        assertEquals(42, join.getInt("roomId"));
+        JSONObject unknown = new JSONObject(lines.get(1));
+        assertEquals("Bogus\"", unknown.getString("status"));
+        assertFalse(unknown.has("roomId"));
+        JSONObject error = new JSONObject(lines.get(2));
+        assertEquals("java.lang.IllegalStateException: boom", error.getString("error"));
+        assertTrue(error.getString("stack").contains("EventLogTests"));
+    }
+
+    @Test
+    void samplesHighVolumeEvents() throws IOException {
+        Path file = directory.resolve("events.log");
+        EventLog log = new EventLog(1024);
+        log.openFile(file);
+        log.setSampleRate(EventLog.Event.CONNECTION_OPEN, 10);
+        for (int i = 0; i < 100; i++) {
+            log.info(EventLog.Event.CONNECTION_OPEN, "Client" + i, EventLog.NO_ROOM, null);
+        }
+        log.info(EventLog.Event.ROOM_JOIN, "Client0", 1, null);
+        log.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(11, lines.size());
+        assertEquals(10, new JSONObject(lines.get(0)).getInt("sample"));
+        assertFalse(new JSONObject(lines.get(10)).has("sample"));
+    }
+
+    @Test
+    void dropsInsteadOfBlockingWhenFull() throws Exception {
+        Path file = directory.resolve("events.log");
+        EventLog log = new EventLog(4);
+        log.openFile(file);
+        int perThread = 5000;
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            String connection = "Client" + t;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    log.info(EventLog.Event.CONNECTION_OPEN, connection, i, null);
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        log.close();
+
+        long lines = Files.readAllLines(file).size();
+        assertEquals(lines, log.getWritten());
+        assertEquals(producers.length * perThread, lines + log.getDropped());
+    }
+}
@@ -0,0 +1,95 @@
+package com.link.socket;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventRingTests {
+
+    private static PlayStep step(String event) {
+        return PlayStep.fromText(null, 0, "{\"status\":\"MemberPlayStep\",\"memberPlayStepEvent\":\"" + event + "\"}");
+    }
+
+    @Test
+    void returnsStepsAfterLastSeenSeq() {
+        EventRing ring = new EventRing(4);
+        for (int i = 1; i <= 3; i++) {
+            ring.append(step("e" + i));
+        }
+
+        List<PlayStep> missed = ring.since(1);
+        assertEquals(2, missed.size());
+        assertEquals(2, missed.get(0).getSeq());
+        assertEquals(3, missed.get(1).getSeq());
+        assertTrue(ring.covers(1));
+        assertTrue(ring.since(3).isEmpty());
+    }
+
+    @Test
+    void overwrittenGapIsNotCovered() {
+        EventRing ring = new EventRing(4);
+        for (int i = 1; i <= 10; i++) {
+            ring.append(step("e" + i));
+        }
+
+        assertEquals(7, ring.getFirstSeq());
+        assertEquals(10, ring.getLastSeq());
+        assertTrue(ring.covers(6));
+        assertFalse(ring.covers(5));
+        List<PlayStep> kept = ring.since(-1);
+        assertEquals(4, kept.size());
+        assertEquals(7, kept.get(0).getSeq());
+    }
+
+    @Test
+    void relayedTextCarriesSeq() {
+        EventRing ring = new EventRing(2);
+        PlayStep text = step("dice");
+        PlayStep binary = PlayStep.fromBinary(null, 1, "p1", "buy".getBytes(StandardCharsets.UTF_8));
+        ring.append(text);
+        ring.append(binary);
+
+        JSONObject first = new JSONObject(text.getText());
+        assertEquals(1, first.getLong("seq"));
+        assertEquals("dice", first.getString("memberPlayStepEvent"));
+        assertEquals(2, new JSONObject(binary.getText()).getLong("seq"));
+        assertEquals("{\"seq\":5}", PlayStep.insertSeq("{ }", 5).replace(" ", ""));
+    }
+
+    @Test
+    void clientSuppliedSeqIsReplaced() {
+        EventRing ring = new EventRing(2);
+        PlayStep forged = PlayStep.fromText(null, 0, "{\"seq\":999,\"status\":\"MemberPlayStep\",\"s\\u0065q\":998,\"memberPlayStepEvent\":\"dice\"}");
+        ring.append(forged);
+
+        // 重复的键会让JSONObject抛出异常
+        JSONObject relayed = new JSONObject(forged.getText());
+        assertEquals(1, relayed.getLong("seq"));
+        assertEquals("dice", relayed.getString("memberPlayStepEvent"));
+        assertEquals("{\"seq\":3}", PlayStep.insertSeq("{\"seq\":1}", 3));
+    }
+
+    @Test
+    void binaryIdFrameCarriesLastSeq() {
+        BinaryProtocol.Writer writer = new BinaryProtocol.Writer(16);
+        writer.writeString("p1");
+        writer.writeString("nick");
+        writer.writeVarInt(12);
+        writer.writeVarLong(5_000_000_001L);
+        ByteBuffer frame = writer.toByteBuffer();
+        assertEquals("p1", BinaryProtocol.readString(frame));
+        assertEquals("nick", BinaryProtocol.readString(frame));
+        assertEquals(12, BinaryProtocol.readVarInt(frame));
+        assertEquals(5_000_000_000L, BinaryProtocol.readLastSeq(frame));
+
+        // 旧客户端省略该字段时补发全部保留的步骤
+        assertEquals(-1, BinaryProtocol.readLastSeq(ByteBuffer.allocate(0)));
+    }
+}
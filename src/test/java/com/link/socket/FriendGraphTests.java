@@ -0,0 +1,179 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FriendGraphTests {
+    @TempDir
+    Path directory;
+
+    @Test
+    void friendshipIsSymmetric() {
+        FriendGraph graph = new FriendGraph();
+        assertTrue(graph.addFriendship("a", "b"));
+        assertFalse(graph.addFriendship("b", "a"));
+        assertTrue(graph.areFriends("a", "b"));
+        assertTrue(graph.areFriends("b", "a"));
+        assertFalse(graph.areFriends("a", "c"));
+        assertFalse(graph.addFriendship("a", "a"));
+        assertEquals(1, graph.getEdgeCount());
+    }
+
+    @Test
+    void removalUpdatesBothSides() {
+        FriendGraph graph = new FriendGraph();
+        graph.addFriendship("a", "b");
+        graph.addFriendship("a", "c");
+        assertTrue(graph.removeFriendship("b", "a"));
+        assertFalse(graph.areFriends("a", "b"));
+        assertFalse(graph.areFriends("b", "a"));
+        assertEquals(List.of("c"), graph.friendsOf("a"));
+        assertEquals(List.of(), graph.friendsOf("b"));
+        assertFalse(graph.removeFriendship("a", "b"));
+        assertEquals(1, graph.getEdgeCount());
+    }
+
+    @Test
+    void clientListIsImportedOnlyOnce() {
+        FriendGraph graph = new FriendGraph();
+        assertTrue(graph.seed("a", List.of("b", "c")));
+        assertTrue(graph.areFriends("c", "a"));
+        graph.removeFriendship("a", "b");
+        // 客户端还带着旧的列表，以服务器为准
+        assertFalse(graph.seed("a", List.of("b", "c")));
+        assertFalse(graph.areFriends("a", "b"));
+        // 被别人导入的用户自己第一次Link时仍会导入
+        assertFalse(graph.isSeeded("b"));
+        assertTrue(graph.seed("b", List.of("d")));
+        assertTrue(graph.areFriends("d", "b"));
+    }
+
+    @Test
+    void listFromAnotherNodeIsMergedAndCountsAsImported() {
+        FriendGraph graph = new FriendGraph();
+        graph.addFriendship("a", "b");
+        graph.merge("a", List.of("c"));
+        assertTrue(graph.isSeeded("a"));
+        assertEquals(List.of("b", "c"), graph.friendsOf("a").stream().sorted().toList());
+        // 之后客户端带上来的列表不再导入
+        assertFalse(graph.seed("a", List.of("d")));
+        assertFalse(graph.areFriends("a", "d"));
+    }
+
+    @Test
+    void friendListsAreCappedAndUnusedIdsAreReleased() throws IOException {
+        FriendGraph graph = new FriendGraph();
+        List<String> many = new ArrayList<>();
+        for (int i = 0; i < FriendGraph.MAX_FRIENDS + 100; i++) {
+            many.add("x" + i);
+        }
+        assertTrue(graph.seed("a", many));
+        assertEquals(FriendGraph.MAX_FRIENDS, graph.friendsOf("a").size());
+        assertEquals(FriendGraph.MAX_FRIENDS + 1, graph.getUserCount());
+        assertFalse(graph.addFriendship("a", "y"));
+        assertFalse(graph.areFriends("a", "y"));
+        assertEquals(FriendGraph.MAX_FRIENDS + 1, graph.getUserCount());
+
+        // 只被别人列出、没有Link过的userId在最后一条关系删除时释放，句柄被复用
+        assertTrue(graph.removeFriendship("a", "x0"));
+        assertEquals(FriendGraph.MAX_FRIENDS, graph.getUserCount());
+        assertTrue(graph.addFriendship("a", "z"));
+        assertTrue(graph.areFriends("z", "a"));
+        assertFalse(graph.areFriends("x0", "a"));
+
+        // 释放后的空洞不影响快照
+        graph.removeFriendship("a", "x1");
+        Path file = directory.resolve("holes.bin");
+        graph.save(file);
+        FriendGraph loaded = new FriendGraph();
+        loaded.load(file);
+        assertEquals(graph.getUserCount(), loaded.getUserCount());
+        assertEquals(graph.getEdgeCount(), loaded.getEdgeCount());
+        assertTrue(loaded.areFriends("a", "z"));
+        assertTrue(loaded.areFriends("x2", "a"));
+        assertFalse(loaded.areFriends("a", "x1"));
+        assertTrue(loaded.isSeeded("a"));
+    }
+
+    @Test
+    void snapshotRoundTrip() throws IOException {
+        FriendGraph graph = new FriendGraph();
+        Random random = new Random(7);
+        Set<String> edges = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            int a = random.nextInt(500);
+            int b = random.nextInt(500);
+            if (a != b && graph.addFriendship("u" + a, "u" + b)) {
+                edges.add(Math.min(a, b) + "-" + Math.max(a, b));
+            }
+        }
+        graph.seed("u1", List.of());
+        Path file = directory.resolve("friends.bin");
+        graph.save(file);
+
+        FriendGraph loaded = new FriendGraph();
+        loaded.load(file);
+        assertEquals(graph.getUserCount(), loaded.getUserCount());
+        assertEquals(edges.size(), loaded.getEdgeCount());
+        for (int a = 0; a < 500; a++) {
+            for (int b = 0; b < 500; b++) {
+                boolean expected = edges.contains(Math.min(a, b) + "-" + Math.max(a, b));
+                assertEquals(expected, loaded.areFriends("u" + a, "u" + b));
+            }
+        }
+        assertTrue(loaded.isSeeded("u1"));
+        assertFalse(loaded.isSeeded("u2"));
+    }
+
+    @Test
+    void missingSnapshotLeavesGraphEmpty() throws IOException {
+        FriendGraph graph = new FriendGraph();
+        graph.load(directory.resolve("absent.bin"));
+        assertEquals(0, graph.getUserCount());
+    }
+
+    @Test
+    void corruptSnapshotIsRejected() throws IOException {
+        FriendGraph graph = new FriendGraph();
+        graph.addFriendship("a", "b");
+        Path file = directory.resolve("friends.bin");
+        graph.save(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> new FriendGraph().load(file));
+    }
+
+    @Test
+    void intSetSurvivesRemovalsAcrossProbeChains() {
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            int value = 1 + random.nextInt(2000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (int value = 1; value <= 2000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.link.socket;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FriendRequestsTests {
+    private MultiChatServer server;
+    private FriendGraph graph;
+    private final List<TestClient> clients = new ArrayList<>();
+
+    @BeforeEach
+    void startServer() {
+        server = new MultiChatServer(0, 1, new RoomExecutor(2), 64, OutboundQueue.OverflowPolicy.COALESCE);
+        server.setReuseAddr(true);
+        // 邀请不过期时同样要求回复对应一条保存的邀请
+        server.setInviteTtlMillis(0);
+        server.start();
+        graph = server.getLifecycle().getFriendGraph();
+    }
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        for (TestClient client : clients) {
+            client.closeBlocking();
+        }
+        server.stop(200);
+    }
+
+    @Test
+    void forgedUserIdDoesNotChangeTheGraph() throws Exception {
+        link("a", "b");
+        TestClient mallory = link("m");
+        assertTrue(graph.areFriends("a", "b"));
+
+        // 冒充a删除a和b的好友关系
+        mallory.send(message("RemoveShip", "userId", "a", "removeUserId", "b"));
+        assertEquals("The userId does not match the linked user.", mallory.next("Error").getString("message"));
+        // 冒充b接受一条不存在的邀请
+        mallory.send(message("InviteShipBack", "userId", "a", "invitedUserId", "b", "nickName", "b"));
+        assertEquals("The userId does not match the linked user.", mallory.next("Error").getString("message"));
+        // 以自己的身份回复a从未发出的邀请
+        mallory.send(message("InviteShipBack", "userId", "a", "invitedUserId", "m", "nickName", "m"));
+        assertEquals("The invitation has expired.", mallory.next("Error").getString("message"));
+
+        assertTrue(graph.areFriends("a", "b"));
+        assertFalse(graph.areFriends("a", "m"));
+        assertEquals(1, graph.getEdgeCount());
+    }
+
+    @Test
+    void acceptingAStoredInviteAddsTheFriendship() throws Exception {
+        TestClient a = link("a");
+        TestClient c = link("c");
+
+        a.send(message("InviteShip", "userId", "a", "invitedUserId", "c"));
+        c.next("InviteShip");
+        c.send(message("InviteShipBack", "userId", "a", "invitedUserId", "c", "nickName", "c"));
+        a.next("InviteShipBack");
+        assertTrue(graph.areFriends("a", "c"));
+
+        // 邀请只能回复一次
+        c.send(message("InviteShipBack", "userId", "a", "invitedUserId", "c", "nickName", "c"));
+        assertEquals("The invitation has expired.", c.next("Error").getString("message"));
+    }
+
+    // Link为userId，好友列表为friendIds，等到服务器登记了连接再返回
+    private TestClient link(String userId, String... friendIds) throws Exception {
+        TestClient client = connect();
+        JSONArray friendList = new JSONArray();
+        for (String friendId : friendIds) {
+            friendList.put(new JSONObject().put("userId", friendId));
+        }
+        client.send(new JSONObject().put("status", "Link").put("userId", userId).put("friendList", friendList).toString());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!server.getLocalUserIds().contains(userId)) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out linking " + userId);
+            Thread.sleep(10);
+        }
+        return client;
+    }
+
+    // 服务器在后台线程上绑定端口，连不上时重试
+    private TestClient connect() throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            TestClient client = new TestClient(server.getPort());
+            if (server.getPort() != 0 && client.connectBlocking(5, TimeUnit.SECONDS)) {
+                clients.add(client);
+                return client;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Server did not start");
+            Thread.sleep(20);
+        }
+    }
+
+    private static String message(String status, String... fields) {
+        JSONObject json = new JSONObject().put("status", status);
+        for (int i = 0; i < fields.length; i += 2) {
+            json.put(fields[i], fields[i + 1]);
+        }
+        return json.toString();
+    }
+}
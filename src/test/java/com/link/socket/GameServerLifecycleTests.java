@@ -0,0 +1,44 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GameServerLifecycleTests {
+
+    @Test
+    void failedStartStopsTheThreadsItAlreadyStarted(@TempDir Path dir) throws Exception {
+        // 日志目录是一个普通文件，openJournal会失败
+        Path notADirectory = Files.createFile(dir.resolve("journal"));
+        GameServerProperties properties = new GameServerProperties();
+        properties.setPort(0);
+        properties.setAdminPort(0);
+        properties.setJournalDir(notADirectory.toString());
+        long before = backgroundThreads();
+
+        GameServerLifecycle lifecycle = new GameServerLifecycle(properties);
+        assertThrows(UncheckedIOException.class, lifecycle::start);
+        assertFalse(lifecycle.isRunning());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (backgroundThreads() > before && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(before, backgroundThreads());
+    }
+
+    private static long backgroundThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(Thread::isAlive)
+                .map(Thread::getName)
+                .filter(name -> name.startsWith("room-shard-") || name.equals("timing-wheel") || name.equals("event-log"))
+                .count();
+    }
+}
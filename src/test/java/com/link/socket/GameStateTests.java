@@ -0,0 +1,83 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.link.socket.GameState.StepResult.APPLIED;
+import static com.link.socket.GameState.StepResult.REJECTED;
+import static com.link.socket.GameState.StepResult.UNCHANGED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GameStateTests {
+
+    @Test
+    void appliesStepFieldsToSendersSeat() {
+        GameState state = new GameState(new String[]{"p0", "p1", "p2", "p3"});
+        assertEquals(GameState.STARTING_CASH, state.getCash(0));
+
+        assertEquals(APPLIED, state.applyStep("p0", "{\"status\":\"MemberPlayStep\",\"memberPlayStepEvent\":\"buy\",\"position\":6,\"cash\":1400,\"buy\":6,\"turn\":1}"));
+        assertEquals(6, state.getPosition(0));
+        assertEquals(1400, state.getCash(0));
+        assertEquals(0, state.getOwner(6));
+        assertEquals(1, state.getCurrentTurn());
+        assertEquals(1, state.getTurnNumber());
+        assertEquals(1, state.getVersion());
+    }
+
+    @Test
+    void ignoresInvalidFieldsAndPlainSteps() {
+        GameState state = new GameState(new String[]{"p0", "p1", "p2", "p3"});
+        state.applyStep("p0", "{\"buy\":5}");
+
+        assertEquals(REJECTED, state.applyStep("p0", "{\"buy\":5,\"sell\":5}"));
+        assertEquals(0, state.getOwner(5));
+        assertEquals(REJECTED, state.applyStep("p0", "{\"position\":40}"));
+        assertEquals(UNCHANGED, state.applyStep("p1", "{\"status\":\"MemberPlayStep\",\"memberPlayStepEvent\":\"roll\"}"));
+        assertEquals(REJECTED, state.applyStep("nobody", "{\"position\":1}"));
+
+        assertEquals(APPLIED, state.applyStep("p0", "{\"sell\":5}"));
+        assertEquals(-1, state.getOwner(5));
+        assertEquals(2, state.getVersion());
+    }
+
+    @Test
+    void onlyCurrentSeatChangesStateAndTurnFollowsTurnOrder() {
+        GameState state = new GameState(new String[]{"p0", "p1", "p2", "p3"});
+
+        // 不是自己的回合
+        assertEquals(REJECTED, state.applyStep("p2", "{\"cash\":99999}"));
+        assertEquals(REJECTED, state.applyStep("p2", "{\"turn\":2}"));
+        assertEquals(GameState.STARTING_CASH, state.getCash(2));
+
+        // 只能交给下一位，整条步骤被拒绝时其他字段也不生效
+        assertEquals(REJECTED, state.applyStep("p0", "{\"position\":3,\"turn\":2}"));
+        assertEquals(0, state.getPosition(0));
+        assertEquals(APPLIED, state.applyStep("p0", "{\"turn\":1}"));
+
+        // 下一位已离开时跳过
+        state.markLeft("p2");
+        assertEquals(3, state.nextTurn());
+        assertEquals(REJECTED, state.applyStep("p1", "{\"turn\":2}"));
+        assertEquals(APPLIED, state.applyStep("p1", "{\"turn\":3}"));
+
+        // 当前玩家离开时行动权交给下一位
+        state.markLeft("p3");
+        assertEquals(0, state.getCurrentTurn());
+        assertEquals(3, state.getTurnNumber());
+        assertEquals(APPLIED, state.applyStep("p0", "{\"turn\":1}"));
+    }
+
+    @Test
+    void binaryEventsFollowTheSameTurnRules() {
+        GameState state = new GameState(new String[]{"p0", "p1", "p2"});
+        assertEquals(UNCHANGED, state.applyEvent("p0", new byte[]{7, 1}));
+        // 不是发送者的回合
+        assertEquals(REJECTED, state.applyEvent("p1", "{\"position\":4}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, state.getPosition(1));
+        assertEquals(REJECTED, state.applyEvent("p0", " {\"turn\":2}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(APPLIED, state.applyEvent("p0", " {\"position\":4,\"turn\":1}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(4, state.getPosition(0));
+        assertEquals(1, state.getCurrentTurn());
+    }
+}
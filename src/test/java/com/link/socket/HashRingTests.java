@@ -0,0 +1,52 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashRingTests {
+    private static final int KEYS = 100_000;
+
+    @Test
+    void spreadsKeysAcrossNodes() {
+        HashRing ring = new HashRing(List.of("a", "b", "c", "d"));
+        Map<String, Integer> counts = new HashMap<>();
+        for (int key = 1; key < KEYS; key++) {
+            counts.merge(ring.ownerOf(key), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > KEYS / 4 * 0.7 && count < KEYS / 4 * 1.3, "unbalanced: " + counts);
+        }
+    }
+
+    @Test
+    void joiningNodeOnlyTakesKeysFromOthers() {
+        HashRing before = new HashRing(List.of("a", "b", "c"));
+        HashRing after = new HashRing(List.of("a", "b", "c", "d"));
+        int moved = 0;
+        for (int key = 1; key < KEYS; key++) {
+            String owner = after.ownerOf(key);
+            if (!owner.equals(before.ownerOf(key))) {
+                // 只会移到新节点上
+                assertEquals("d", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS / 4 * 0.7 && moved < KEYS / 4 * 1.3, "moved " + moved);
+    }
+
+    @Test
+    void orderOfNodesDoesNotMatter() {
+        HashRing first = new HashRing(List.of("a", "b", "c"));
+        HashRing second = new HashRing(List.of("c", "a", "b"));
+        for (int key = 1; key < 1000; key++) {
+            assertEquals(first.ownerOf(key), second.ownerOf(key));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonFieldsTests {
+
+    @Test
+    void readsTopLevelStringField() {
+        assertEquals("MemberPlayStep", JsonFields.readString("{\"status\":\"MemberPlayStep\",\"playId\":\"p1\"}", "status"));
+        assertEquals("IdSend", JsonFields.readString(" { \"playId\" : 12, \"ok\": true , \"status\" : \"IdSend\" } ", "status"));
+    }
+
+    @Test
+    void skipsNestedValuesWithSameKey() {
+        String json = "{\"friendList\":[{\"status\":\"x\",\"s\":\"}]\\\"\"}],\"meta\":{\"status\":\"y\"},\"status\":\"Link\"}";
+        assertEquals("Link", JsonFields.readString(json, "status"));
+    }
+
+    @Test
+    void decodesEscapes() {
+        assertEquals("a\"bé", JsonFields.readString("{\"st\\u0061tus\":\"a\\\"b\\u00e9\"}", "status"));
+    }
+
+    @Test
+    void returnsNullWhenMissingOrMalformed() {
+        assertNull(JsonFields.readString("{\"playId\":\"p1\"}", "status"));
+        assertNull(JsonFields.readString("{\"status\":3}", "status"));
+        assertNull(JsonFields.readString("{\"status\":\"unterminated", "status"));
+        assertNull(JsonFields.readString("[\"status\"]", "status"));
+        assertNull(JsonFields.readString("", "status"));
+    }
+
+    @Test
+    void readsSeveralIntegerFieldsInOnePass() {
+        String[] fields = {"position", "cash", "buy"};
+        long[] values = new long[fields.length];
+        String json = "{\"status\":\"MemberPlayStep\",\"cash\":-250,\"meta\":{\"buy\":1},\"position\": 12 ,\"buy\":\"7\"}";
+        assertEquals(0b011, JsonFields.readInts(json, fields, values));
+        assertEquals(12, values[0]);
+        assertEquals(-250, values[1]);
+        assertEquals(0, JsonFields.readInts("{\"position\":1", fields, values));
+    }
+
+    @Test
+    void checksTheWholeObjectBeforeRawRelay() {
+        assertTrue(JsonFields.isObject("{\"status\":\"MemberPlayStep\",\"cash\":-1.5e3,\"a\":[true,null,{\"b\":\"\\u00e9\\n\"}],\"c\":{}} "));
+        assertTrue(JsonFields.isObject("{}"));
+        // readString在读到status后就返回，后面的内容只有isObject检查
+        String truncated = "{\"status\":\"MemberPlayStep\",<garbage>";
+        assertEquals("MemberPlayStep", JsonFields.readString(truncated, "status"));
+        assertFalse(JsonFields.isObject(truncated));
+        assertFalse(JsonFields.isObject("{\"status\":\"MemberPlayStep\"}{}"));
+        assertFalse(JsonFields.isObject("{\"status\":\"MemberPlayStep\",}"));
+        assertFalse(JsonFields.isObject("{\"a\":[1,,2]}"));
+        assertFalse(JsonFields.isObject("{\"a\":01}"));
+        assertFalse(JsonFields.isObject("{\"a\":tru}"));
+        assertFalse(JsonFields.isObject("{\"a\":\"\\x\"}"));
+        assertFalse(JsonFields.isObject("{\"a\":\"line\nbreak\"}"));
+        assertFalse(JsonFields.isObject("[]"));
+        assertFalse(JsonFields.isObject("{\"a\":" + "[".repeat(100) + "]".repeat(100) + "}"));
+    }
+
+    @Test
+    void removesEveryTopLevelMemberWithTheName() {
+        assertEquals("{\"a\":1,\"b\":{\"seq\":2}}", JsonFields.removeField("{\"seq\":0, \"a\":1,\"seq\":3,\"b\":{\"seq\":2}}", "seq"));
+        assertEquals("{}", JsonFields.removeField("{ \"se\\u0071\" : 1 }", "seq"));
+        String absent = "{\"a\":1}";
+        assertEquals(absent, JsonFields.removeField(absent, "seq"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTests {
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(10, histogram.percentile(99));
+        assertEquals(10, histogram.getMax());
+    }
+
+    @Test
+    void largeValuesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(250_000);
+        }
+        assertEquals(100, histogram.percentile(50), 100 / 16.0);
+        long p999 = histogram.percentile(99.9);
+        assertTrue(p999 <= 250_000 && p999 >= 250_000 * 15 / 16, "p999=" + p999);
+        assertEquals(250_000, histogram.snapshot().getMaxMicros());
+    }
+}
@@ -0,0 +1,52 @@
+package com.link.socket;
+
+import org.java_websocket.drafts.Draft_6455;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OutgoingMessageTests {
+
+    @Test
+    void concurrentWritesEncodeCompleteFrames() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("步骤").append(i);
+        }
+        OutgoingMessage message = OutgoingMessage.of(new JSONObject().put("status", "MemberPlayStep").put("e", text),
+                () -> ByteBuffer.wrap(text.toString().getBytes()));
+        Draft_6455 draft = new Draft_6455();
+        ByteBuffer expectedText = draft.createBinaryFrame(message.newFrame(false));
+        ByteBuffer expectedBinary = draft.createBinaryFrame(message.newFrame(true));
+
+        // 和分片线程、出站刷新线程同时写给不同连接一样，多个线程同时编码同一条消息
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> mismatches = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            mismatches.add(pool.submit(() -> {
+                Draft_6455 local = new Draft_6455();
+                int mismatch = 0;
+                for (int i = 0; i < 5000; i++) {
+                    boolean binary = (i & 1) == 0;
+                    ByteBuffer encoded = local.createBinaryFrame(message.newFrame(binary));
+                    if (!encoded.equals(binary ? expectedBinary : expectedText)) {
+                        mismatch++;
+                    }
+                }
+                return mismatch;
+            }));
+        }
+        pool.shutdown();
+        for (Future<Integer> mismatch : mismatches) {
+            assertEquals(0, mismatch.get());
+        }
+    }
+}
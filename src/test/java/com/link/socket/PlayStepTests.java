@@ -0,0 +1,60 @@
+package com.link.socket;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PlayStepTests {
+
+    @Test
+    void batchTextKeepsStepsInOrder() {
+        PlayStep first = PlayStep.fromText(null, 0, "{\"status\":\"MemberPlayStep\",\"playId\":\"p0\",\"memberPlayStepEvent\":\"dice\"}");
+        PlayStep second = PlayStep.fromBinary(null, 2, "p2", "buy".getBytes(StandardCharsets.UTF_8));
+
+        JSONObject batch = new JSONObject(PlayStep.encodeBatchText(List.of(first, second)));
+        assertEquals("MemberPlaySteps", batch.getString("status"));
+        JSONArray steps = batch.getJSONArray("steps");
+        assertEquals(2, steps.length());
+        assertEquals("dice", steps.getJSONObject(0).getString("memberPlayStepEvent"));
+        assertEquals("p2", steps.getJSONObject(1).getString("playId"));
+        assertEquals("buy", steps.getJSONObject(1).getString("memberPlayStepEvent"));
+    }
+
+    @Test
+    void malformedStepIsReencodedSoTheBatchStaysParseable() {
+        PlayStep broken = PlayStep.fromText(null, 0, "p0", "{\"status\":\"MemberPlayStep\",<garbage>");
+        PlayStep valid = PlayStep.fromText(null, 1, "p1", "{\"status\":\"MemberPlayStep\",\"memberPlayStepEvent\":\"dice\"}");
+        broken.setSeq(4);
+        valid.setSeq(5);
+
+        JSONArray steps = new JSONObject(PlayStep.encodeBatchText(List.of(broken, valid))).getJSONArray("steps");
+        assertEquals(2, steps.length());
+        assertEquals("p0", steps.getJSONObject(0).getString("playId"));
+        assertEquals(4, steps.getJSONObject(0).getLong("seq"));
+        assertEquals("{\"status\":\"MemberPlayStep\",<garbage>", steps.getJSONObject(0).getString("memberPlayStepEvent"));
+        assertEquals("dice", steps.getJSONObject(1).getString("memberPlayStepEvent"));
+        assertEquals(5, steps.getJSONObject(1).getLong("seq"));
+    }
+
+    @Test
+    void binaryBatchCarriesSeatAndEvent() {
+        PlayStep first = PlayStep.fromText(null, 1, "{\"status\":\"MemberPlayStep\",\"memberPlayStepEvent\":\"d6\"}");
+        PlayStep second = PlayStep.fromBinary(null, 3, "p3", new byte[]{7});
+
+        ByteBuffer buffer = BinaryProtocol.encodeMemberSteps(List.of(first, second));
+        assertEquals(BinaryProtocol.OP_MEMBER_STEPS, buffer.get());
+        assertEquals(2, BinaryProtocol.readVarInt(buffer));
+        assertEquals(1, buffer.get());
+        assertEquals("d6", BinaryProtocol.readString(buffer));
+        assertEquals(3, buffer.get());
+        assertEquals(1, BinaryProtocol.readVarInt(buffer));
+        assertEquals(7, buffer.get());
+        assertEquals(0, buffer.remaining());
+    }
+}
@@ -0,0 +1,81 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTests {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void burstThenSteadyRate() {
+        RateLimiter limiter = RateLimiter.of("0", Map.of("MemberPlayStep", "10/3"), RateLimiter.Action.DROP);
+        long[] state = limiter.newState();
+        long now = state[0];
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.acquire(state, MessageStatus.MEMBER_PLAY_STEP, now));
+        }
+        long wait = limiter.acquire(state, MessageStatus.MEMBER_PLAY_STEP, now);
+        assertEquals(100 * MILLIS, wait);
+        // 被拒绝的消息不消耗令牌
+        assertEquals(wait, limiter.acquire(state, MessageStatus.MEMBER_PLAY_STEP, now));
+        assertEquals(0, limiter.acquire(state, MessageStatus.MEMBER_PLAY_STEP, now + 100 * MILLIS));
+        assertTrue(limiter.acquire(state, MessageStatus.MEMBER_PLAY_STEP, now + 100 * MILLIS) > 0);
+        // 空闲足够久后恢复完整的突发容量，但不会超过
+        long later = now + 10_000 * MILLIS;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.acquire(state, MessageStatus.MEMBER_PLAY_STEP, later));
+        }
+        assertTrue(limiter.acquire(state, MessageStatus.MEMBER_PLAY_STEP, later) > 0);
+    }
+
+    @Test
+    void statusesHaveSeparateBuckets() {
+        RateLimiter limiter = RateLimiter.of("0", Map.of("inviteship", "1/1"), RateLimiter.Action.DROP);
+        long[] state = limiter.newState();
+        long now = state[0];
+        assertEquals(0, limiter.acquire(state, MessageStatus.INVITE_SHIP, now));
+        assertTrue(limiter.acquire(state, MessageStatus.INVITE_SHIP, now) > 0);
+        // 没有配置限制的status不受影响
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.acquire(state, MessageStatus.MEMBER_PLAY_STEP, now));
+        }
+    }
+
+    @Test
+    void connectionBucketCoversAllStatuses() {
+        RateLimiter limiter = RateLimiter.of("5/2", Map.of("InviteShip", "1/5"), RateLimiter.Action.DROP);
+        long[] state = limiter.newState();
+        long now = state[0];
+        assertEquals(0, limiter.acquire(state, MessageStatus.HEARTBEAT, now));
+        assertEquals(0, limiter.acquire(state, MessageStatus.INVITE_SHIP, now));
+        assertEquals(200 * MILLIS, limiter.acquire(state, MessageStatus.HEARTBEAT, now));
+        // 连接桶拒绝时status桶也不消耗令牌
+        assertTrue(limiter.acquire(state, MessageStatus.INVITE_SHIP, now) > 0);
+        assertEquals(0, limiter.acquire(state, MessageStatus.INVITE_SHIP, now + 200 * MILLIS));
+    }
+
+    @Test
+    void unlimitedAdmitsEverything() {
+        RateLimiter limiter = RateLimiter.unlimited();
+        long[] state = limiter.newState();
+        for (MessageStatus status : MessageStatus.values()) {
+            assertEquals(0, limiter.acquire(state, status, state[0]));
+        }
+    }
+
+    @Test
+    void rejectsMalformedLimits() {
+        assertThrows(IllegalArgumentException.class,
+                () -> RateLimiter.of("fast", Map.of(), RateLimiter.Action.DROP));
+        assertThrows(IllegalArgumentException.class,
+                () -> RateLimiter.of("10/0", Map.of(), RateLimiter.Action.DROP));
+        assertThrows(IllegalArgumentException.class,
+                () -> RateLimiter.of("0", Map.of("NoSuchStatus", "1/1"), RateLimiter.Action.DROP));
+    }
+}
@@ -0,0 +1,107 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomIdAllocatorTests {
+
+    @Test
+    void allocatesEveryIdOnceAndNeverZero() {
+        RoomIdAllocator allocator = new RoomIdAllocator(130);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        for (int i = 1; i < 130; i++) {
+            int id = allocator.allocate();
+            assertTrue(id > 0 && id < 130);
+            assertTrue(ids.add(id));
+        }
+        assertThrows(IllegalStateException.class, allocator::allocate);
+
+        allocator.release(77);
+        assertFalse(allocator.isAllocated(77));
+        assertEquals(77, allocator.allocate());
+    }
+
+    @Test
+    void releasedIdIsNotReusedBeforeTheCursorWraps() {
+        RoomIdAllocator allocator = new RoomIdAllocator(6);
+        assertEquals(1, allocator.allocate());
+        assertEquals(2, allocator.allocate());
+        assertEquals(3, allocator.allocate());
+        allocator.release(2);
+        assertEquals(4, allocator.allocate());
+        assertEquals(5, allocator.allocate());
+        // 绕回后才复用2
+        assertEquals(2, allocator.allocate());
+    }
+
+    @Test
+    void eachThreadAllocatesFromItsOwnWord() throws Exception {
+        RoomIdAllocator allocator = new RoomIdAllocator(256);
+        assertEquals(1, allocator.allocate());
+        assertEquals(2, allocator.allocate());
+        // 另一个线程领取下一个字，不和本线程争用同一个字
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(64, other.submit(allocator::allocate).get());
+            assertEquals(65, other.submit(allocator::allocate).get());
+        } finally {
+            other.shutdown();
+        }
+        assertEquals(3, allocator.allocate());
+    }
+
+    @Test
+    void reservedIdIsSkippedByAllocate() {
+        RoomIdAllocator allocator = new RoomIdAllocator(4);
+        assertTrue(allocator.reserve(2));
+        assertFalse(allocator.reserve(2));
+        assertFalse(allocator.reserve(0));
+        assertEquals(1, allocator.allocate());
+        assertEquals(3, allocator.allocate());
+        assertEquals(3, allocator.getAllocatedCount());
+    }
+
+    @Test
+    void concurrentAllocationsAreUnique() throws Exception {
+        RoomIdAllocator allocator = new RoomIdAllocator(1 << 16);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> duplicates = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            duplicates.add(pool.submit(() -> {
+                int duplicate = 0;
+                for (int i = 0; i < 4000; i++) {
+                    int id = allocator.allocate();
+                    if (!ids.add(id)) {
+                        duplicate++;
+                    }
+                    if (i % 2 == 0) {
+                        ids.remove(id);
+                        allocator.release(id);
+                    }
+                }
+                return duplicate;
+            }));
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        // 在测试线程上断言，任务中的异常也会在get时抛出
+        for (Future<Integer> duplicate : duplicates) {
+            assertEquals(0, duplicate.get());
+        }
+        assertEquals(ids.size(), allocator.getAllocatedCount());
+    }
+}
@@ -0,0 +1,151 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomJournalTests {
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    private final EventLog log = new EventLog();
+
+    @AfterEach
+    void closeLog() {
+        log.close();
+    }
+
+    private static List<Member> members(String... playIds) {
+        ChatRoom chatRoom = new ChatRoom(1);
+        for (String playId : playIds) {
+            chatRoom.addMember(null, playId, "nick-" + playId);
+        }
+        return chatRoom.getMembers();
+    }
+
+    private static String step(String playId, String event) {
+        return "{\"status\":\"MemberPlayStep\",\"playId\":\"" + playId + "\",\"memberPlayStepEvent\":\"" + event + "\"}";
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void recoversUnfinishedGamesInOrder() throws Exception {
+        RoomJournal journal = RoomJournal.open(directory, SEGMENT_BYTES, 1, log);
+        journal.gameStarted(7, members("a", "b", "c"));
+        journal.stepRelayed(7, PlayStep.fromText(null, 0, "a", step("a", "dice")));
+        journal.stepRelayed(7, PlayStep.fromBinary(null, 1, "b", new byte[]{1, 2}));
+        journal.memberLeft(7, "c");
+        journal.gameStarted(9, members("x"));
+        journal.roomClosed(9);
+        journal.close();
+        assertEquals(0, journal.getBacklog());
+
+        List<RoomJournal.RecoveredRoom> rooms = RoomJournal.open(directory, SEGMENT_BYTES, 1, log).getRecoveredRooms();
+        assertEquals(1, rooms.size());
+        RoomJournal.RecoveredRoom room = rooms.get(0);
+        assertEquals(7, room.roomId);
+        assertArrayEquals(new String[]{"a", "b", "c"}, room.playIds);
+        assertEquals("nick-b", room.nickNames[1]);
+        assertEquals(3, room.events.size());
+        assertEquals(step("a", "dice"), new String(room.events.get(0).payload, StandardCharsets.UTF_8));
+        assertTrue(room.events.get(1).binary);
+        assertEquals(1, room.events.get(1).seat);
+        assertEquals(RoomJournal.MEMBER_LEFT, room.events.get(2).type);
+        assertEquals("c", room.events.get(2).playId);
+    }
+
+    @Test
+    void deletesSegmentsOnceTheirGamesEnd() throws Exception {
+        RoomJournal journal = RoomJournal.open(directory, SEGMENT_BYTES, 1, log);
+        journal.gameStarted(3, members("a", "b"));
+        for (int i = 0; i < 200; i++) {
+            journal.stepRelayed(3, PlayStep.fromText(null, i % 2, "a", step("a", "move:" + i)));
+        }
+        journal.close();
+        assertTrue(segmentCount() > 2);
+
+        journal = RoomJournal.open(directory, SEGMENT_BYTES, 1, log);
+        assertEquals(200, journal.getRecoveredRooms().get(0).events.size());
+        journal.roomClosed(3);
+        journal.close();
+
+        // 只剩关闭记录所在的分段，下次打开时也被回收
+        assertEquals(1, segmentCount());
+        journal = RoomJournal.open(directory, SEGMENT_BYTES, 1, log);
+        assertTrue(journal.getRecoveredRooms().isEmpty());
+        journal.close();
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    void stopsAtCorruptedRecord() throws Exception {
+        RoomJournal journal = RoomJournal.open(directory, SEGMENT_BYTES, 1, log);
+        journal.gameStarted(5, members("a"));
+        journal.stepRelayed(5, PlayStep.fromText(null, 0, "a", step("a", "one")));
+        journal.stepRelayed(5, PlayStep.fromText(null, 0, "a", step("a", "two")));
+        journal.close();
+
+        // 模拟崩溃时写了一半的最后一条记录
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            int position = 0;
+            int last = 0;
+            while (buffer.getInt(position) != 0) {
+                last = position;
+                position += 8 + buffer.getInt(position);
+            }
+            buffer.put(position - 1, (byte) (buffer.get(position - 1) ^ 0x5A));
+            assertTrue(last > 0);
+        }
+
+        RoomJournal reopened = RoomJournal.open(directory, SEGMENT_BYTES, 1, log);
+        List<RoomJournal.RecoveredEvent> events = reopened.getRecoveredRooms().get(0).events;
+        reopened.close();
+        assertEquals(1, events.size());
+        assertEquals(step("a", "one"), new String(events.get(0).payload, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void oversizedRecordIsDroppedAndLogged(@TempDir Path logDirectory) throws Exception {
+        Path logFile = logDirectory.resolve("events.log");
+        EventLog fileLog = new EventLog();
+        fileLog.openFile(logFile);
+        RoomJournal journal = RoomJournal.open(directory, SEGMENT_BYTES, 1, fileLog);
+        journal.gameStarted(3, members("a"));
+        journal.stepRelayed(3, PlayStep.fromText(null, 0, "a", step("a", "x".repeat(SEGMENT_BYTES))));
+        journal.stepRelayed(3, PlayStep.fromText(null, 0, "a", step("a", "small")));
+        journal.close();
+        fileLog.close();
+
+        List<RoomJournal.RecoveredEvent> events = RoomJournal.open(directory, SEGMENT_BYTES, 1, log).getRecoveredRooms().get(0).events;
+        assertEquals(1, events.size());
+        List<String> lines = Files.readAllLines(logFile);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"event\":\"journal.recordDropped\""), lines.get(0));
+    }
+}
@@ -0,0 +1,51 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RosterTests {
+
+    @Test
+    void versionAdvancesOnEachJoinAndLeave() {
+        ChatRoom chatRoom = new ChatRoom(7);
+        assertEquals(0, chatRoom.getRosterVersion());
+        Member host = chatRoom.addMember(null, "p0", "a");
+        chatRoom.addMember(null, "p1", "b");
+        assertEquals(2, chatRoom.getRosterVersion());
+
+        chatRoom.removeMember(host);
+        assertEquals(3, chatRoom.getRosterVersion());
+        assertEquals("p1", chatRoom.getHostId());
+
+        // 已经离开的成员不再改变版本号
+        assertFalse(chatRoom.removeMember(host));
+        assertEquals(3, chatRoom.getRosterVersion());
+    }
+
+    @Test
+    void binaryDeltasCarryVersionAndSeat() {
+        ByteBuffer joined = BinaryProtocol.encodeMemberJoined(300, 2, "p2", "昵称");
+        assertEquals(BinaryProtocol.OP_MEMBER_JOINED, joined.get());
+        assertEquals(300, BinaryProtocol.readVarInt(joined));
+        assertEquals(2, joined.get());
+        assertEquals("p2", BinaryProtocol.readString(joined));
+        assertEquals("昵称", BinaryProtocol.readString(joined));
+        assertEquals(0, joined.remaining());
+
+        ByteBuffer left = BinaryProtocol.encodeMemberLeft(301, 0);
+        assertEquals(BinaryProtocol.OP_MEMBER_LEFT, left.get());
+        assertEquals(301, BinaryProtocol.readVarInt(left));
+        assertEquals(0, left.get());
+        assertEquals(0, left.remaining());
+
+        ByteBuffer hostChanged = BinaryProtocol.encodeHostChanged(301, "p1");
+        assertEquals(BinaryProtocol.OP_HOST_CHANGED, hostChanged.get());
+        assertEquals(301, BinaryProtocol.readVarInt(hostChanged));
+        assertEquals("p1", BinaryProtocol.readString(hostChanged));
+        assertEquals(0, hostChanged.remaining());
+    }
+}
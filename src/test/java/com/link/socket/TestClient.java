@@ -0,0 +1,49 @@
+package com.link.socket;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 测试用的JSON客户端，收到的消息按顺序排队
+final class TestClient extends WebSocketClient {
+    private final BlockingQueue<JSONObject> received = new LinkedBlockingQueue<>();
+
+    TestClient(int port) {
+        super(URI.create("ws://127.0.0.1:" + port));
+    }
+
+    // 跳过其他消息，返回下一条status相符的消息
+    JSONObject next(String status) throws InterruptedException {
+        while (true) {
+            JSONObject message = received.poll(10, TimeUnit.SECONDS);
+            assertTrue(message != null, "No " + status + " message");
+            if (status.equals(message.optString("status"))) {
+                return message;
+            }
+        }
+    }
+
+    @Override
+    public void onOpen(ServerHandshake handshake) {
+    }
+
+    @Override
+    public void onMessage(String message) {
+        received.add(new JSONObject(message));
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+    }
+
+    @Override
+    public void onError(Exception ex) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTests {
+    private final TimingWheel wheel = new TimingWheel("test-wheel", 1);
+
+    @AfterEach
+    void tearDown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    void firesNoEarlierThanDelayAcrossLevels() throws InterruptedException {
+        // 小于256ms的在第0层，更长的从第1层下移
+        long[] delays = {0, 1, 5, 50, 255, 256, 300, 600};
+        AtomicLongArray firedNanos = new AtomicLongArray(delays.length);
+        CountDownLatch done = new CountDownLatch(delays.length);
+        long start = System.nanoTime();
+        for (int i = 0; i < delays.length; i++) {
+            int index = i;
+            wheel.schedule(() -> {
+                firedNanos.set(index, System.nanoTime());
+                done.countDown();
+            }, delays[i]);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < delays.length; i++) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(firedNanos.get(i) - start);
+            assertTrue(elapsedMillis >= delays[i], "delay " + delays[i] + " fired after " + elapsedMillis);
+            assertTrue(elapsedMillis < delays[i] + 200, "delay " + delays[i] + " fired after " + elapsedMillis);
+        }
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    void cancelledTimersDoNotFire() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+        TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[10_000];
+        for (int i = 0; i < timeouts.length; i++) {
+            timeouts[i] = wheel.schedule(fired::incrementAndGet, 200 + i % 400);
+        }
+        for (int i = 0; i < timeouts.length; i += 2) {
+            assertTrue(timeouts[i].cancel());
+        }
+        assertEquals(timeouts.length / 2, wheel.getPendingCount());
+        Thread.sleep(1200);
+        assertEquals(timeouts.length / 2, fired.get());
+        assertFalse(timeouts[1].cancel());
+        assertTrue(timeouts[1].isExpired());
+    }
+
+    @Test
+    void repeatingTimerRunsUntilCancelled() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+        CountDownLatch five = new CountDownLatch(5);
+        TimingWheel.Timeout timeout = wheel.scheduleRepeating(() -> {
+            fired.incrementAndGet();
+            five.countDown();
+        }, 10);
+        assertTrue(five.await(2, TimeUnit.SECONDS));
+        assertTrue(timeout.cancel());
+        int afterCancel = fired.get();
+        Thread.sleep(100);
+        // 取消时可能恰好正在执行一次
+        assertTrue(fired.get() <= afterCancel + 1);
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheWheel() throws InterruptedException {
+        CountDownLatch after = new CountDownLatch(1);
+        wheel.schedule(() -> {
+            throw new IllegalStateException("expected by test");
+        }, 1);
+        wheel.schedule(after::countDown, 5);
+        assertTrue(after.await(2, TimeUnit.SECONDS));
+    }
+}
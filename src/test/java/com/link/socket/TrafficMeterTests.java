@@ -0,0 +1,33 @@
+package com.link.socket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TrafficMeterTests {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void reportsTheLastCompleteSecond() {
+        TrafficMeter meter = new TrafficMeter();
+        long base = (Math.floorDiv(System.nanoTime(), SECOND) + 1) * SECOND;
+        for (int i = 0; i < 5; i++) {
+            meter.record(10, base + i);
+        }
+        // 当前秒还没结束时报告上一秒
+        assertEquals(0, meter.getMessagesPerSecond(base + SECOND / 2));
+        assertEquals(5, meter.getMessagesPerSecond(base + SECOND));
+        assertEquals(50, meter.getBytesPerSecond(base + SECOND));
+        meter.record(7, base + SECOND + 1);
+        assertEquals(5, meter.getMessagesPerSecond(base + SECOND + 2));
+        assertEquals(1, meter.getMessagesPerSecond(base + 2 * SECOND));
+        // 中间空了一秒以上时速率为0
+        assertEquals(0, meter.getMessagesPerSecond(base + 3 * SECOND));
+        meter.record(1, base + 5 * SECOND);
+        assertEquals(0, meter.getMessagesPerSecond(base + 5 * SECOND));
+        assertEquals(7, meter.getMessages());
+        assertEquals(58, meter.getBytes());
+    }
+}